@@ -0,0 +1,106 @@
+package com.example.auto4jobs.config;
+
+import com.example.auto4jobs.services.LlmPriority;
+import com.example.auto4jobs.services.LlmRequestContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Configuration
+public class MatchingExecutorConfig {
+
+    @Value("${matching.executor.pool-size:8}")
+    private int poolSize;
+
+    @Value("${matching.jobs.pool-size:2}")
+    private int jobsPoolSize;
+
+    @Value("${matching.jobs.queue-capacity:50}")
+    private int jobsQueueCapacity;
+
+    /**
+     * Pool de threads partagé utilisé pour évaluer les offres d'emploi en parallèle
+     * lors du matching (un appel Ollama par tâche). Les tâches en attente sont servies selon la
+     * priorité ({@link LlmRequestContext}) du thread qui les a soumises, puis dans l'ordre de soumission,
+     * afin que les évaluations interactives ne restent pas derrière un précalcul en arrière-plan.
+     *
+     * @return L'executor dédié au matching
+     */
+    @Bean(name = "matchingExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService matchingExecutor() {
+        int size = Math.max(1, poolSize);
+        AtomicLong sequence = new AtomicLong();
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(), new CustomizableThreadFactory("matching-")) {
+            @Override
+            public void execute(Runnable command) {
+                super.execute(new PrioritizedTask(command, LlmRequestContext.current().priority(), sequence.incrementAndGet()));
+            }
+        };
+    }
+
+    /**
+     * Pool borné qui exécute les tâches de matching asynchrones (une tâche par utilisateur).
+     * Il est distinct du pool de matching, sur lequel ces tâches attendent l'évaluation des offres.
+     * Une tâche soumise lorsque la file est pleine est rejetée.
+     *
+     * @return L'executor dédié aux tâches de matching asynchrones
+     */
+    @Bean(name = "matchingJobExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService matchingJobExecutor() {
+        int size = Math.max(1, jobsPoolSize);
+        return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, jobsQueueCapacity)),
+                new CustomizableThreadFactory("matching-job-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Thread unique qui exécute les lots de précalcul des correspondances, un candidat à la fois, et la
+     * réévaluation des offres modifiées, sans occuper le pool des tâches de matching interactives.
+     *
+     * @return L'executor dédié au précalcul
+     */
+    @Bean(name = "matchingPrecomputeExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService matchingPrecomputeExecutor() {
+        return Executors.newSingleThreadExecutor(new CustomizableThreadFactory("matching-precompute-"));
+    }
+
+    /**
+     * Thread unique qui supprime les générations de résultats remplacées. Sa file n'est pas bornée :
+     * une suppression n'est jamais refusée, même lorsque de nombreuses générations sont activées.
+     *
+     * @return L'executor dédié au nettoyage des générations
+     */
+    @Bean(name = "matchingCleanupExecutor", destroyMethod = "shutdownNow")
+    public ExecutorService matchingCleanupExecutor() {
+        return Executors.newSingleThreadExecutor(new CustomizableThreadFactory("matching-cleanup-"));
+    }
+
+    /**
+     * Tâche du pool de matching, ordonnée par priorité puis par ordre de soumission
+     */
+    private record PrioritizedTask(Runnable command, LlmPriority priority, long sequence)
+            implements Runnable, Comparable<PrioritizedTask> {
+
+        @Override
+        public void run() {
+            command.run();
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package com.example.auto4jobs.controllers;
 
 import com.example.auto4jobs.services.CVService;
+import com.example.auto4jobs.services.LlmCapacityExceededException;
+import com.example.auto4jobs.services.LlmDispatcher;
+import com.example.auto4jobs.services.LlmPriority;
+import com.example.auto4jobs.services.LlmRequestContext;
+import com.example.auto4jobs.services.MatchScorerSelector;
+import com.example.auto4jobs.services.MatchingJobService;
+import com.example.auto4jobs.services.MatchingPrecomputeService;
+import com.example.auto4jobs.services.MatchingRequestCoalescer;
+import com.example.auto4jobs.services.OllamaClient;
+import com.example.auto4jobs.services.OllamaGenerationService;
 import com.example.auto4jobs.services.OllamaMatchingService;
 import com.example.auto4jobs.entities.User;
 import com.example.auto4jobs.repositories.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
@@ -18,6 +29,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @RequestMapping("/api/matching")
@@ -28,6 +40,27 @@ public class MatchingController {
     @Autowired
     private OllamaMatchingService matchingService;
     
+    @Autowired
+    private MatchingRequestCoalescer matchingRequestCoalescer;
+
+    @Autowired
+    private MatchingJobService matchingJobService;
+    
+    @Autowired
+    private MatchingPrecomputeService matchingPrecomputeService;
+    
+    @Autowired
+    private LlmDispatcher llmDispatcher;
+    
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    @Autowired
+    private OllamaGenerationService ollamaGenerationService;
+
+    @Autowired
+    private MatchScorerSelector matchScorerSelector;
+    
     @Autowired
     private CVService cvService;
 
@@ -57,6 +90,8 @@ public class MatchingController {
         } catch (IllegalArgumentException e) {
             logger.error("Erreur lors de l'extraction des compétences du CV: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
         } catch (IllegalStateException e) {
             logger.error("Erreur d'état lors de l'extraction des compétences du CV: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
@@ -85,7 +120,7 @@ public class MatchingController {
             // Récupérer l'ID de l'utilisateur authentifié
             Long userId = getCurrentUserId();
             
-            List<Map<String, Object>> matches = matchingService.matchJobOffersForUser(userId);
+            List<Map<String, Object>> matches = matchingRequestCoalescer.matchJobOffersForUser(userId);
             
             // Si aucune offre n'est trouvée, retourner une liste vide avec un message
             if (matches.isEmpty()) {
@@ -99,6 +134,8 @@ public class MatchingController {
         } catch (IllegalArgumentException e) {
             logger.error("Erreur lors de la recherche de correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
         } catch (IllegalStateException e) {
             logger.error("Erreur d'état lors de la recherche de correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
@@ -127,8 +164,11 @@ public class MatchingController {
             // Récupérer l'ID de l'utilisateur authentifié
             Long userId = getCurrentUserId();
             
-            // Forcer le recalcul des correspondances
-            List<Map<String, Object>> matches = matchingService.forceMatchJobOffersForUser(userId);
+            // Forcer le recalcul des correspondances, avec une priorité inférieure aux requêtes interactives
+            List<Map<String, Object>> matches;
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.REFRESH, userId).open()) {
+                matches = matchingRequestCoalescer.forceMatchJobOffersForUser(userId);
+            }
             
             // Si aucune offre n'est trouvée, retourner une liste vide avec un message
             if (matches.isEmpty()) {
@@ -142,6 +182,8 @@ public class MatchingController {
         } catch (IllegalArgumentException e) {
             logger.error("Erreur lors du recalcul des correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
         } catch (IllegalStateException e) {
             logger.error("Erreur d'état lors du recalcul des correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
@@ -152,6 +194,189 @@ public class MatchingController {
         }
     }
 
+    /**
+     * Diffuse en Server-Sent Events les correspondances de l'utilisateur courant : chaque offre est
+     * envoyée dès qu'elle est évaluée (événement "match"), puis la liste triée (événement "summary")
+     * 
+     * @param force true pour recalculer les correspondances même si des résultats récents existent
+     * @return Le flux d'événements
+     */
+    @GetMapping("/job-matches/stream")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> streamJobMatchesForCurrentUser(@RequestParam(defaultValue = "false") boolean force) {
+        try {
+            // Vérifier si l'utilisateur a un CV
+            if (!cvService.currentUserHasCV()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Collections.singletonMap("error", "Aucun CV trouvé pour cet utilisateur"));
+            }
+            
+            // Récupérer l'ID de l'utilisateur authentifié
+            Long userId = getCurrentUserId();
+            
+            return ResponseEntity.ok(matchingJobService.streamMatches(userId, force));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonMap("error", "Trop de matchings en cours, veuillez réessayer plus tard"));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
+        } catch (IllegalStateException e) {
+            logger.error("Erreur d'état lors de la diffusion des correspondances: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Erreur inattendue lors de la diffusion des correspondances", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Une erreur est survenue lors de la diffusion des correspondances"));
+        }
+    }
+
+    /**
+     * Lance le matching de l'utilisateur courant en arrière-plan et retourne immédiatement
+     * l'identifiant de la tâche, dont l'avancement peut ensuite être suivi
+     * 
+     * @param force true pour recalculer les correspondances même si des résultats récents existent
+     * @return L'identifiant et l'état de la tâche (202 Accepted)
+     */
+    @PostMapping("/jobs")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> submitMatchingJob(@RequestParam(defaultValue = "false") boolean force) {
+        try {
+            // Vérifier si l'utilisateur a un CV
+            if (!cvService.currentUserHasCV()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Collections.singletonMap("error", "Aucun CV trouvé pour cet utilisateur"));
+            }
+            
+            // Récupérer l'ID de l'utilisateur authentifié
+            Long userId = getCurrentUserId();
+            
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(matchingJobService.submitJob(userId, force));
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .body(Collections.singletonMap("error", "Trop de matchings en cours, veuillez réessayer plus tard"));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
+        } catch (IllegalStateException e) {
+            logger.error("Erreur d'état lors de la création de la tâche de matching: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Erreur inattendue lors de la création de la tâche de matching", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Une erreur est survenue lors de la création de la tâche de matching"));
+        }
+    }
+
+    /**
+     * Retourne l'état et l'avancement (offres évaluées / total) d'une tâche de matching de l'utilisateur courant
+     * 
+     * @param jobId ID de la tâche
+     * @return L'état de la tâche
+     */
+    @GetMapping("/jobs/{jobId}")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> getMatchingJobStatus(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(matchingJobService.getJobStatus(jobId, getCurrentUserId()));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            logger.error("Erreur d'état lors du suivi de la tâche de matching: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Retourne les résultats d'une tâche de matching terminée de l'utilisateur courant
+     * 
+     * @param jobId ID de la tâche
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     */
+    @GetMapping("/jobs/{jobId}/results")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> getMatchingJobResults(@PathVariable String jobId) {
+        try {
+            List<Map<String, Object>> matches = matchingJobService.getJobResults(jobId, getCurrentUserId());
+            
+            // Si aucune offre n'est trouvée, retourner une liste vide avec un message
+            if (matches.isEmpty()) {
+                Map<String, Object> response = new HashMap<>();
+                response.put("matches", Collections.emptyList());
+                response.put("message", "Aucune offre d'emploi active trouvée pour le matching");
+                return ResponseEntity.ok(response);
+            }
+            
+            return ResponseEntity.ok(matches);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (IllegalStateException e) {
+            // Tâche en cours ou en échec : le client doit consulter l'état de la tâche
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Collections.singletonMap("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Retourne les explications d'un résultat de matching de l'utilisateur courant ; elles sont générées
+     * lors de la première consultation puis conservées
+     * 
+     * @param matchingResultId ID du résultat de matching
+     * @return Le score et les explications du résultat
+     */
+    @GetMapping("/results/{matchingResultId}/explanations")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> getMatchExplanations(@PathVariable Long matchingResultId) {
+        try {
+            return ResponseEntity.ok(matchingService.getMatchExplanations(matchingResultId, getCurrentUserId()));
+        } catch (IllegalArgumentException e) {
+            logger.error("Erreur lors de la récupération des explications: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
+        } catch (IllegalStateException e) {
+            logger.error("Erreur d'état lors de la récupération des explications: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Erreur inattendue lors de la récupération des explications", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Une erreur est survenue lors de la génération des explications"));
+        }
+    }
+
+    /**
+     * Trouve les offres d'emploi sémantiquement les plus proches du CV de l'utilisateur courant
+     * à l'aide de l'index d'embeddings (réponse en quelques millisecondes, sans génération LLM)
+     * 
+     * @param limit Nombre maximal d'offres à retourner
+     * @return Liste des offres d'emploi avec leur similarité
+     */
+    @GetMapping("/semantic-matches")
+    @PreAuthorize("hasAnyRole('APPRENANT', 'LAUREAT')")
+    public ResponseEntity<?> getSemanticMatchesForCurrentUser(@RequestParam(defaultValue = "20") int limit) {
+        try {
+            // Vérifier si l'utilisateur a un CV
+            if (!cvService.currentUserHasCV()) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                        .body(Collections.singletonMap("error", "Aucun CV trouvé pour cet utilisateur"));
+            }
+            
+            // Récupérer l'ID de l'utilisateur authentifié
+            Long userId = getCurrentUserId();
+            
+            return ResponseEntity.ok(matchingService.findSemanticMatches(userId, limit));
+        } catch (IllegalArgumentException e) {
+            logger.error("Erreur lors de la recherche sémantique: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
+        } catch (IllegalStateException e) {
+            logger.error("Erreur d'état lors de la recherche sémantique: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Erreur inattendue lors de la recherche sémantique", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Collections.singletonMap("error", "Une erreur est survenue lors de la recherche sémantique"));
+        }
+    }
+
     /**
      * Trouve les offres d'emploi qui correspondent le mieux au CV d'un utilisateur spécifique
      * (endpoint réservé aux administrateurs)
@@ -169,7 +394,7 @@ public class MatchingController {
                         .body(Collections.singletonMap("error", "Aucun CV trouvé pour cet utilisateur"));
             }
             
-            List<Map<String, Object>> matches = matchingService.matchJobOffersForUser(userId);
+            List<Map<String, Object>> matches = matchingRequestCoalescer.matchJobOffersForUser(userId);
             
             // Si aucune offre n'est trouvée, retourner une liste vide avec un message
             if (matches.isEmpty()) {
@@ -183,6 +408,8 @@ public class MatchingController {
         } catch (IllegalArgumentException e) {
             logger.error("Erreur lors de la recherche de correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        } catch (LlmCapacityExceededException e) {
+            return capacityExceeded(e);
         } catch (IllegalStateException e) {
             logger.error("Erreur d'état lors de la recherche de correspondances: {}", e.getMessage());
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(Collections.singletonMap("error", e.getMessage()));
@@ -193,6 +420,94 @@ public class MatchingController {
         }
     }
 
+    /**
+     * Retourne les statistiques du cache des réponses d'Ollama (succès, échecs, évictions)
+     * (endpoint réservé aux administrateurs)
+     * 
+     * @return Les statistiques du cache
+     */
+    @GetMapping("/llm-cache/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getLlmCacheStatistics() {
+        return ResponseEntity.ok(matchingService.getLlmCacheStatistics());
+    }
+
+    /**
+     * Récupère l'occupation du répartiteur des appels à Ollama (appels en cours, files d'attente et refus par priorité)
+     * ainsi que celle du pool de connexions HTTP, l'état des disjoncteurs, le modèle et les appels de chaque étape,
+     * les backends de scoring utilisés et le nombre de demandes de matching regroupées
+     * 
+     * @return Les statistiques du répartiteur
+     */
+    @GetMapping("/llm-dispatcher/stats")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getLlmDispatcherStatistics() {
+        Map<String, Object> statistics = new HashMap<>(llmDispatcher.getStatistics());
+        statistics.put("ollamaClient", ollamaClient.getStatistics());
+        statistics.put("llmStages", ollamaGenerationService.getStatistics());
+        statistics.put("matchScorers", matchScorerSelector.getStatistics());
+        statistics.put("matchingRequests", matchingRequestCoalescer.getStatistics());
+        return ResponseEntity.ok(statistics);
+    }
+
+    /**
+     * Lance le précalcul des correspondances de tous les candidats, ou reprend le dernier précalcul interrompu
+     * 
+     * @return L'état du précalcul lancé
+     */
+    @PostMapping("/precompute/runs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> startPrecompute() {
+        try {
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(matchingPrecomputeService.startRun("MANUAL"));
+        } catch (IllegalStateException e) {
+            logger.warn("Précalcul des correspondances non lancé: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Collections.singletonMap("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Récupère l'avancement et le débit des derniers précalculs des correspondances
+     * 
+     * @return Les derniers précalculs, du plus récent au plus ancien
+     */
+    @GetMapping("/precompute/runs")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getPrecomputeRuns() {
+        return ResponseEntity.ok(matchingPrecomputeService.getRecentRuns());
+    }
+
+    /**
+     * Récupère l'avancement et le débit d'un précalcul des correspondances
+     * 
+     * @param runId ID du précalcul
+     * @return L'état du précalcul
+     */
+    @GetMapping("/precompute/runs/{runId}")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getPrecomputeRun(@PathVariable Long runId) {
+        try {
+            return ResponseEntity.ok(matchingPrecomputeService.getRun(runId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(Collections.singletonMap("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Construit la réponse à un appel refusé faute de capacité : 429 si l'utilisateur a trop de demandes
+     * en cours, 503 si le service est saturé, avec le délai conseillé avant une nouvelle tentative
+     * 
+     * @param e Le refus du répartiteur
+     * @return La réponse d'erreur
+     */
+    private ResponseEntity<?> capacityExceeded(LlmCapacityExceededException e) {
+        logger.warn("Demande de matching refusée: {}", e.getMessage());
+        HttpStatus status = e.isUserLimit() ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Collections.singletonMap("error", e.getMessage()));
+    }
+
     /**
      * Récupère l'ID de l'utilisateur authentifié
      * 
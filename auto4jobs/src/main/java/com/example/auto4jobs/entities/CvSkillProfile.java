@@ -0,0 +1,59 @@
+package com.example.auto4jobs.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Entity
+@Table(name = "cv_skill_profiles")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CvSkillProfile {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @OneToOne
+    @JoinColumn(name = "user_id", nullable = false, unique = true)
+    private User user;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "cv_skill_profile_technical_skills", joinColumns = @JoinColumn(name = "profile_id"))
+    @Column(name = "skill")
+    private List<String> technicalSkills;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "cv_skill_profile_soft_skills", joinColumns = @JoinColumn(name = "profile_id"))
+    @Column(name = "skill")
+    private List<String> softSkills;
+
+    @ElementCollection(fetch = FetchType.EAGER)
+    @CollectionTable(name = "cv_skill_profile_certifications", joinColumns = @JoinColumn(name = "profile_id"))
+    @Column(name = "certification")
+    private List<String> certifications;
+
+    @Column(name = "experience", columnDefinition = "TEXT")
+    private String experience;
+
+    @Column(name = "education", columnDefinition = "TEXT")
+    private String education;
+
+    // Date de dépôt du CV analysé : le profil est obsolète si l'utilisateur a déposé un autre CV depuis
+    @Column(name = "cv_upload_date")
+    private Long cvUploadDate;
+
+    @Column(name = "extracted_at", nullable = false)
+    private LocalDateTime extractedAt;
+
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.extractedAt = LocalDateTime.now();
+    }
+}
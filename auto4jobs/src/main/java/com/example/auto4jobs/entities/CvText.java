@@ -0,0 +1,35 @@
+package com.example.auto4jobs.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "cv_texts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CvText {
+
+    // Empreinte SHA-256 (hexadécimale) du contenu binaire du CV
+    @Id
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    @Lob
+    @Column(name = "extracted_text", nullable = false, columnDefinition = "LONGTEXT")
+    private String text;
+
+    @Column(name = "extracted_at", nullable = false)
+    private LocalDateTime extractedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (this.extractedAt == null) {
+            this.extractedAt = LocalDateTime.now();
+        }
+    }
+}
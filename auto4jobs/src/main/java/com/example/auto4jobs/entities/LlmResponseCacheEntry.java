@@ -0,0 +1,42 @@
+package com.example.auto4jobs.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "llm_response_cache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LlmResponseCacheEntry {
+
+    // Empreinte SHA-256 (hexadécimale) du modèle, du prompt et des options de génération
+    @Id
+    @Column(name = "cache_key", length = 64)
+    private String cacheKey;
+
+    @Column(name = "model", nullable = false, length = 100)
+    private String model;
+
+    // Utilisateur pour lequel la réponse a été générée (le prompt contient son CV), ou null
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Lob
+    @Column(name = "response", nullable = false, columnDefinition = "LONGTEXT")
+    private String response;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    protected void onCreate() {
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
+    }
+}
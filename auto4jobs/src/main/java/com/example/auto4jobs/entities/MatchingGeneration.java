@@ -0,0 +1,31 @@
+package com.example.auto4jobs.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "matching_generations")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchingGeneration {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    // Génération lue par les requêtes ; null tant qu'aucune génération n'a été activée
+    @Column(name = "active_generation")
+    private Long activeGeneration;
+
+    // Dernier numéro attribué, y compris aux générations en cours de calcul
+    @Column(name = "last_allocated_generation", nullable = false)
+    private Long lastAllocatedGeneration;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
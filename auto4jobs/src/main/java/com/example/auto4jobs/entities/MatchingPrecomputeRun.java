@@ -0,0 +1,82 @@
+package com.example.auto4jobs.entities;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "matching_precompute_runs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MatchingPrecomputeRun {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private Status status;
+
+    // "SCHEDULED" (déclenchement nocturne) ou "MANUAL" (déclenchement par un administrateur)
+    @Column(name = "trigger_type", nullable = false, length = 20)
+    private String trigger;
+
+    // IDs des utilisateurs à traiter, séparés par des virgules, les plus obsolètes en premier
+    @Lob
+    @Column(name = "user_queue", nullable = false, columnDefinition = "LONGTEXT")
+    private String userQueue;
+
+    // Position du prochain utilisateur à traiter dans la file : point de reprise du lot
+    @Column(name = "next_index", nullable = false)
+    private int nextIndex;
+
+    @Column(name = "total_users", nullable = false)
+    private int totalUsers;
+
+    // Utilisateurs sans résultats, aux résultats expirés ou au CV plus récent que leurs résultats
+    @Column(name = "stale_users", nullable = false)
+    private int staleUsers;
+
+    @Column(name = "processed_users", nullable = false)
+    private int processedUsers;
+
+    @Column(name = "failed_users", nullable = false)
+    private int failedUsers;
+
+    @Column(name = "matches_computed", nullable = false)
+    private long matchesComputed;
+
+    // Durée de traitement cumulée sur toutes les reprises du lot
+    @Column(name = "elapsed_millis", nullable = false)
+    private long elapsedMillis;
+
+    @Column(name = "started_at", nullable = false)
+    private LocalDateTime startedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "error", columnDefinition = "TEXT")
+    private String error;
+
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        this.updatedAt = LocalDateTime.now();
+    }
+
+    /**
+     * État d'un lot de précalcul ; un lot RUNNING ou PAUSED est repris au déclenchement suivant
+     */
+    public enum Status {
+        RUNNING, PAUSED, COMPLETED, FAILED
+    }
+}
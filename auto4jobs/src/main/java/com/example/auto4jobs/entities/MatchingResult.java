@@ -15,8 +15,18 @@ import java.util.List;
 @AllArgsConstructor
 public class MatchingResult {
 
+    // Identifiants réservés par blocs de 50 (table id_generators) : contrairement à IDENTITY,
+    // Hibernate peut alors regrouper les insertions en lots JDBC
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "matching_result_id")
+    @TableGenerator(
+        name = "matching_result_id",
+        table = "id_generators",
+        pkColumnName = "generator_name",
+        valueColumnName = "next_value",
+        pkColumnValue = "matching_results",
+        allocationSize = 50
+    )
     private Long id;
 
     @ManyToOne
@@ -30,6 +40,16 @@ public class MatchingResult {
     @Column(name = "match_score", nullable = false)
     private Double matchScore;
 
+    // Score local du préfiltrage, pour une offre qui n'a pas été évaluée par le backend de scoring : son
+    // échelle diffère de celle du backend, le résultat est classé après tous les résultats évalués
+    @Column(name = "prefiltered", nullable = false)
+    private boolean prefiltered;
+
+    // Génération à laquelle appartient le résultat ; seule la génération active de l'utilisateur
+    // (table matching_generations) est lue. Null pour les résultats antérieurs aux générations.
+    @Column(name = "generation")
+    private Long generation;
+
     @Column(name = "created_at", nullable = false)
     private LocalDateTime createdAt;
 
@@ -46,7 +66,10 @@ public class MatchingResult {
 
     @PrePersist
     protected void onCreate() {
-        this.createdAt = LocalDateTime.now();
+        // Un résultat reporté dans une nouvelle génération conserve sa date de calcul
+        if (this.createdAt == null) {
+            this.createdAt = LocalDateTime.now();
+        }
     }
 
     @PreUpdate
@@ -69,6 +69,10 @@ public class User {
     
     @Column(name = "cv_content_type")
     private String cvContentType;
+    
+    // Empreinte SHA-256 du CV, clé du texte extrait dans la table cv_texts
+    @Column(name = "cv_content_hash", length = 64)
+    private String cvContentHash;
 
     public void setIsValidated(boolean isValidated) {
         this.isValidated = isValidated;
@@ -0,0 +1,10 @@
+package com.example.auto4jobs.events;
+
+/**
+ * Publié lorsqu'un utilisateur dépose une nouvelle version de son CV
+ *
+ * @param userId ID de l'utilisateur
+ * @param cvUploadDate Date de dépôt du CV (timestamp en millisecondes)
+ */
+public record CvUploadedEvent(Long userId, Long cvUploadDate) {
+}
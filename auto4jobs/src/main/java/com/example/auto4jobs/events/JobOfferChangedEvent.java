@@ -0,0 +1,9 @@
+package com.example.auto4jobs.events;
+
+/**
+ * Publié lorsqu'une offre d'emploi est créée ou modifiée
+ *
+ * @param jobOfferId ID de l'offre d'emploi
+ */
+public record JobOfferChangedEvent(Long jobOfferId) {
+}
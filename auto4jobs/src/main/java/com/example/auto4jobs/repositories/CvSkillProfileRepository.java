@@ -0,0 +1,20 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.CvSkillProfile;
+import com.example.auto4jobs.entities.User;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CvSkillProfileRepository extends JpaRepository<CvSkillProfile, Long> {
+
+    /**
+     * Trouve le profil de compétences extrait du CV d'un utilisateur
+     *
+     * @param user L'utilisateur
+     * @return Le profil de compétences, s'il a déjà été calculé
+     */
+    Optional<CvSkillProfile> findByUser(User user);
+}
@@ -0,0 +1,9 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.CvText;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface CvTextRepository extends JpaRepository<CvText, String> {
+}
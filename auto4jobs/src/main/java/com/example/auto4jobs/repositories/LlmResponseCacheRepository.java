@@ -0,0 +1,37 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.LlmResponseCacheEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface LlmResponseCacheRepository extends JpaRepository<LlmResponseCacheEntry, String> {
+
+    /**
+     * Supprime les réponses mises en cache avant une certaine date
+     *
+     * @param date La date limite de validité
+     * @return Le nombre d'entrées supprimées
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmResponseCacheEntry e WHERE e.createdAt < :date")
+    int deleteByCreatedAtBefore(@Param("date") LocalDateTime date);
+
+    /**
+     * Supprime les réponses mises en cache pour un utilisateur
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le nombre d'entrées supprimées
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LlmResponseCacheEntry e WHERE e.userId = :userId")
+    int deleteByUserId(@Param("userId") Long userId);
+}
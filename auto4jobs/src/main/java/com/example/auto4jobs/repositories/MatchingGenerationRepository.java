@@ -0,0 +1,53 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.MatchingGeneration;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface MatchingGenerationRepository extends JpaRepository<MatchingGeneration, Long> {
+
+    /**
+     * Trouve et verrouille le pointeur de génération d'un utilisateur, pour attribuer un nouveau numéro
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le pointeur de génération, s'il existe
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT g FROM MatchingGeneration g WHERE g.userId = :userId")
+    Optional<MatchingGeneration> findForUpdate(@Param("userId") Long userId);
+
+    /**
+     * Crée le pointeur de génération d'un utilisateur avec la première génération attribuée. L'insertion
+     * échoue si un autre calcul a créé le pointeur en parallèle, là où un save() de l'entité (identifiant
+     * attribué, donc merge) écraserait silencieusement le numéro déjà attribué.
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le nombre de lignes insérées
+     */
+    @Modifying
+    @Query(value = "INSERT INTO matching_generations (user_id, last_allocated_generation) VALUES (:userId, 1)",
+           nativeQuery = true)
+    int insertFirstGeneration(@Param("userId") Long userId);
+
+    /**
+     * Active une génération, sauf si une génération plus récente est déjà active
+     *
+     * @param userId ID de l'utilisateur
+     * @param generation La génération à activer
+     * @param updatedAt Date de l'activation
+     * @return Le nombre de lignes mises à jour (0 si une génération plus récente est active)
+     */
+    @Modifying
+    @Query("UPDATE MatchingGeneration g SET g.activeGeneration = :generation, g.updatedAt = :updatedAt " +
+           "WHERE g.userId = :userId AND (g.activeGeneration IS NULL OR g.activeGeneration < :generation)")
+    int activate(@Param("userId") Long userId, @Param("generation") Long generation, @Param("updatedAt") LocalDateTime updatedAt);
+}
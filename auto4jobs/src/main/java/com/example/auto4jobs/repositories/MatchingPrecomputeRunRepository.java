@@ -0,0 +1,26 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.MatchingPrecomputeRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface MatchingPrecomputeRunRepository extends JpaRepository<MatchingPrecomputeRun, Long> {
+
+    /**
+     * Trouve le dernier lot non terminé, à reprendre
+     *
+     * @param statuses Les états d'un lot non terminé
+     * @return Le lot le plus récent dans l'un de ces états, s'il existe
+     */
+    Optional<MatchingPrecomputeRun> findFirstByStatusInOrderByIdDesc(Collection<MatchingPrecomputeRun.Status> statuses);
+
+    /**
+     * @return Les 20 derniers lots de précalcul, du plus récent au plus ancien
+     */
+    List<MatchingPrecomputeRun> findTop20ByOrderByIdDesc();
+}
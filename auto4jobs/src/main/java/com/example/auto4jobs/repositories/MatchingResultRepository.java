@@ -1,5 +1,6 @@
 package com.example.auto4jobs.repositories;
 
+import com.example.auto4jobs.entities.JobOffer;
 import com.example.auto4jobs.entities.MatchingResult;
 import com.example.auto4jobs.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -40,6 +41,59 @@ public interface MatchingResultRepository extends JpaRepository<MatchingResult,
      */
     List<MatchingResult> findByUserAndCreatedAtAfter(User user, LocalDateTime date);
     
+    /**
+     * Trouve les résultats de matching d'une génération d'un utilisateur
+     * 
+     * @param user L'utilisateur
+     * @param generation La génération
+     * @return Liste des résultats de matching de cette génération
+     */
+    List<MatchingResult> findByUserAndGeneration(User user, Long generation);
+    
+    /**
+     * Trouve les résultats de matching d'un utilisateur calculés avant l'introduction des générations
+     * 
+     * @param user L'utilisateur
+     * @return Liste des résultats de matching sans génération
+     */
+    List<MatchingResult> findByUserAndGenerationIsNull(User user);
+    
+    /**
+     * Trouve les résultats des générations antérieures à la génération active d'un utilisateur
+     * 
+     * @param userId ID de l'utilisateur
+     * @param activeGeneration La génération active
+     * @return Liste des résultats de matching obsolètes
+     */
+    @Query("SELECT mr FROM MatchingResult mr WHERE mr.user.id = :userId " +
+           "AND (mr.generation IS NULL OR mr.generation < :activeGeneration)")
+    List<MatchingResult> findOlderGenerations(@Param("userId") Long userId, @Param("activeGeneration") Long activeGeneration);
+    
+    /**
+     * Trouve tous les résultats de matching concernant une offre d'emploi
+     * 
+     * @param jobOffer L'offre d'emploi
+     * @return Liste des résultats de matching pour cette offre
+     */
+    List<MatchingResult> findByJobOffer(JobOffer jobOffer);
+    
+    /**
+     * Trouve les résultats de matching d'un utilisateur pour une offre d'emploi
+     * 
+     * @param user L'utilisateur
+     * @param jobOffer L'offre d'emploi
+     * @return Liste des résultats de matching pour ce couple (normalement un seul)
+     */
+    List<MatchingResult> findByUserAndJobOffer(User user, JobOffer jobOffer);
+    
+    /**
+     * Trouve les utilisateurs qui possèdent au moins un résultat de matching
+     * 
+     * @return Liste des utilisateurs déjà matchés
+     */
+    @Query("SELECT DISTINCT mr.user FROM MatchingResult mr")
+    List<User> findUsersWithResults();
+    
     /**
      * Supprime tous les résultats de matching pour un utilisateur spécifique
      * 
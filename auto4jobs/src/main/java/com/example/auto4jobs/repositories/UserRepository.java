@@ -2,11 +2,33 @@ package com.example.auto4jobs.repositories;
 
 import com.example.auto4jobs.entities.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 public interface UserRepository extends JpaRepository<User, Long> {
     List<User> findByRole(String role);
     Optional<User> findByEmail(String email);
-}
\ No newline at end of file
+
+    /**
+     * Retourne l'ID et la date de dépôt du CV des utilisateurs ayant un CV, sans charger les CV eux-mêmes
+     *
+     * @param roles Les rôles des utilisateurs recherchés
+     * @return Des paires [ID, date de dépôt du CV]
+     */
+    @Query("SELECT u.id, u.cvUploadDate FROM User u WHERE u.role IN :roles " +
+           "AND (u.cvFilename IS NOT NULL OR u.cvPath IS NOT NULL OR u.cvData IS NOT NULL) ORDER BY u.id")
+    List<Object[]> findCvUploadDatesByRoleIn(@Param("roles") Collection<String> roles);
+
+    /**
+     * Vérifie si un autre utilisateur a déposé un CV de même contenu
+     *
+     * @param cvContentHash L'empreinte SHA-256 du CV
+     * @param id ID de l'utilisateur exclu de la recherche
+     * @return true si un autre utilisateur a un CV avec cette empreinte
+     */
+    boolean existsByCvContentHashAndIdNot(String cvContentHash, Long id);
+}
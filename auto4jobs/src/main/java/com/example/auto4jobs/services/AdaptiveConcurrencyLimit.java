@@ -0,0 +1,137 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Limite adaptative du nombre d'appels simultanés à Ollama, ajustée selon la latence observée
+ * (augmentation additive, diminution multiplicative). Les durées d'appel sont regroupées par fenêtres
+ * d'au moins {@code limite} appels ; la durée moyenne de chaque fenêtre est comparée à la latence de
+ * référence, la plus basse durée moyenne observée :
+ * <ul>
+ * <li>si elle la dépasse de plus de {@code latencyTolerance}, Ollama met les appels en file : la limite
+ * est multipliée par {@code backoffRatio} ;</li>
+ * <li>sinon, si la limite a été atteinte pendant la fenêtre, elle augmente d'un appel.</li>
+ * </ul>
+ * Lorsque l'allongement ne peut pas venir des appels simultanés (limite non atteinte, ou limite minimale),
+ * la latence de référence remonte lentement, de sorte qu'un changement durable de charge (modèle plus
+ * lent, prompts plus longs) ne maintienne pas la limite au minimum.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    // Nombre minimal d'appels d'une fenêtre, pour que sa durée moyenne soit significative
+    private static final int MIN_WINDOW_SIZE = 5;
+
+    // Remontée relative de la latence de référence à chaque fenêtre non saturée
+    private static final double BASELINE_DRIFT = 0.02;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double latencyTolerance;
+
+    private final double backoffRatio;
+
+    private double limit;
+
+    // Latence de référence en millisecondes (0 tant qu'aucune fenêtre n'est complète)
+    private double baselineMillis;
+
+    private double lastWindowMillis;
+
+    private double windowLatencySum;
+
+    private int windowSamples;
+
+    private boolean windowSaturated;
+
+    private long increases;
+
+    private long decreases;
+
+    /**
+     * @param initialLimit Limite de départ
+     * @param minLimit Limite minimale
+     * @param maxLimit Limite maximale
+     * @param latencyTolerance Rapport entre la durée moyenne d'une fenêtre et la latence de référence au-delà duquel la limite diminue
+     * @param backoffRatio Facteur appliqué à la limite lorsqu'elle diminue, entre 0 et 1
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double latencyTolerance, double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyTolerance = Math.max(1, latencyTolerance);
+        this.backoffRatio = Math.min(0.99, Math.max(0.1, backoffRatio));
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * @return Le nombre d'appels simultanés actuellement autorisés
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * Enregistre la durée d'un appel terminé
+     *
+     * @param latencyMillis Durée de l'appel
+     * @param inFlight Nombre d'appels en cours au démarrage de l'appel, lui compris
+     * @return true si la limite a changé
+     */
+    public synchronized boolean record(long latencyMillis, int inFlight) {
+        windowLatencySum += latencyMillis;
+        windowSamples++;
+        if (inFlight >= getLimit()) {
+            windowSaturated = true;
+        }
+        if (windowSamples < Math.max(MIN_WINDOW_SIZE, getLimit())) {
+            return false;
+        }
+
+        double windowMillis = windowLatencySum / windowSamples;
+        boolean saturated = windowSaturated;
+        windowLatencySum = 0;
+        windowSamples = 0;
+        windowSaturated = false;
+        lastWindowMillis = windowMillis;
+
+        int previous = getLimit();
+        if (baselineMillis == 0) {
+            baselineMillis = windowMillis;
+            return false;
+        }
+        // Sous une limite saturée, l'allongement peut venir des appels simultanés : la référence ne remonte pas
+        boolean drift = !saturated || previous <= minLimit;
+        baselineMillis = Math.min(windowMillis, drift ? baselineMillis * (1 + BASELINE_DRIFT) : baselineMillis);
+        if (windowMillis > baselineMillis * latencyTolerance) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+            decreases++;
+        } else if (saturated && limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + 1);
+            increases++;
+        }
+        return getLimit() != previous;
+    }
+
+    public synchronized double getBaselineMillis() {
+        return baselineMillis;
+    }
+
+    public synchronized double getLastWindowMillis() {
+        return lastWindowMillis;
+    }
+
+    public synchronized long getIncreases() {
+        return increases;
+    }
+
+    public synchronized long getDecreases() {
+        return decreases;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+}
@@ -1,11 +1,13 @@
 package com.example.auto4jobs.services;
 
 import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.events.CvUploadedEvent;
 import com.example.auto4jobs.repositories.UserRepository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -35,6 +37,15 @@ public class CVService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CVTextExtractionService cvTextExtractionService;
+
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     /**
      * Sauvegarde le CV d'un utilisateur et retourne les informations sur le fichier
      *
@@ -57,6 +68,11 @@ public class CVService {
         String fileExtension = getFileExtension(originalFilename);
         validateFileExtension(fileExtension);
 
+        // Le CV remplacé ne doit pas survivre à travers son texte extrait ou les réponses LLM calculées à partir de lui
+        if (hasCV(user)) {
+            purgeCvDerivedData(user);
+        }
+
         // Créer un nom de fichier unique
         String uniqueFilename = UUID.randomUUID().toString() + "." + fileExtension;
 
@@ -96,9 +112,25 @@ public class CVService {
         user.setCvData(file.getBytes());
         user.setCvContentType(file.getContentType());
         
+        // Extraire le texte une seule fois pour cette version du CV ; il sera réutilisé par le matching
+        Map<String, Object> extractedInfo = new HashMap<>();
+        extractedInfo.put("cvPath", uniqueFilename);
+        try {
+            user.setCvContentHash(cvTextExtractionService.extractAndStore(filePath));
+            extractedInfo.put("extractionStatus", "completed");
+        } catch (Exception e) {
+            // Ne pas bloquer le dépôt si l'extraction échoue : elle sera retentée lors du matching
+            logger.warn("Erreur lors de l'extraction du texte du CV: {}", e.getMessage());
+            user.setCvContentHash(null);
+            extractedInfo.put("extractionStatus", "failed");
+        }
+        
         userRepository.save(user);
         logger.info("Informations du CV mises à jour pour l'utilisateur: {}", user.getEmail());
 
+        // Le profil de compétences est recalculé en arrière-plan une fois le nouveau CV enregistré
+        eventPublisher.publishEvent(new CvUploadedEvent(user.getId(), currentTime));
+
         // Retourner les informations du fichier avec URL pour prévisualisation
         Map<String, Object> fileInfo = new HashMap<>();
         fileInfo.put("fileName", uniqueFilename);
@@ -110,26 +142,7 @@ public class CVService {
         fileInfo.put("publicFilePath", "/static/cvs-public/" + uniqueFilename);
         fileInfo.put("storedInDatabase", true);
         
-        // Préparation pour l'intégration avec Ollama lama3
-        try {
-            // Simuler l'extraction d'informations pour le développement
-            logger.info("Préparation pour l'extraction d'informations du CV avec Ollama lama3");
-            
-            // Structure pour stocker les informations extraites (à implémenter avec Ollama lama3)
-            Map<String, Object> extractedInfo = new HashMap<>();
-            extractedInfo.put("extractionStatus", "pending");
-            extractedInfo.put("cvPath", uniqueFilename);
-            
-            // Dans l'implémentation finale, appeler Ollama lama3 ici
-            // OllamaService.extractCVInfo(filePath.toString());
-            
-            // Ajouter les informations extraites à la réponse
-            fileInfo.put("extractedInfo", extractedInfo);
-            
-        } catch (Exception e) {
-            logger.warn("Erreur lors de la préparation de l'extraction d'informations: {}", e.getMessage());
-            // Ne pas bloquer le processus si l'extraction échoue
-        }
+        fileInfo.put("extractedInfo", extractedInfo);
 
         logger.info("CV sauvegardé avec succès: {}", filePath.toString());
         return fileInfo;
@@ -236,6 +249,9 @@ public class CVService {
             return false;
         }
         
+        // Supprimer les données dérivées du CV avant le fichier, dont le contenu identifie le texte extrait
+        purgeCvDerivedData(user);
+        
         boolean fileDeleted = false;
         
         // Supprimer le fichier du système de fichiers s'il existe
@@ -277,12 +293,25 @@ public class CVService {
         user.setCvUploadDate(null);
         user.setCvData(null);
         user.setCvContentType(null);
+        user.setCvContentHash(null);
         userRepository.save(user);
         logger.info("Références au CV supprimées pour l'utilisateur: {}", user.getEmail());
         
         return true;
     }
 
+    /**
+     * Supprime le texte extrait du CV d'un utilisateur et les réponses LLM mises en cache pour lui,
+     * dont les prompts contiennent ce texte
+     *
+     * @param user L'utilisateur dont le CV est supprimé ou remplacé
+     * @throws IOException si le fichier CV ne peut pas être lu pour recalculer son empreinte
+     */
+    private void purgeCvDerivedData(User user) throws IOException {
+        cvTextExtractionService.deleteCvText(user);
+        llmResponseCache.evictUser(user.getId());
+    }
+
     /**
      * Vérifie si un utilisateur a un CV
      *
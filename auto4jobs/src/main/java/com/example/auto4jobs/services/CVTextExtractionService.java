@@ -0,0 +1,271 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.CvText;
+import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.repositories.CvTextRepository;
+import com.example.auto4jobs.repositories.UserRepository;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.apache.poi.extractor.ExtractorFactory;
+import org.apache.poi.extractor.POITextExtractor;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Extraction du texte des CV (PDF, DOC et DOCX).
+ * Le texte extrait est stocké une seule fois par version de CV dans la table cv_texts, sous
+ * l'empreinte SHA-256 du fichier : le matching, l'extraction des compétences et les étapes
+ * suivantes lisent ce texte précalculé au lieu de relire et réanalyser le document.
+ */
+@Service
+public class CVTextExtractionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CVTextExtractionService.class);
+
+    private static final Pattern HORIZONTAL_WHITESPACE = Pattern.compile("[ \\t\\x0B\\f\\r]+");
+    private static final Pattern BLANK_LINES = Pattern.compile("\\n{3,}");
+
+    @Value("${file.upload-dir:./uploads/cvs}")
+    private String uploadDir;
+
+    // Mémoire maximale utilisée par PDFBox avant de basculer sur un fichier temporaire
+    @Value("${cv.extraction.max-main-memory-mb:16}")
+    private long maxMainMemoryMb = 16;
+
+    // Longueur maximale du texte conservé, pour borner la taille des prompts
+    @Value("${cv.extraction.max-chars:20000}")
+    private int maxChars = 20000;
+
+    @Autowired
+    private CvTextRepository cvTextRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Retourne le texte du CV d'un utilisateur, en l'extrayant et en le stockant s'il n'a pas
+     * encore été calculé pour cette version du CV
+     *
+     * @param user L'utilisateur
+     * @return Texte extrait du CV
+     * @throws IllegalStateException si l'utilisateur n'a pas de CV ou si le CV est illisible
+     */
+    public String getCvText(User user) {
+        Path cvPath = resolveCvPath(user);
+        byte[] cvData = user.getCvData();
+        if (cvPath == null && (cvData == null || cvData.length == 0)) {
+            throw new IllegalStateException("Aucun CV trouvé pour cet utilisateur");
+        }
+
+        try {
+            String contentHash = user.getCvContentHash();
+            if (contentHash == null) {
+                // CV déposé avant le calcul des empreintes : l'empreinte est recalculée à la volée
+                contentHash = cvPath != null ? computeContentHash(cvPath) : computeContentHash(cvData);
+            }
+
+            Optional<CvText> stored = cvTextRepository.findById(contentHash);
+            if (stored.isPresent()) {
+                logger.debug("Texte du CV de l'utilisateur {} lu depuis le cache", user.getId());
+                return stored.get().getText();
+            }
+
+            logger.info("Extraction du texte du CV de l'utilisateur {}", user.getId());
+            String text = cvPath != null ? extractText(cvPath) : extractText(cvData);
+            store(contentHash, text);
+            return text;
+        } catch (IOException e) {
+            logger.error("Erreur lors de l'extraction du texte du CV de l'utilisateur {}: {}", user.getId(), e.getMessage());
+            throw new IllegalStateException("Impossible de lire le fichier CV", e);
+        }
+    }
+
+    /**
+     * Extrait et stocke le texte d'un CV qui vient d'être déposé
+     *
+     * @param cvPath Chemin du fichier CV
+     * @return L'empreinte SHA-256 du CV, clé du texte stocké
+     * @throws IOException si le fichier ne peut pas être lu ou analysé
+     */
+    public String extractAndStore(Path cvPath) throws IOException {
+        String contentHash = computeContentHash(cvPath);
+        if (!cvTextRepository.existsById(contentHash)) {
+            store(contentHash, extractText(cvPath));
+        }
+        return contentHash;
+    }
+
+    /**
+     * Supprime le texte stocké du CV actuel d'un utilisateur, sauf s'il est partagé avec le CV identique
+     * d'un autre utilisateur. Doit être appelé avant la suppression du fichier et des données du CV.
+     *
+     * @param user L'utilisateur dont le CV est supprimé
+     * @return Le nombre de textes supprimés
+     * @throws IOException si le fichier CV ne peut pas être lu pour recalculer son empreinte
+     */
+    public int deleteCvText(User user) throws IOException {
+        // Empreintes sous lesquelles getCvText a pu stocker le texte, y compris celles recalculées à la volée
+        Set<String> contentHashes = new LinkedHashSet<>();
+        if (user.getCvContentHash() != null) {
+            contentHashes.add(user.getCvContentHash());
+        }
+        Path cvPath = resolveCvPath(user);
+        if (cvPath != null) {
+            contentHashes.add(computeContentHash(cvPath));
+        }
+        if (user.getCvData() != null && user.getCvData().length > 0) {
+            contentHashes.add(computeContentHash(user.getCvData()));
+        }
+
+        int deleted = 0;
+        for (String contentHash : contentHashes) {
+            if (userRepository.existsByCvContentHashAndIdNot(contentHash, user.getId())) {
+                logger.debug("Texte du CV {} conservé : il est partagé avec un autre utilisateur", contentHash);
+            } else if (cvTextRepository.existsById(contentHash)) {
+                cvTextRepository.deleteById(contentHash);
+                deleted++;
+            }
+        }
+        logger.info("{} textes de CV supprimés pour l'utilisateur {}", deleted, user.getId());
+        return deleted;
+    }
+
+    /**
+     * Calcule l'empreinte SHA-256 d'un fichier en le lisant par blocs
+     *
+     * @param path Chemin du fichier
+     * @return L'empreinte hexadécimale
+     * @throws IOException si le fichier ne peut pas être lu
+     */
+    public String computeContentHash(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private String computeContentHash(byte[] data) {
+        return HexFormat.of().formatHex(newDigest().digest(data));
+    }
+
+    /**
+     * Extrait le texte d'un fichier CV ; les PDF sont lus directement depuis le disque
+     */
+    private String extractText(Path path) throws IOException {
+        FileMagic magic = FileMagic.valueOf(path.toFile());
+        if (magic == FileMagic.PDF) {
+            try (PDDocument document = PDDocument.load(path.toFile(), pdfMemorySetting())) {
+                return extractPdfText(document);
+            }
+        }
+        try (InputStream in = Files.newInputStream(path)) {
+            return extractWordText(FileMagic.prepareToCheckMagic(in), magic);
+        }
+    }
+
+    /**
+     * Extrait le texte d'un CV stocké en base de données (le tableau est lu sans copie)
+     */
+    private String extractText(byte[] data) throws IOException {
+        FileMagic magic = FileMagic.valueOf(data);
+        if (magic == FileMagic.PDF) {
+            try (PDDocument document = PDDocument.load(data)) {
+                return extractPdfText(document);
+            }
+        }
+        return extractWordText(new ByteArrayInputStream(data), magic);
+    }
+
+    private String extractPdfText(PDDocument document) throws IOException {
+        StringWriter writer = new StringWriter();
+        new PDFTextStripper().writeText(document, writer);
+        return normalize(writer.toString());
+    }
+
+    private String extractWordText(InputStream in, FileMagic magic) throws IOException {
+        if (magic != FileMagic.OLE2 && magic != FileMagic.OOXML) {
+            throw new IOException("Format de CV non supporté: " + magic);
+        }
+        try (POITextExtractor extractor = ExtractorFactory.createExtractor(in)) {
+            if (extractor == null) {
+                throw new IOException("Format de document Word non reconnu");
+            }
+            return normalize(extractor.getText());
+        }
+    }
+
+    /**
+     * Nettoie le texte extrait et le tronque à la longueur maximale configurée
+     */
+    private String normalize(String text) {
+        String cleaned = BLANK_LINES.matcher(HORIZONTAL_WHITESPACE.matcher(text).replaceAll(" ")).replaceAll("\n\n").trim();
+        if (cleaned.isEmpty()) {
+            throw new IllegalStateException("Aucun texte exploitable n'a pu être extrait du CV");
+        }
+        return cleaned.length() > maxChars ? cleaned.substring(0, maxChars) : cleaned;
+    }
+
+    /**
+     * Stocke le texte extrait dans une transaction dédiée, y compris lorsque l'appelant est en lecture seule
+     */
+    private void store(String contentHash, String text) {
+        try {
+            TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+            transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            transaction.executeWithoutResult(status -> cvTextRepository.save(new CvText(contentHash, text, null)));
+        } catch (DataIntegrityViolationException e) {
+            // Le même CV a été extrait en parallèle par une autre requête : le texte est déjà stocké
+            logger.debug("Texte du CV {} déjà stocké", contentHash);
+        }
+    }
+
+    private Path resolveCvPath(User user) {
+        if (user.getCvFilename() == null || user.getCvFilename().isEmpty()) {
+            return null;
+        }
+        Path path = Paths.get(uploadDir, user.getCvFilename());
+        return Files.isRegularFile(path) ? path : null;
+    }
+
+    private MemoryUsageSetting pdfMemorySetting() {
+        return MemoryUsageSetting.setupMixed(maxMainMemoryMb * 1024 * 1024);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Fournisseur de vecteurs d'embedding utilisés par l'index sémantique des offres d'emploi
+ */
+public interface EmbeddingProvider {
+
+    /**
+     * Calcule le vecteur d'embedding d'un texte
+     *
+     * @param text Le texte à encoder
+     * @return Le vecteur d'embedding (non normalisé)
+     */
+    float[] embed(String text);
+
+    /**
+     * @return Le nom du fournisseur, utilisé dans les logs
+     */
+    String getName();
+}
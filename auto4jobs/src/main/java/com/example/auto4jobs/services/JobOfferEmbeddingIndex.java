@@ -0,0 +1,189 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Index vectoriel en mémoire des offres d'emploi actives.
+ * Les vecteurs sont normalisés et stockés dans un unique tableau de floats contigu, de sorte que la
+ * similarité cosinus se réduit à un produit scalaire calculé sans allocation lors d'une recherche.
+ * Les recherches lisent un instantané immuable : une mise à jour de l'index ne bloque jamais les lecteurs.
+ * Les offres sont encodées hors de tout verrou, le nouvel état n'étant publié qu'une fois complet ; deux
+ * mises à jour concurrentes ne s'attendent donc pas pendant les appels au fournisseur d'embeddings.
+ */
+@Service
+public class JobOfferEmbeddingIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobOfferEmbeddingIndex.class);
+
+    @Autowired
+    private EmbeddingProvider embeddingProvider;
+
+    // Embeddings déjà calculés, réutilisés tant que l'offre n'a pas été modifiée, et instantané des recherches
+    private final AtomicReference<IndexState> state = new AtomicReference<>(
+            new IndexState(Map.of(), new Snapshot(new long[0], new float[0], 0, 0)));
+
+    /**
+     * Met l'index en cohérence avec la liste des offres actives. Seules les offres nouvelles ou
+     * modifiées depuis le dernier appel sont encodées ; les offres absentes de la liste sont retirées.
+     *
+     * @param offers Les offres actives
+     * @param textFunction Fonction produisant le texte à encoder pour une offre
+     */
+    public void refresh(List<JobOffer> offers, Function<JobOffer, String> textFunction) {
+        // Embeddings calculés par cet appel, conservés si une autre mise à jour publie son état entre-temps
+        Map<Long, CachedEmbedding> encodedHere = new HashMap<>();
+        while (true) {
+            IndexState current = state.get();
+            Map<Long, CachedEmbedding> retained = new HashMap<>();
+            boolean changed = false;
+            for (JobOffer offer : offers) {
+                CachedEmbedding cached = current.embeddings().get(offer.getId());
+                if (cached == null || !cached.isValidFor(offer.getUpdatedAt())) {
+                    cached = encodedHere.get(offer.getId());
+                    if (cached == null || !cached.isValidFor(offer.getUpdatedAt())) {
+                        cached = new CachedEmbedding(offer.getUpdatedAt(), normalize(embeddingProvider.embed(textFunction.apply(offer))));
+                        encodedHere.put(offer.getId(), cached);
+                    }
+                    changed = true;
+                }
+                retained.put(offer.getId(), cached);
+            }
+            if (!changed && retained.keySet().equals(current.embeddings().keySet())) {
+                // Aucune offre ajoutée, modifiée ou retirée : l'instantané courant reste valide
+                return;
+            }
+            if (state.compareAndSet(current, new IndexState(Map.copyOf(retained), buildSnapshot(retained)))) {
+                logger.info("Index sémantique mis à jour avec {} : {} offres indexées, {} encodées",
+                        embeddingProvider.getName(), state.get().snapshot().size(), encodedHere.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Range les vecteurs dans un tableau contigu ; les vecteurs d'une dimension inattendue sont ignorés
+     */
+    private Snapshot buildSnapshot(Map<Long, CachedEmbedding> retained) {
+        int dimensions = retained.values().stream().mapToInt(e -> e.vector().length).max().orElse(0);
+        long[] ids = new long[retained.size()];
+        float[] vectors = new float[retained.size() * dimensions];
+        int row = 0;
+        for (Map.Entry<Long, CachedEmbedding> entry : retained.entrySet()) {
+            float[] vector = entry.getValue().vector();
+            if (vector.length != dimensions) {
+                logger.warn("Dimension d'embedding inattendue pour l'offre {} ({} au lieu de {}), offre ignorée",
+                        entry.getKey(), vector.length, dimensions);
+                continue;
+            }
+            ids[row] = entry.getKey();
+            System.arraycopy(vector, 0, vectors, row * dimensions, dimensions);
+            row++;
+        }
+        return new Snapshot(ids, vectors, dimensions, row);
+    }
+
+    /**
+     * Encode un texte (typiquement un CV) avec le même fournisseur que les offres
+     *
+     * @param text Le texte à encoder
+     * @return Le vecteur normalisé
+     */
+    public float[] embedQuery(String text) {
+        return normalize(embeddingProvider.embed(text));
+    }
+
+    /**
+     * Retourne les offres les plus proches d'un vecteur de requête
+     *
+     * @param query Vecteur normalisé, obtenu avec {@link #embedQuery(String)}
+     * @param limit Nombre maximal d'offres à retourner
+     * @return Les offres triées par similarité cosinus décroissante
+     */
+    public List<ScoredOffer> topN(float[] query, int limit) {
+        Snapshot current = state.get().snapshot();
+        if (limit <= 0 || current.size() == 0) {
+            return Collections.emptyList();
+        }
+        if (query.length != current.dimensions()) {
+            throw new IllegalArgumentException("Dimension de la requête (" + query.length
+                    + ") différente de celle de l'index (" + current.dimensions() + ")");
+        }
+
+        // Tas min de taille limit : la racine est le moins bon des meilleurs résultats
+        PriorityQueue<ScoredOffer> best = new PriorityQueue<>(limit + 1, (a, b) -> Double.compare(a.similarity(), b.similarity()));
+        float[] vectors = current.vectors();
+        int dimensions = current.dimensions();
+        for (int row = 0; row < current.size(); row++) {
+            int offset = row * dimensions;
+            float dot = 0f;
+            for (int i = 0; i < dimensions; i++) {
+                dot += vectors[offset + i] * query[i];
+            }
+            if (best.size() < limit) {
+                best.add(new ScoredOffer(current.offerIds()[row], dot));
+            } else if (dot > best.peek().similarity()) {
+                best.poll();
+                best.add(new ScoredOffer(current.offerIds()[row], dot));
+            }
+        }
+
+        List<ScoredOffer> result = new ArrayList<>(best);
+        result.sort((a, b) -> Double.compare(b.similarity(), a.similarity()));
+        return result;
+    }
+
+    /**
+     * @return Le nombre d'offres actuellement indexées
+     */
+    public int size() {
+        return state.get().snapshot().size();
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float inverse = (float) (1.0 / Math.sqrt(norm));
+        float[] normalized = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] * inverse;
+        }
+        return normalized;
+    }
+
+    /**
+     * Offre retournée par une recherche, avec sa similarité cosinus (entre -1 et 1)
+     */
+    public record ScoredOffer(long offerId, double similarity) {
+    }
+
+    private record CachedEmbedding(Date updatedAt, float[] vector) {
+        boolean isValidFor(Date offerUpdatedAt) {
+            return updatedAt == null ? offerUpdatedAt == null : updatedAt.equals(offerUpdatedAt);
+        }
+    }
+
+    private record Snapshot(long[] offerIds, float[] vectors, int dimensions, int size) {
+    }
+
+    private record IndexState(Map<Long, CachedEmbedding> embeddings, Snapshot snapshot) {
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Index lexical en mémoire des offres d'emploi, interrogé avec le texte d'un CV selon le modèle BM25.
+ * Les textes sont découpés en termes normalisés (minuscules, sans accents, sans mots vides français et
+ * anglais, réduits par une racinisation légère), puis rangés dans un index inversé terme → offres.
+ * Le score d'une offre est rapporté au score qu'elle obtiendrait si le CV contenait tous ses termes,
+ * ce qui donne un score stable entre 0 et 100, calculé en quelques microsecondes.
+ * Comme pour {@link JobOfferEmbeddingIndex}, les recherches lisent un instantané immuable.
+ */
+@Service
+public class JobOfferLexicalIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobOfferLexicalIndex.class);
+
+    // Paramètres usuels de BM25 : saturation de la fréquence d'un terme et normalisation par la longueur
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    // Longueur minimale d'un radical après suppression d'un suffixe
+    private static final int MIN_STEM_LENGTH = 4;
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9+#]+");
+
+    // Suffixes flexionnels et dérivationnels courants, du plus long au plus court
+    private static final String[] SUFFIXES = {
+            "ements", "ement", "ments", "ment", "ations", "ation", "ables", "able", "euses", "euse", "eurs", "eur",
+            "ings", "ing", "ers", "er", "es", "ed", "s", "e"
+    };
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            // Français
+            "au", "aux", "avec", "ce", "ces", "cette", "dans", "de", "des", "du", "elle", "en", "est", "et", "il",
+            "ils", "la", "le", "les", "leur", "leurs", "mais", "nous", "ou", "par", "pas", "pour", "qu", "que", "qui",
+            "sa", "se", "ses", "son", "sont", "sur", "un", "une", "vous", "afin", "ainsi", "aussi", "comme", "etre",
+            "avoir", "tres", "plus", "tout", "tous", "toute", "toutes", "votre", "vos", "notre", "nos",
+            // Anglais
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "have", "in", "is", "it", "its",
+            "of", "on", "or", "that", "the", "this", "to", "was", "were", "will", "with", "you", "your", "our", "we",
+            // Libellés du texte des offres
+            "titre", "description", "competences", "techniques", "comportementales", "requises", "formation",
+            "experience", "souhaitee", "certifications", "demandees", "null"
+    );
+
+    // Fréquences des termes déjà calculées, réutilisées tant que l'offre n'a pas été modifiée
+    private final Map<Long, AnalyzedOffer> analyzedOffers = new HashMap<>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Met l'index en cohérence avec la liste des offres actives. Seules les offres nouvelles ou
+     * modifiées depuis le dernier appel sont analysées ; les offres absentes de la liste sont retirées.
+     *
+     * @param offers Les offres actives
+     * @param textFunction Fonction produisant le texte indexé d'une offre
+     */
+    public synchronized void refresh(List<JobOffer> offers, Function<JobOffer, String> textFunction) {
+        Map<Long, AnalyzedOffer> retained = new HashMap<>();
+        int analyzed = 0;
+        for (JobOffer offer : offers) {
+            AnalyzedOffer cached = analyzedOffers.get(offer.getId());
+            if (cached == null || !cached.isValidFor(offer.getUpdatedAt())) {
+                cached = analyze(offer, textFunction.apply(offer));
+                analyzed++;
+            }
+            retained.put(offer.getId(), cached);
+        }
+        if (analyzed == 0 && retained.keySet().equals(analyzedOffers.keySet())) {
+            // Aucune offre ajoutée, modifiée ou retirée : l'instantané courant reste valide
+            return;
+        }
+        analyzedOffers.clear();
+        analyzedOffers.putAll(retained);
+        rebuild();
+        logger.info("Index lexical mis à jour : {} offres indexées, {} analysées", retained.size(), analyzed);
+    }
+
+    /**
+     * Ajoute ou met à jour une offre dans l'index si elle en est absente ou si elle a été modifiée
+     *
+     * @param offer L'offre d'emploi
+     * @param text Le texte indexé de l'offre
+     */
+    public void ensureIndexed(JobOffer offer, String text) {
+        if (snapshot.isCurrent(offer)) {
+            return;
+        }
+        synchronized (this) {
+            AnalyzedOffer cached = analyzedOffers.get(offer.getId());
+            if (cached != null && cached.isValidFor(offer.getUpdatedAt())) {
+                return;
+            }
+            analyzedOffers.put(offer.getId(), analyze(offer, text));
+            rebuild();
+        }
+    }
+
+    /**
+     * Calcule le score BM25 normalisé d'une offre indexée pour un texte de requête
+     *
+     * @param queryText Le texte de la requête (typiquement un CV)
+     * @param offerId L'identifiant de l'offre
+     * @return Score entre 0 et 100 (0 si l'offre n'est pas indexée)
+     */
+    public double score(String queryText, Long offerId) {
+        return score(queryTerms(queryText), offerId);
+    }
+
+    /**
+     * Calcule le score BM25 normalisé d'une offre indexée pour des termes de requête
+     *
+     * @param queryTerms Les termes de la requête, obtenus avec {@link #queryTerms(String)}
+     * @param offerId L'identifiant de l'offre
+     * @return Score entre 0 et 100 (0 si l'offre n'est pas indexée)
+     */
+    public double score(Set<String> queryTerms, Long offerId) {
+        Snapshot current = snapshot;
+        Integer document = current.documents().get(offerId);
+        if (document == null || current.selfScores()[document] == 0) {
+            return 0;
+        }
+        double score = 0;
+        for (String term : queryTerms) {
+            Postings postings = current.postings().get(term);
+            if (postings != null) {
+                int frequency = postings.frequencyIn(document);
+                if (frequency > 0) {
+                    score += postings.idf() * saturate(frequency, current.lengthNorms()[document]);
+                }
+            }
+        }
+        return Math.min(100, 100 * score / current.selfScores()[document]);
+    }
+
+    /**
+     * Découpe un texte de requête en termes distincts
+     *
+     * @param text Le texte de la requête
+     * @return L'ensemble des termes normalisés du texte
+     */
+    public Set<String> queryTerms(String text) {
+        return new HashSet<>(analyze(text));
+    }
+
+    /**
+     * Découpe un texte en termes normalisés : minuscules, sans accents ni ponctuation, sans mots vides,
+     * puis réduits à leur radical par suppression du suffixe le plus long
+     *
+     * @param text Le texte à découper
+     * @return Les termes du texte, dans l'ordre et avec leurs répétitions
+     */
+    public List<String> analyze(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null || text.isBlank()) {
+            return terms;
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        for (String token : SEPARATORS.split(normalized.toLowerCase())) {
+            if (token.isEmpty() || STOP_WORDS.contains(token)) {
+                continue;
+            }
+            if (token.length() < 2 && !token.contains("+") && !token.contains("#")) {
+                continue;
+            }
+            terms.add(stem(token));
+        }
+        return terms;
+    }
+
+    /**
+     * @return Le nombre d'offres actuellement indexées
+     */
+    public int size() {
+        return snapshot.documents().size();
+    }
+
+    /**
+     * Réduit un token à son radical ; les tokens contenant des chiffres ou des symboles (c++, c#, java8) sont conservés
+     */
+    private static String stem(String token) {
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c < 'a' || c > 'z') {
+                return token;
+            }
+        }
+        for (String suffix : SUFFIXES) {
+            if (token.endsWith(suffix) && token.length() - suffix.length() >= MIN_STEM_LENGTH) {
+                return token.substring(0, token.length() - suffix.length());
+            }
+        }
+        return token;
+    }
+
+    private AnalyzedOffer analyze(JobOffer offer, String text) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        List<String> terms = analyze(text);
+        terms.forEach(term -> frequencies.merge(term, 1, Integer::sum));
+        return new AnalyzedOffer(offer.getUpdatedAt(), frequencies, terms.size());
+    }
+
+    /**
+     * Reconstruit l'index inversé à partir des offres analysées ; appelé sous le verrou de l'index
+     */
+    private void rebuild() {
+        int size = analyzedOffers.size();
+        Map<Long, Integer> documents = new HashMap<>(size * 2);
+        Date[] updatedAts = new Date[size];
+        double totalLength = 0;
+        int document = 0;
+        List<AnalyzedOffer> ordered = new ArrayList<>(size);
+        for (Map.Entry<Long, AnalyzedOffer> entry : analyzedOffers.entrySet()) {
+            documents.put(entry.getKey(), document);
+            updatedAts[document] = entry.getValue().updatedAt();
+            totalLength += entry.getValue().length();
+            ordered.add(entry.getValue());
+            document++;
+        }
+        double averageLength = size > 0 ? Math.max(1, totalLength / size) : 1;
+
+        // Postings : pour chaque terme, les documents qui le contiennent et la fréquence du terme
+        Map<String, List<int[]>> postingLists = new HashMap<>();
+        double[] lengthNorms = new double[size];
+        for (document = 0; document < size; document++) {
+            AnalyzedOffer analyzed = ordered.get(document);
+            lengthNorms[document] = K1 * (1 - B + B * analyzed.length() / averageLength);
+            for (Map.Entry<String, Integer> term : analyzed.frequencies().entrySet()) {
+                postingLists.computeIfAbsent(term.getKey(), key -> new ArrayList<>()).add(new int[]{document, term.getValue()});
+            }
+        }
+
+        Map<String, Postings> postings = new HashMap<>(postingLists.size() * 2);
+        double[] selfScores = new double[size];
+        for (Map.Entry<String, List<int[]>> entry : postingLists.entrySet()) {
+            List<int[]> list = entry.getValue();
+            // Variante de l'IDF toujours positive, même pour un terme présent dans la majorité des offres
+            double idf = Math.log(1 + (size - list.size() + 0.5) / (list.size() + 0.5));
+            Map<Integer, Integer> frequencies = new HashMap<>(list.size() * 2);
+            for (int[] posting : list) {
+                frequencies.put(posting[0], posting[1]);
+                selfScores[posting[0]] += idf * saturate(posting[1], lengthNorms[posting[0]]);
+            }
+            postings.put(entry.getKey(), new Postings(idf, frequencies));
+        }
+
+        snapshot = new Snapshot(documents, updatedAts, lengthNorms, selfScores, postings);
+    }
+
+    private static double saturate(int frequency, double lengthNorm) {
+        return frequency * (K1 + 1) / (frequency + lengthNorm);
+    }
+
+    private record AnalyzedOffer(Date updatedAt, Map<String, Integer> frequencies, int length) {
+        boolean isValidFor(Date offerUpdatedAt) {
+            return updatedAt == null ? offerUpdatedAt == null : updatedAt.equals(offerUpdatedAt);
+        }
+    }
+
+    private record Postings(double idf, Map<Integer, Integer> frequencies) {
+        int frequencyIn(int document) {
+            return frequencies.getOrDefault(document, 0);
+        }
+    }
+
+    /**
+     * État immuable de l'index : numéro de document de chaque offre, norme de longueur et score maximal
+     * de chaque document, et postings par terme
+     */
+    private record Snapshot(Map<Long, Integer> documents, Date[] updatedAts, double[] lengthNorms, double[] selfScores,
+                            Map<String, Postings> postings) {
+
+        static final Snapshot EMPTY = new Snapshot(Map.of(), new Date[0], new double[0], new double[0], Map.of());
+
+        boolean isCurrent(JobOffer offer) {
+            Integer document = documents.get(offer.getId());
+            if (document == null) {
+                return false;
+            }
+            Date updatedAt = updatedAts[document];
+            return updatedAt == null ? offer.getUpdatedAt() == null : updatedAt.equals(offer.getUpdatedAt());
+        }
+    }
+}
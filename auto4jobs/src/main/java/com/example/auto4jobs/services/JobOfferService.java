@@ -5,13 +5,16 @@ import com.example.auto4jobs.dto.JobOfferResponseDTO;
 import com.example.auto4jobs.entities.Entreprise;
 import com.example.auto4jobs.entities.JobOffer;
 import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.events.JobOfferChangedEvent;
 import com.example.auto4jobs.repositories.EntrepriseRepository;
 import com.example.auto4jobs.repositories.JobOfferRepository;
+import com.example.auto4jobs.repositories.MatchingResultRepository;
 import com.example.auto4jobs.repositories.UserRepository;
 import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
@@ -38,6 +41,12 @@ public class JobOfferService {
     @Autowired
     private EntrepriseRepository entrepriseRepository;
 
+    @Autowired
+    private MatchingResultRepository matchingResultRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     private User getAuthenticatedRecruiter() {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
         String currentRecruiterEmail = authentication.getName();
@@ -93,6 +102,8 @@ public class JobOfferService {
 
         // Consider adding createdAt/updatedAt logic here if not using @PrePersist/@PreUpdate in entity
         JobOffer savedJobOffer = jobOfferRepository.save(jobOffer);
+        // Les candidats déjà matchés seront évalués sur cette offre après le commit
+        eventPublisher.publishEvent(new JobOfferChangedEvent(savedJobOffer.getId()));
         return convertToResponseDTO(savedJobOffer);
     }
 
@@ -171,6 +182,8 @@ public class JobOfferService {
         // recruiter and entreprise are not updated here by design in this version
 
         JobOffer updatedJobOffer = jobOfferRepository.save(jobOffer);
+        // Seuls les résultats de matching de cette offre sont recalculés après le commit
+        eventPublisher.publishEvent(new JobOfferChangedEvent(updatedJobOffer.getId()));
         return convertToResponseDTO(updatedJobOffer);
     }
 
@@ -184,6 +197,8 @@ public class JobOfferService {
             throw new IllegalStateException("Recruiter is not authorized to delete this job offer.");
         }
 
+        // Les résultats de matching de l'offre n'ont plus de sens et bloqueraient sa suppression
+        matchingResultRepository.deleteAll(matchingResultRepository.findByJobOffer(jobOffer));
         jobOfferRepository.delete(jobOffer);
     }
 
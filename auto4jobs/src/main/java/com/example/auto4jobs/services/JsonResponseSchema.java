@@ -0,0 +1,114 @@
+package com.example.auto4jobs.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schéma JSON imposé à une réponse d'Ollama. Le schéma est envoyé tel quel dans le champ {@code format}
+ * de la requête pour contraindre la génération, puis la réponse est vérifiée localement, le modèle
+ * pouvant ne pas respecter toutes les contraintes. Seul le sous-ensemble de JSON Schema utile aux
+ * réponses du matching est vérifié : {@code type}, {@code properties}, {@code required}, {@code items},
+ * {@code minimum}, {@code maximum}, {@code minItems}, {@code maxItems} et {@code minLength}.
+ */
+public class JsonResponseSchema {
+
+    private final String name;
+
+    private final JsonNode schema;
+
+    /**
+     * @param name Nom du schéma, pour les messages
+     * @param schema Le schéma JSON
+     */
+    public JsonResponseSchema(String name, JsonNode schema) {
+        this.name = name;
+        this.schema = schema;
+    }
+
+    /**
+     * Vérifie une réponse
+     *
+     * @param value La réponse interprétée en JSON
+     * @return Les écarts au schéma, vides si la réponse est valide
+     */
+    public List<String> validate(JsonNode value) {
+        List<String> errors = new ArrayList<>();
+        validate(schema, value, "$", errors);
+        return errors;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Le schéma JSON, à envoyer dans le champ {@code format} de la requête
+     */
+    public JsonNode getSchema() {
+        return schema;
+    }
+
+    private void validate(JsonNode schema, JsonNode value, String path, List<String> errors) {
+        String type = schema.path("type").asText("");
+        if (!type.isEmpty() && !hasType(value, type)) {
+            errors.add(path + " : " + type + " attendu");
+            return;
+        }
+
+        if (value.isObject()) {
+            for (JsonNode required : schema.path("required")) {
+                if (!value.hasNonNull(required.asText())) {
+                    errors.add(path + "." + required.asText() + " : champ obligatoire absent");
+                }
+            }
+            Iterator<Map.Entry<String, JsonNode>> properties = schema.path("properties").fields();
+            while (properties.hasNext()) {
+                Map.Entry<String, JsonNode> property = properties.next();
+                JsonNode propertyValue = value.get(property.getKey());
+                if (propertyValue != null && !propertyValue.isNull()) {
+                    validate(property.getValue(), propertyValue, path + "." + property.getKey(), errors);
+                }
+            }
+        } else if (value.isArray()) {
+            if (schema.has("minItems") && value.size() < schema.get("minItems").asInt()) {
+                errors.add(path + " : au moins " + schema.get("minItems").asInt() + " éléments attendus");
+            }
+            if (schema.has("maxItems") && value.size() > schema.get("maxItems").asInt()) {
+                errors.add(path + " : au plus " + schema.get("maxItems").asInt() + " éléments attendus");
+            }
+            if (schema.has("items")) {
+                for (int i = 0; i < value.size(); i++) {
+                    validate(schema.get("items"), value.get(i), path + "[" + i + "]", errors);
+                }
+            }
+        } else if (value.isNumber()) {
+            if (schema.has("minimum") && value.asDouble() < schema.get("minimum").asDouble()) {
+                errors.add(path + " : valeur inférieure à " + schema.get("minimum").asText());
+            }
+            if (schema.has("maximum") && value.asDouble() > schema.get("maximum").asDouble()) {
+                errors.add(path + " : valeur supérieure à " + schema.get("maximum").asText());
+            }
+        } else if (value.isTextual()) {
+            if (schema.has("minLength") && value.asText().trim().length() < schema.get("minLength").asInt()) {
+                errors.add(path + " : texte trop court");
+            }
+        }
+    }
+
+    private static boolean hasType(JsonNode value, String type) {
+        return switch (type) {
+            case "object" -> value.isObject();
+            case "array" -> value.isArray();
+            case "string" -> value.isTextual();
+            // Un nombre sans partie décimale (par exemple 85.0) est accepté comme entier
+            case "integer" -> value.isIntegralNumber() || (value.isNumber() && value.asDouble() == Math.rint(value.asDouble()));
+            case "number" -> value.isNumber();
+            case "boolean" -> value.isBoolean();
+            default -> true;
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.auto4jobs.services;
+
+import java.util.Arrays;
+
+/**
+ * Fenêtre glissante des dernières durées d'appel, pour estimer un centile de latence
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+
+    private int count;
+
+    private int next;
+
+    /**
+     * @param windowSize Nombre de dernières durées conservées
+     */
+    public LatencyTracker(int windowSize) {
+        this.samples = new long[Math.max(1, windowSize)];
+    }
+
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * @param percentile Centile recherché, entre 0 et 1
+     * @param minSamples Nombre minimal de durées pour que l'estimation soit significative
+     * @return La durée au centile demandé, ou -1 si la fenêtre contient moins de {@code minSamples} durées
+     */
+    public long percentile(double percentile, int minSamples) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < Math.max(1, minSamples)) {
+                return -1;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
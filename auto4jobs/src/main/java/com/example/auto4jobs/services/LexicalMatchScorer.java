@@ -0,0 +1,39 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Calcule les scores localement avec l'index lexical BM25 des offres ({@link JobOfferLexicalIndex}),
+ * et les explications selon le recouvrement des compétences demandées. Déterministe et sans appel
+ * réseau, il sert aussi de mode dégradé lorsque le modèle est indisponible ou que sa réponse est inexploitable.
+ */
+@Service
+public class LexicalMatchScorer implements MatchScorer {
+
+    @Autowired
+    private JobOfferLexicalIndex jobOfferLexicalIndex;
+
+    @Autowired
+    private SkillOverlapPrefilter skillOverlapPrefilter;
+
+    @Override
+    public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+        jobOfferLexicalIndex.ensureIndexed(offer, offerText);
+        double score = jobOfferLexicalIndex.score(cvText, offer.getId());
+        return new MatchEvaluation(score, withExplanations ? explain(cvText, offer, offerText) : List.of());
+    }
+
+    @Override
+    public List<String> explain(String cvText, JobOffer offer, String offerText) {
+        return skillOverlapPrefilter.explain(skillOverlapPrefilter.evaluate(skillOverlapPrefilter.tokenize(cvText), offer));
+    }
+
+    @Override
+    public String getName() {
+        return "lexical";
+    }
+}
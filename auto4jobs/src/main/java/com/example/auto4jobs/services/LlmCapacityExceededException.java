@@ -0,0 +1,31 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Appel à Ollama refusé par {@link LlmDispatcher} : file d'attente pleine, limite par utilisateur
+ * atteinte ou délai d'attente dépassé
+ */
+public class LlmCapacityExceededException extends RuntimeException {
+
+    private final boolean userLimit;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * @param message Description du refus
+     * @param userLimit true si le refus est dû à la limite de l'utilisateur plutôt qu'à la saturation globale
+     * @param retryAfterSeconds Délai estimé avant qu'une nouvelle tentative puisse aboutir
+     */
+    public LlmCapacityExceededException(String message, boolean userLimit, long retryAfterSeconds) {
+        super(message);
+        this.userLimit = userLimit;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public boolean isUserLimit() {
+        return userLimit;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
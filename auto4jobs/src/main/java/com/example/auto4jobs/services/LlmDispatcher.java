@@ -0,0 +1,486 @@
+package com.example.auto4jobs.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Point de passage unique des appels à Ollama. Le nombre d'appels simultanés est plafonné ; au-delà,
+ * les appels attendent dans une file bornée par classe de priorité (interactive, puis recalcul, puis
+ * arrière-plan). Dans une même classe, les utilisateurs sont servis à tour de rôle, de sorte qu'un
+ * utilisateur aux nombreuses offres ne retarde pas les autres. Un appel qui ne peut pas être mis en
+ * file est refusé immédiatement avec {@link LlmCapacityExceededException}.
+ * <p>
+ * Le plafond d'appels simultanés est adaptatif ({@link AdaptiveConcurrencyLimit}) : il part de
+ * {@code ollama.max-concurrent-calls}, augmente tant que la durée des appels reste stable et diminue
+ * dès qu'elle s'allonge, signe que les appels s'accumulent dans la file d'Ollama.
+ */
+@Service
+public class LlmDispatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmDispatcher.class);
+
+    // Clé de file des appels effectués sans utilisateur identifié
+    private static final Long ANONYMOUS_USER = -1L;
+
+    @Value("${ollama.max-concurrent-calls:4}")
+    private int maxConcurrentCalls = 4;
+
+    // Plafond adaptatif, entre les limites minimale et maximale (false : plafond fixe ollama.max-concurrent-calls)
+    @Value("${llm.dispatcher.adaptive.enabled:true}")
+    private boolean adaptive = true;
+
+    @Value("${llm.dispatcher.adaptive.min-limit:1}")
+    private int adaptiveMinLimit = 1;
+
+    @Value("${llm.dispatcher.adaptive.max-limit:16}")
+    private int adaptiveMaxLimit = 16;
+
+    // Allongement relatif de la durée des appels au-delà duquel le plafond diminue
+    @Value("${llm.dispatcher.adaptive.latency-tolerance:1.5}")
+    private double adaptiveLatencyTolerance = 1.5;
+
+    @Value("${llm.dispatcher.adaptive.backoff-ratio:0.9}")
+    private double adaptiveBackoffRatio = 0.9;
+
+    @Value("${llm.dispatcher.queue-capacity.interactive:32}")
+    private int interactiveQueueCapacity = 32;
+
+    @Value("${llm.dispatcher.queue-capacity.refresh:64}")
+    private int refreshQueueCapacity = 64;
+
+    @Value("${llm.dispatcher.queue-capacity.background:256}")
+    private int backgroundQueueCapacity = 256;
+
+    // Nombre maximal d'appels en attente pour un même utilisateur, toutes classes confondues
+    @Value("${llm.dispatcher.max-queued-per-user:16}")
+    private int maxQueuedPerUser = 16;
+
+    // Attente maximale dans la file avant refus (0 = sans limite)
+    @Value("${llm.dispatcher.max-wait-seconds.interactive:60}")
+    private long interactiveMaxWaitSeconds = 60;
+
+    @Value("${llm.dispatcher.max-wait-seconds.refresh:300}")
+    private long refreshMaxWaitSeconds = 300;
+
+    @Value("${llm.dispatcher.max-wait-seconds.background:0}")
+    private long backgroundMaxWaitSeconds = 0;
+
+    private final Object lock = new Object();
+
+    private final Map<LlmPriority, ClassQueue> queues = new EnumMap<>(LlmPriority.class);
+
+    private final Map<Long, Integer> queuedPerUser = new HashMap<>();
+
+    private final Map<LlmPriority, AtomicLong> rejectedCalls = new EnumMap<>(LlmPriority.class);
+
+    private final Map<LlmPriority, AtomicLong> completedCalls = new EnumMap<>(LlmPriority.class);
+
+    private int inFlight;
+
+    // Plafond adaptatif, null si le plafond est fixe
+    private AdaptiveConcurrencyLimit concurrencyLimit;
+
+    // Moyenne glissante de la durée d'un appel, pour estimer le délai avant une nouvelle tentative
+    private volatile double averageCallMillis = 1000;
+
+    @PostConstruct
+    public void init() {
+        for (LlmPriority priority : LlmPriority.values()) {
+            queues.put(priority, new ClassQueue(queueCapacity(priority)));
+            rejectedCalls.put(priority, new AtomicLong());
+            completedCalls.put(priority, new AtomicLong());
+        }
+        if (adaptive) {
+            concurrencyLimit = new AdaptiveConcurrencyLimit(maxConcurrentCalls, adaptiveMinLimit, adaptiveMaxLimit,
+                    adaptiveLatencyTolerance, adaptiveBackoffRatio);
+            logger.info("Répartiteur Ollama configuré avec un plafond adaptatif de {} appels simultanés (entre {} et {})",
+                    concurrencyLimit.getLimit(), concurrencyLimit.getMinLimit(), concurrencyLimit.getMaxLimit());
+        } else {
+            logger.info("Répartiteur Ollama configuré avec {} appels simultanés maximum", maxConcurrentCalls);
+        }
+    }
+
+    /**
+     * Exécute un appel à Ollama dans le contexte du thread courant ({@link LlmRequestContext}),
+     * après avoir obtenu une place
+     *
+     * @param call L'appel HTTP à Ollama
+     * @return Le résultat de l'appel
+     * @throws IOException si l'appel échoue
+     * @throws LlmCapacityExceededException si l'appel ne peut pas être mis en file ou attend trop longtemps
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    public <T> T execute(LlmCall<T> call) throws IOException, InterruptedException {
+        return executeMeasured(latency -> call.call());
+    }
+
+    /**
+     * Exécute un appel à Ollama dont la durée retenue par le plafond adaptatif est mesurée par l'appel
+     * lui-même ({@link CallLatency}) : pour une requête couverte, celle de l'appel au serveur choisi, et non
+     * le délai de la première réponse obtenue. Sans mesure, la durée totale de l'appel est retenue.
+     *
+     * @param call L'appel HTTP à Ollama
+     * @return Le résultat de l'appel
+     * @throws IOException si l'appel échoue
+     * @throws LlmCapacityExceededException si l'appel ne peut pas être mis en file ou attend trop longtemps
+     * @throws InterruptedException si le thread est interrompu pendant l'attente
+     */
+    public <T> T executeMeasured(MeasuredLlmCall<T> call) throws IOException, InterruptedException {
+        LlmRequestContext context = LlmRequestContext.current();
+        int concurrentCalls = acquire(context.priority(), context.userId() != null ? context.userId() : ANONYMOUS_USER);
+        long start = System.nanoTime();
+        CallLatency latency = new CallLatency();
+        boolean succeeded = false;
+        try {
+            T result = call.call(latency);
+            succeeded = true;
+            return result;
+        } finally {
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            averageCallMillis = averageCallMillis * 0.9 + elapsedMillis * 0.1;
+            completedCalls.get(context.priority()).incrementAndGet();
+            if (latency.millis >= 0) {
+                elapsedMillis = latency.millis;
+                succeeded = latency.succeeded;
+            }
+            // Un échec rapide (circuit ouvert, requête refusée) ne renseigne pas sur la charge d'Ollama ; un échec lent, si
+            if (concurrencyLimit != null && (succeeded || elapsedMillis >= concurrencyLimit.getBaselineMillis())
+                    && concurrencyLimit.record(elapsedMillis, concurrentCalls)) {
+                // Plafond relevé : les places supplémentaires reviennent aux appels en attente
+                synchronized (lock) {
+                    grantWaiting();
+                }
+            }
+            release();
+        }
+    }
+
+    /**
+     * Obtient une place sans attendre, pour un appel facultatif (requête couverte) : seulement si le
+     * plafond n'est pas atteint et qu'aucun appel n'attend, afin de ne jamais retarder un appel en file.
+     * La place est rendue avec {@link #release()}.
+     *
+     * @return true si une place a été obtenue
+     */
+    public boolean tryAcquire() {
+        synchronized (lock) {
+            if (inFlight >= currentLimit() || hasWaiting()) {
+                return false;
+            }
+            inFlight++;
+            return true;
+        }
+    }
+
+    /**
+     * Vérifie, avant de lancer un traitement, que la file de sa classe de priorité n'est pas pleine,
+     * afin de refuser rapidement plutôt qu'après une partie des appels
+     *
+     * @param priority Classe de priorité du traitement
+     * @throws LlmCapacityExceededException si la file est pleine
+     */
+    public void checkAdmission(LlmPriority priority) {
+        synchronized (lock) {
+            ClassQueue queue = queues.get(priority);
+            if (queue.size >= queue.capacity) {
+                rejectedCalls.get(priority).incrementAndGet();
+                throw new LlmCapacityExceededException("Le service de matching est saturé, veuillez réessayer plus tard",
+                        false, estimateRetryAfterSeconds());
+            }
+        }
+    }
+
+    /**
+     * Retourne l'occupation du répartiteur
+     *
+     * @return Map contenant les appels en cours, les files et les compteurs par classe de priorité
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        synchronized (lock) {
+            statistics.put("inFlight", inFlight);
+            statistics.put("maxConcurrentCalls", currentLimit());
+            for (LlmPriority priority : LlmPriority.values()) {
+                ClassQueue queue = queues.get(priority);
+                Map<String, Object> classStatistics = new LinkedHashMap<>();
+                classStatistics.put("queued", queue.size);
+                classStatistics.put("capacity", queue.capacity);
+                classStatistics.put("queuedUsers", queue.byUser.size());
+                classStatistics.put("completed", completedCalls.get(priority).get());
+                classStatistics.put("rejected", rejectedCalls.get(priority).get());
+                statistics.put(priority.name().toLowerCase(), classStatistics);
+            }
+        }
+        statistics.put("averageCallMillis", Math.round(averageCallMillis));
+        if (concurrencyLimit != null) {
+            Map<String, Object> adaptiveStatistics = new LinkedHashMap<>();
+            adaptiveStatistics.put("minLimit", concurrencyLimit.getMinLimit());
+            adaptiveStatistics.put("maxLimit", concurrencyLimit.getMaxLimit());
+            adaptiveStatistics.put("baselineMillis", Math.round(concurrencyLimit.getBaselineMillis()));
+            adaptiveStatistics.put("lastWindowMillis", Math.round(concurrencyLimit.getLastWindowMillis()));
+            adaptiveStatistics.put("increases", concurrencyLimit.getIncreases());
+            adaptiveStatistics.put("decreases", concurrencyLimit.getDecreases());
+            statistics.put("adaptiveLimit", adaptiveStatistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * Obtient une place, immédiatement ou après une attente dans la file de la classe de priorité
+     *
+     * @return Le nombre d'appels en cours une fois la place obtenue, cet appel compris
+     */
+    private int acquire(LlmPriority priority, Long userKey) throws InterruptedException {
+        Ticket ticket;
+        synchronized (lock) {
+            // Place libre sans appel en attente ; sinon, l'appel passe par la file pour ne devancer aucun appel en attente
+            if (inFlight < currentLimit() && !hasWaiting()) {
+                inFlight++;
+                return inFlight;
+            }
+            ClassQueue queue = queues.get(priority);
+            if (queue.size >= queue.capacity) {
+                rejectedCalls.get(priority).incrementAndGet();
+                throw new LlmCapacityExceededException("Le service de matching est saturé, veuillez réessayer plus tard",
+                        false, estimateRetryAfterSeconds());
+            }
+            int userQueued = queuedPerUser.getOrDefault(userKey, 0);
+            if (!ANONYMOUS_USER.equals(userKey) && userQueued >= maxQueuedPerUser) {
+                rejectedCalls.get(priority).incrementAndGet();
+                throw new LlmCapacityExceededException("Trop de demandes de matching en cours pour cet utilisateur",
+                        true, estimateRetryAfterSeconds());
+            }
+            ticket = new Ticket(userKey);
+            queue.add(ticket);
+            queuedPerUser.put(userKey, userQueued + 1);
+            // Places libres (plafond relevé) : attribuées dans l'ordre des files, cet appel compris
+            grantWaiting();
+        }
+
+        long maxWaitSeconds = maxWaitSeconds(priority);
+        InterruptedException interruption = null;
+        try {
+            if (maxWaitSeconds > 0) {
+                ticket.latch.await(maxWaitSeconds, TimeUnit.SECONDS);
+            } else {
+                ticket.latch.await();
+            }
+        } catch (InterruptedException e) {
+            interruption = e;
+        }
+        boolean granted;
+        int concurrentCalls;
+        synchronized (lock) {
+            // La place a pu être attribuée entre l'expiration (ou l'interruption) de l'attente et la prise du verrou
+            granted = ticket.granted;
+            concurrentCalls = inFlight;
+            if (!granted) {
+                queues.get(priority).remove(ticket);
+                decrementUserQueued(userKey);
+            }
+        }
+        if (interruption != null) {
+            if (granted) {
+                // Place attribuée à un appel qui n'aura pas lieu : elle revient aux appels suivants
+                release();
+            }
+            throw interruption;
+        }
+        if (!granted) {
+            rejectedCalls.get(priority).incrementAndGet();
+            throw new LlmCapacityExceededException("Délai d'attente du service de matching dépassé, veuillez réessayer plus tard",
+                    false, estimateRetryAfterSeconds());
+        }
+        return concurrentCalls;
+    }
+
+    /**
+     * Libère une place et attribue les places disponibles aux prochains appels en attente : aucune si le
+     * plafond vient de diminuer sous le nombre d'appels en cours, plusieurs s'il vient d'augmenter
+     */
+    public void release() {
+        synchronized (lock) {
+            inFlight--;
+            grantWaiting();
+        }
+    }
+
+    /**
+     * Attribue les places libres aux appels en attente, classes les plus prioritaires d'abord. Appelé avec le verrou.
+     */
+    private void grantWaiting() {
+        while (inFlight < currentLimit()) {
+            Ticket next = pollNext();
+            if (next == null) {
+                return;
+            }
+            decrementUserQueued(next.userKey);
+            next.granted = true;
+            next.latch.countDown();
+            inFlight++;
+        }
+    }
+
+    private boolean hasWaiting() {
+        return queues.values().stream().anyMatch(queue -> queue.size > 0);
+    }
+
+    /**
+     * Retire le prochain appel en attente, en servant d'abord les classes les plus prioritaires
+     */
+    private Ticket pollNext() {
+        for (LlmPriority priority : LlmPriority.values()) {
+            Ticket next = queues.get(priority).poll();
+            if (next != null) {
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private int currentLimit() {
+        return concurrencyLimit != null ? concurrencyLimit.getLimit() : maxConcurrentCalls;
+    }
+
+    private void decrementUserQueued(Long userKey) {
+        queuedPerUser.computeIfPresent(userKey, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private long estimateRetryAfterSeconds() {
+        int queued = queues.values().stream().mapToInt(queue -> queue.size).sum();
+        double waitMillis = averageCallMillis * (queued + 1) / Math.max(1, currentLimit());
+        return Math.max(1, Math.min(300, (long) Math.ceil(waitMillis / 1000)));
+    }
+
+    private int queueCapacity(LlmPriority priority) {
+        return switch (priority) {
+            case INTERACTIVE -> interactiveQueueCapacity;
+            case REFRESH -> refreshQueueCapacity;
+            case BACKGROUND -> backgroundQueueCapacity;
+        };
+    }
+
+    private long maxWaitSeconds(LlmPriority priority) {
+        return switch (priority) {
+            case INTERACTIVE -> interactiveMaxWaitSeconds;
+            case REFRESH -> refreshMaxWaitSeconds;
+            case BACKGROUND -> backgroundMaxWaitSeconds;
+        };
+    }
+
+    /**
+     * Appel à Ollama exécuté une fois une place obtenue
+     */
+    @FunctionalInterface
+    public interface LlmCall<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Appel à Ollama qui mesure lui-même la durée retenue par le plafond adaptatif
+     */
+    @FunctionalInterface
+    public interface MeasuredLlmCall<T> {
+        T call(CallLatency latency) throws IOException;
+    }
+
+    /**
+     * Durée retenue pour un appel, lorsqu'elle diffère de sa durée totale
+     */
+    public static final class CallLatency {
+        private volatile long millis = -1;
+        private volatile boolean succeeded;
+
+        /**
+         * @param millis Durée de l'appel au serveur choisi, jusqu'à sa réponse ou son abandon
+         * @param succeeded false si cet appel a échoué
+         */
+        public void record(long millis, boolean succeeded) {
+            this.succeeded = succeeded;
+            this.millis = millis;
+        }
+    }
+
+    /**
+     * Appel en attente d'une place ; {@code granted} est protégé par le verrou du répartiteur
+     */
+    private static class Ticket {
+        private final Long userKey;
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private boolean granted;
+
+        Ticket(Long userKey) {
+            this.userKey = userKey;
+        }
+    }
+
+    /**
+     * File bornée d'une classe de priorité : une sous-file par utilisateur, servies à tour de rôle.
+     * Accédée uniquement sous le verrou du répartiteur.
+     */
+    private static class ClassQueue {
+        private final int capacity;
+        private final Map<Long, ArrayDeque<Ticket>> byUser = new LinkedHashMap<>();
+        private final ArrayDeque<Long> rotation = new ArrayDeque<>();
+        private int size;
+
+        ClassQueue(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        void add(Ticket ticket) {
+            ArrayDeque<Ticket> userTickets = byUser.get(ticket.userKey);
+            if (userTickets == null) {
+                userTickets = new ArrayDeque<>();
+                byUser.put(ticket.userKey, userTickets);
+                rotation.addLast(ticket.userKey);
+            }
+            userTickets.addLast(ticket);
+            size++;
+        }
+
+        /**
+         * Retire le premier appel de l'utilisateur suivant dans la rotation
+         */
+        Ticket poll() {
+            Long userKey = rotation.pollFirst();
+            if (userKey == null) {
+                return null;
+            }
+            ArrayDeque<Ticket> userTickets = byUser.get(userKey);
+            Ticket ticket = userTickets.pollFirst();
+            if (userTickets.isEmpty()) {
+                byUser.remove(userKey);
+            } else {
+                rotation.addLast(userKey);
+            }
+            size--;
+            return ticket;
+        }
+
+        void remove(Ticket ticket) {
+            ArrayDeque<Ticket> userTickets = byUser.get(ticket.userKey);
+            if (userTickets == null || !userTickets.remove(ticket)) {
+                return;
+            }
+            size--;
+            if (userTickets.isEmpty()) {
+                byUser.remove(ticket.userKey);
+                rotation.remove(ticket.userKey);
+            }
+        }
+    }
+}
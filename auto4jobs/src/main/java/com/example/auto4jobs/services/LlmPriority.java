@@ -0,0 +1,13 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Classes de priorité des appels à Ollama, de la plus prioritaire à la moins prioritaire
+ */
+public enum LlmPriority {
+    // Requête d'un utilisateur qui attend la réponse
+    INTERACTIVE,
+    // Recalcul demandé explicitement ou déclenché par le dépôt d'un CV
+    REFRESH,
+    // Précalcul nocturne et réévaluation des offres modifiées
+    BACKGROUND
+}
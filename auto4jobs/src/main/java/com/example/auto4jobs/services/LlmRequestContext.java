@@ -0,0 +1,83 @@
+package com.example.auto4jobs.services;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Priorité et utilisateur des appels à Ollama effectués par le thread courant, lus par
+ * {@link LlmDispatcher}. Le contexte est ouvert par l'appelant pour la durée d'un traitement et
+ * transmis explicitement aux tâches soumises aux pools de threads. Sans contexte, un appel est
+ * traité comme interactif et anonyme.
+ *
+ * @param priority Classe de priorité des appels
+ * @param userId ID de l'utilisateur pour lequel les appels sont effectués, ou null
+ */
+public record LlmRequestContext(LlmPriority priority, Long userId) {
+
+    private static final ThreadLocal<LlmRequestContext> CURRENT = new ThreadLocal<>();
+
+    private static final LlmRequestContext DEFAULT = new LlmRequestContext(LlmPriority.INTERACTIVE, null);
+
+    /**
+     * @return Le contexte du thread courant, ou le contexte interactif anonyme si aucun n'est ouvert
+     */
+    public static LlmRequestContext current() {
+        LlmRequestContext context = CURRENT.get();
+        return context != null ? context : DEFAULT;
+    }
+
+    /**
+     * @param priority Classe de priorité
+     * @param userId ID de l'utilisateur, ou null
+     * @return Un nouveau contexte
+     */
+    public static LlmRequestContext of(LlmPriority priority, Long userId) {
+        return new LlmRequestContext(priority, userId);
+    }
+
+    public LlmRequestContext withPriority(LlmPriority priority) {
+        return new LlmRequestContext(priority, userId);
+    }
+
+    public LlmRequestContext withUser(Long userId) {
+        return new LlmRequestContext(priority, userId);
+    }
+
+    /**
+     * Rend ce contexte courant jusqu'à la fermeture de la portée retournée
+     *
+     * @return La portée, qui restaure le contexte précédent à sa fermeture
+     */
+    public Scope open() {
+        LlmRequestContext previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        };
+    }
+
+    /**
+     * Associe ce contexte à une tâche exécutée sur un autre thread
+     *
+     * @param task La tâche
+     * @return La tâche, exécutée dans ce contexte
+     */
+    public <V> Callable<V> wrap(Callable<V> task) {
+        return () -> {
+            try (Scope scope = open()) {
+                return task.call();
+            }
+        };
+    }
+
+    /**
+     * Portée d'un contexte ouvert
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
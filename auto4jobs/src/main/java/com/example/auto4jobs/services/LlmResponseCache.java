@@ -0,0 +1,232 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.LlmResponseCacheEntry;
+import com.example.auto4jobs.repositories.LlmResponseCacheRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache des réponses d'Ollama adressé par le contenu : la clé est l'empreinte SHA-256 du modèle,
+ * du prompt et des options de génération. Un prompt identique (même CV, même offre) n'est donc
+ * jamais renvoyé au modèle tant que l'entrée est valide.
+ * Le cache comporte deux niveaux : une map LRU en mémoire bornée en taille et en durée de vie,
+ * et une table en base de données qui survit aux redémarrages.
+ * Chaque entrée retient l'utilisateur du contexte d'appel ({@link LlmRequestContext}), dont le CV figure
+ * dans le prompt : ses entrées sont supprimées avec son CV ({@link #evictUser(Long)}).
+ */
+@Service
+public class LlmResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(LlmResponseCache.class);
+
+    @Value("${llm.cache.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${llm.cache.max-entries:10000}")
+    private int maxEntries = 10000;
+
+    @Value("${llm.cache.ttl-hours:168}")
+    private long ttlHours = 168;
+
+    @Value("${llm.cache.persistent:true}")
+    private boolean persistent = true;
+
+    @Autowired
+    private LlmResponseCacheRepository cacheRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong databaseHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    // Map LRU en ordre d'accès : l'entrée la moins récemment lue est évincée en premier
+    private final Map<String, CachedResponse> memoryCache = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedResponse> eldest) {
+            if (size() > maxEntries) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    @PostConstruct
+    public void purgeExpiredEntries() {
+        if (!enabled || !persistent) {
+            return;
+        }
+        try {
+            int deleted = cacheRepository.deleteByCreatedAtBefore(LocalDateTime.now().minus(ttlHours, ChronoUnit.HOURS));
+            logger.info("{} réponses LLM expirées supprimées du cache persistant", deleted);
+        } catch (Exception e) {
+            logger.warn("Impossible de purger le cache persistant des réponses LLM: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Calcule la clé de cache d'un appel de génération
+     *
+     * @param model Le modèle utilisé
+     * @param prompt Le prompt envoyé
+     * @param options Les options de génération influençant la réponse (format, température...)
+     * @return L'empreinte SHA-256 hexadécimale de l'appel
+     */
+    public String computeKey(String model, String prompt, Map<String, Object> options) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            // Options triées par clé pour que la clé ne dépende pas de l'ordre d'insertion
+            digest.update(objectMapper.writeValueAsBytes(new TreeMap<>(options)));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException | JsonProcessingException e) {
+            throw new IllegalStateException("Impossible de calculer la clé de cache", e);
+        }
+    }
+
+    /**
+     * Recherche une réponse dans le cache, d'abord en mémoire puis en base de données
+     *
+     * @param key La clé calculée avec {@link #computeKey(String, String, Map)}
+     * @return La réponse mise en cache, si elle existe et n'a pas expiré
+     */
+    public Optional<String> get(String key) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+
+        synchronized (memoryCache) {
+            CachedResponse cached = memoryCache.get(key);
+            if (cached != null) {
+                if (!cached.isExpired()) {
+                    memoryHits.incrementAndGet();
+                    return Optional.of(cached.response());
+                }
+                memoryCache.remove(key);
+            }
+        }
+
+        if (persistent) {
+            try {
+                Optional<LlmResponseCacheEntry> entry = cacheRepository.findById(key);
+                if (entry.isPresent()) {
+                    LocalDateTime expiresAt = entry.get().getCreatedAt().plus(ttlHours, ChronoUnit.HOURS);
+                    if (expiresAt.isAfter(LocalDateTime.now())) {
+                        databaseHits.incrementAndGet();
+                        putInMemory(key, entry.get().getResponse(), expiresAt, entry.get().getUserId());
+                        return Optional.of(entry.get().getResponse());
+                    }
+                    cacheRepository.deleteById(key);
+                }
+            } catch (Exception e) {
+                logger.warn("Lecture du cache persistant des réponses LLM impossible: {}", e.getMessage());
+            }
+        }
+
+        misses.incrementAndGet();
+        return Optional.empty();
+    }
+
+    /**
+     * Ajoute une réponse au cache (mémoire et base de données)
+     *
+     * @param key La clé calculée avec {@link #computeKey(String, String, Map)}
+     * @param model Le modèle ayant produit la réponse
+     * @param response La réponse à conserver
+     */
+    public void put(String key, String model, String response) {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        Long userId = LlmRequestContext.current().userId();
+        putInMemory(key, response, now.plus(ttlHours, ChronoUnit.HOURS), userId);
+
+        if (persistent) {
+            try {
+                cacheRepository.save(new LlmResponseCacheEntry(key, model, userId, response, now));
+            } catch (Exception e) {
+                // Le cache persistant est une optimisation : son échec ne doit pas faire échouer le matching
+                logger.warn("Écriture dans le cache persistant des réponses LLM impossible: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Supprime du cache (mémoire et base de données) les réponses générées pour un utilisateur,
+     * dont les prompts contiennent le texte de son CV
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le nombre d'entrées supprimées de la base de données
+     */
+    public int evictUser(Long userId) {
+        synchronized (memoryCache) {
+            memoryCache.values().removeIf(cached -> userId.equals(cached.userId()));
+        }
+        // Aussi lorsque le cache persistant est désactivé : des entrées écrites auparavant peuvent subsister
+        int deleted = cacheRepository.deleteByUserId(userId);
+        logger.info("{} réponses LLM de l'utilisateur {} supprimées du cache persistant", deleted, userId);
+        return deleted;
+    }
+
+    /**
+     * Retourne les statistiques d'utilisation du cache
+     *
+     * @return Map contenant les compteurs de succès, d'échecs et d'évictions
+     */
+    public Map<String, Object> getStatistics() {
+        long hits = memoryHits.get() + databaseHits.get();
+        long total = hits + misses.get();
+
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("enabled", enabled);
+        statistics.put("memoryHits", memoryHits.get());
+        statistics.put("databaseHits", databaseHits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("evictions", evictions.get());
+        statistics.put("hitRatio", total > 0 ? (double) hits / total : 0.0);
+        synchronized (memoryCache) {
+            statistics.put("memoryEntries", memoryCache.size());
+        }
+        statistics.put("maxEntries", maxEntries);
+        statistics.put("ttlHours", ttlHours);
+        return statistics;
+    }
+
+    private void putInMemory(String key, String response, LocalDateTime expiresAt, Long userId) {
+        synchronized (memoryCache) {
+            memoryCache.put(key, new CachedResponse(response, expiresAt, userId));
+        }
+    }
+
+    private record CachedResponse(String response, LocalDateTime expiresAt, Long userId) {
+        boolean isExpired() {
+            return expiresAt.isBefore(LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Étapes du matching qui font appel à un modèle de génération. Chaque étape peut être servie par son
+ * propre modèle, avec son propre nombre d'appels simultanés et son propre délai (propriétés
+ * {@code ollama.stage.<clé>.*}).
+ */
+public enum LlmStage {
+    // Score seul d'une offre, calculé pour chaque offre du matching
+    SCORING("scoring"),
+    // Explications d'une correspondance, seules ou avec le score (mode combiné)
+    EXPLANATIONS("explanations"),
+    // Extraction du profil de compétences d'un CV
+    SKILL_EXTRACTION("skill-extraction");
+
+    private final String key;
+
+    LlmStage(String key) {
+        this.key = key;
+    }
+
+    /**
+     * @return La clé de l'étape dans la configuration et les statistiques
+     */
+    public String getKey() {
+        return key;
+    }
+}
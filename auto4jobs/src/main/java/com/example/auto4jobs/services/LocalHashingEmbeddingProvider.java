@@ -0,0 +1,39 @@
+package com.example.auto4jobs.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+/**
+ * Fournisseur d'embeddings local et déterministe, basé sur le hachage des tokens (feature hashing).
+ * Il ne capture pas la sémantique comme un modèle, mais permet de faire tourner l'index
+ * sans serveur Ollama (tests, développement).
+ */
+@Service
+@ConditionalOnProperty(name = "matching.embedding.provider", havingValue = "local")
+public class LocalHashingEmbeddingProvider implements EmbeddingProvider {
+
+    @Value("${matching.embedding.local-dimensions:256}")
+    private int dimensions = 256;
+
+    @Autowired
+    private SkillOverlapPrefilter skillOverlapPrefilter;
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        for (String token : skillOverlapPrefilter.tokenize(text)) {
+            int hash = token.hashCode();
+            // Un second hachage donne le signe, pour que les collisions se compensent en moyenne
+            float sign = ((hash * 0x9E3779B1) >>> 31) == 0 ? 1f : -1f;
+            vector[Math.floorMod(hash, dimensions)] += sign;
+        }
+        return vector;
+    }
+
+    @Override
+    public String getName() {
+        return "local-hashing:" + dimensions;
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+
+/**
+ * Calcule les scores localement et de façon déterministe, selon le recouvrement entre les compétences
+ * du CV et celles demandées par l'offre. Il ne remplace pas l'évaluation d'un modèle, mais permet de
+ * faire tourner le matching sans serveur Ollama (tests de charge, développement).
+ */
+@Service
+public class LocalMatchScorer implements MatchScorer {
+
+    @Autowired
+    private SkillOverlapPrefilter skillOverlapPrefilter;
+
+    @Override
+    public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+        SkillOverlapPrefilter.SkillOverlap overlap = skillOverlapPrefilter.evaluate(skillOverlapPrefilter.tokenize(cvText), offer);
+        return new MatchEvaluation(overlap.score(), withExplanations ? skillOverlapPrefilter.explain(overlap) : List.of());
+    }
+
+    @Override
+    public List<String> explain(String cvText, JobOffer offer, String offerText) {
+        return evaluate(cvText, offer, offerText, true).explanations();
+    }
+
+    @Override
+    public String getName() {
+        return "local";
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.auto4jobs.services;
+
+import java.util.List;
+
+/**
+ * Résultat de l'évaluation d'une offre d'emploi pour un CV
+ *
+ * @param score Score de correspondance entre 0 et 100
+ * @param explanations Explications du score (vide si elles n'ont pas été demandées)
+ */
+public record MatchEvaluation(double score, List<String> explanations) {
+}
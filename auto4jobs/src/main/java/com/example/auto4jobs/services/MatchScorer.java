@@ -0,0 +1,73 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+
+import java.util.List;
+
+/**
+ * Backend de calcul des scores de correspondance entre un CV et une offre d'emploi.
+ * Le backend utilisé pour chaque étape du matching est choisi par {@link MatchScorerSelector}.
+ */
+public interface MatchScorer {
+
+    /**
+     * Évalue une offre d'emploi pour un CV
+     *
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @param offerText Texte de l'offre d'emploi avec ses compétences requises
+     * @param withExplanations true pour calculer aussi les explications
+     * @return Résultat de l'évaluation
+     * @throws LlmCapacityExceededException si le backend est saturé
+     */
+    MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations);
+
+    /**
+     * Génère les explications du matching entre un CV et une offre d'emploi
+     *
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @param offerText Texte de l'offre d'emploi avec ses compétences requises
+     * @return Liste d'explications
+     * @throws LlmCapacityExceededException si le backend est saturé
+     */
+    List<String> explain(String cvText, JobOffer offer, String offerText);
+
+    /**
+     * Prépare l'évaluation de plusieurs offres pour un même CV. Ce que le backend conserve pour ce CV
+     * pendant le matching est libéré à la fermeture de la session.
+     *
+     * @param cvText Texte du CV, passé ensuite à chaque évaluation
+     * @return La session, à fermer à la fin du matching
+     */
+    default Sweep beginSweep(String cvText) {
+        return Sweep.NONE;
+    }
+
+    /**
+     * @return true si le backend peut actuellement être appelé
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
+    /**
+     * @return Le nom du backend, utilisé dans la configuration et les logs
+     */
+    String getName();
+
+    /**
+     * Session d'évaluation des offres pour un même CV
+     */
+    interface Sweep extends AutoCloseable {
+
+        /**
+         * Session des backends qui ne conservent rien entre les évaluations
+         */
+        Sweep NONE = () -> {
+        };
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.auto4jobs.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Choisit le backend de calcul des scores de chaque étape du matching : le score des offres lors d'un
+ * matching demandé par l'utilisateur, le même calcul en arrière-plan (précalcul, réévaluation d'une
+ * offre) et la génération des explications à la demande. Chaque étape utilise le backend par défaut
+ * ({@code matching.scorer.backend}) sauf si un backend propre lui est configuré.
+ */
+@Service
+public class MatchScorerSelector {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchScorerSelector.class);
+
+    @Value("${matching.scorer.backend:ollama}")
+    private String defaultBackend = "ollama";
+
+    // Backend des traitements en arrière-plan (vide = backend par défaut)
+    @Value("${matching.scorer.background-backend:}")
+    private String backgroundBackend = "";
+
+    // Backend des explications générées à la demande (vide = backend par défaut)
+    @Value("${matching.scorer.explanations-backend:}")
+    private String explanationsBackend = "";
+
+    // Enregistre les évaluations des backends utilisés dans le fichier de rejeu
+    @Value("${matching.scorer.replay.record:false}")
+    private boolean record;
+
+    @Autowired
+    private List<MatchScorer> scorers;
+
+    @Autowired
+    private ReplayMatchScorer replayMatchScorer;
+
+    @Autowired
+    private OllamaMatchScorer ollamaMatchScorer;
+
+    private MatchScorer scoringScorer;
+
+    private MatchScorer backgroundScorer;
+
+    private MatchScorer explanationsScorer;
+
+    @PostConstruct
+    public void init() {
+        Map<String, MatchScorer> scorersByName = new HashMap<>();
+        scorers.forEach(scorer -> scorersByName.put(scorer.getName(), scorer));
+
+        scoringScorer = resolve(scorersByName, defaultBackend, "matching.scorer.backend");
+        backgroundScorer = backgroundBackend.isBlank() ? scoringScorer
+                : resolve(scorersByName, backgroundBackend, "matching.scorer.background-backend");
+        explanationsScorer = explanationsBackend.isBlank() ? scoringScorer
+                : resolve(scorersByName, explanationsBackend, "matching.scorer.explanations-backend");
+
+        logger.info("Backends de scoring : matching {}, arrière-plan {}, explications {}{}", scoringScorer.getName(),
+                backgroundScorer.getName(), explanationsScorer.getName(), record ? " (évaluations enregistrées)" : "");
+    }
+
+    /**
+     * Retourne le backend qui évalue les offres, selon la priorité du contexte courant
+     * ({@link LlmRequestContext}) : les traitements en arrière-plan peuvent utiliser un backend moins coûteux
+     *
+     * @return Le backend de scoring
+     */
+    public MatchScorer forScoring() {
+        return LlmRequestContext.current().priority() == LlmPriority.BACKGROUND ? backgroundScorer : scoringScorer;
+    }
+
+    /**
+     * @return Le backend qui génère les explications à la demande
+     */
+    public MatchScorer forExplanations() {
+        return explanationsScorer;
+    }
+
+    /**
+     * Retourne la configuration des backends, les compteurs du rejeu et ceux des réponses d'Ollama
+     *
+     * @return Map contenant le backend de chaque étape
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("scoring", scoringScorer.getName());
+        statistics.put("background", backgroundScorer.getName());
+        statistics.put("explanations", explanationsScorer.getName());
+        statistics.put("record", record);
+        statistics.put("replay", replayMatchScorer.getStatistics());
+        statistics.put("ollama", ollamaMatchScorer.getStatistics());
+        return statistics;
+    }
+
+    private MatchScorer resolve(Map<String, MatchScorer> scorersByName, String name, String property) {
+        MatchScorer scorer = scorersByName.get(name.trim().toLowerCase());
+        if (scorer == null) {
+            throw new IllegalStateException("Backend de scoring inconnu pour " + property + ": " + name
+                    + " (valeurs possibles : " + String.join(", ", scorersByName.keySet()) + ")");
+        }
+        // Le rejeu n'est pas enregistré dans son propre fichier
+        return record && scorer != replayMatchScorer ? replayMatchScorer.recording(scorer) : scorer;
+    }
+}
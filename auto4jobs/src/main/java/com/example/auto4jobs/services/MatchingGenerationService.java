@@ -0,0 +1,215 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.MatchingGeneration;
+import com.example.auto4jobs.entities.MatchingResult;
+import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.repositories.MatchingGenerationRepository;
+import com.example.auto4jobs.repositories.MatchingResultRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.LongConsumer;
+
+/**
+ * Générations des résultats de matching. Un nouveau jeu de résultats est écrit dans une génération
+ * à part, invisible des lecteurs, puis activé en une seule mise à jour du pointeur de l'utilisateur :
+ * les lecteurs voient toujours un jeu complet, sans suppression préalable ni attente de verrou.
+ * Les générations remplacées sont supprimées en arrière-plan après le commit.
+ */
+@Service
+public class MatchingGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingGenerationService.class);
+
+    @Autowired
+    private MatchingGenerationRepository matchingGenerationRepository;
+
+    @Autowired
+    private MatchingResultRepository matchingResultRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("matchingCleanupExecutor")
+    private ExecutorService cleanupExecutor;
+
+    // Utilisateurs dont le nettoyage est déjà planifié : des activations rapprochées ne l'ajoutent qu'une fois
+    private final Set<Long> pendingCleanups = ConcurrentHashMap.newKeySet();
+
+    private TransactionTemplate newTransaction;
+
+    @PostConstruct
+    public void init() {
+        newTransaction = new TransactionTemplate(transactionManager);
+        newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Retourne la génération active d'un utilisateur
+     *
+     * @param userId ID de l'utilisateur
+     * @return La génération active, ou null si les résultats sont antérieurs aux générations
+     */
+    public Long getActiveGeneration(Long userId) {
+        return matchingGenerationRepository.findById(userId)
+                .map(MatchingGeneration::getActiveGeneration)
+                .orElse(null);
+    }
+
+    /**
+     * Retourne les résultats de la génération active d'un utilisateur
+     *
+     * @param user L'utilisateur
+     * @return Les résultats de matching visibles
+     */
+    public List<MatchingResult> findActiveResults(User user) {
+        Long activeGeneration = getActiveGeneration(user.getId());
+        return activeGeneration == null
+                ? matchingResultRepository.findByUserAndGenerationIsNull(user)
+                : matchingResultRepository.findByUserAndGeneration(user, activeGeneration);
+    }
+
+    /**
+     * Attribue un nouveau numéro de génération, dans une transaction courte et indépendante afin que
+     * deux calculs simultanés pour le même utilisateur n'écrivent jamais dans la même génération
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le numéro de la nouvelle génération, supérieur à tous ceux déjà attribués
+     */
+    public long allocateGeneration(Long userId) {
+        return allocateGeneration(userId, generation -> { });
+    }
+
+    /**
+     * Attribue un nouveau numéro de génération et l'initialise dans la même transaction, pointeur verrouillé :
+     * une écriture qui verrouille le pointeur ({@link #lockPointer(Long)}) passe avant l'attribution, ou
+     * après l'initialisation de la génération
+     *
+     * @param userId ID de l'utilisateur
+     * @param initializer Écrit les premiers résultats de la génération attribuée
+     * @return Le numéro de la nouvelle génération, supérieur à tous ceux déjà attribués
+     */
+    public long allocateGeneration(Long userId, LongConsumer initializer) {
+        try {
+            return newTransaction.execute(status -> initializeGeneration(userId, initializer));
+        } catch (DataIntegrityViolationException e) {
+            // Pointeur créé en parallèle par un autre calcul : il existe désormais et peut être verrouillé
+            return newTransaction.execute(status -> initializeGeneration(userId, initializer));
+        }
+    }
+
+    /**
+     * Verrouille le pointeur de génération d'un utilisateur jusqu'à la fin de la transaction courante
+     *
+     * @param userId ID de l'utilisateur
+     * @return Le pointeur (génération active et dernière génération attribuée), ou null si aucune génération n'a été attribuée
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public MatchingGeneration lockPointer(Long userId) {
+        return matchingGenerationRepository.findForUpdate(userId).orElse(null);
+    }
+
+    private long initializeGeneration(Long userId, LongConsumer initializer) {
+        long generation = incrementGeneration(userId);
+        initializer.accept(generation);
+        return generation;
+    }
+
+    private long incrementGeneration(Long userId) {
+        MatchingGeneration pointer = matchingGenerationRepository.findForUpdate(userId).orElse(null);
+        if (pointer == null) {
+            // Première génération : une insertion concurrente échoue sur la clé primaire et est relancée
+            matchingGenerationRepository.insertFirstGeneration(userId);
+            return 1L;
+        }
+        pointer.setLastAllocatedGeneration(pointer.getLastAllocatedGeneration() + 1);
+        matchingGenerationRepository.saveAndFlush(pointer);
+        return pointer.getLastAllocatedGeneration();
+    }
+
+    /**
+     * Active une génération dans la transaction courante : elle devient visible au commit. Une génération
+     * plus ancienne que la génération active n'est jamais activée.
+     *
+     * @param userId ID de l'utilisateur
+     * @param generation La génération à activer
+     * @return true si la génération a été activée
+     */
+    @Transactional
+    public boolean activate(Long userId, long generation) {
+        boolean activated = matchingGenerationRepository.activate(userId, generation, LocalDateTime.now()) > 0;
+        if (!activated) {
+            logger.info("Génération {} de l'utilisateur {} non activée : une génération plus récente est active", generation, userId);
+            return false;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    scheduleCleanup(userId);
+                }
+            });
+        } else {
+            scheduleCleanup(userId);
+        }
+        return true;
+    }
+
+    /**
+     * Supprime en arrière-plan les générations antérieures à la génération active
+     */
+    private void scheduleCleanup(Long userId) {
+        if (!pendingCleanups.add(userId)) {
+            return;
+        }
+        try {
+            cleanupExecutor.execute(() -> {
+                // Une activation pendant le nettoyage en planifie un nouveau
+                pendingCleanups.remove(userId);
+                deleteOlderGenerations(userId);
+            });
+        } catch (RejectedExecutionException e) {
+            pendingCleanups.remove(userId);
+            // Seulement à l'arrêt de l'application : les générations obsolètes seront supprimées après la prochaine activation
+            logger.warn("Nettoyage des générations de l'utilisateur {} non planifié : thread de nettoyage arrêté", userId);
+        }
+    }
+
+    private void deleteOlderGenerations(Long userId) {
+        try {
+            Long activeGeneration = getActiveGeneration(userId);
+            if (activeGeneration == null) {
+                return;
+            }
+            // Les générations plus récentes que la génération active sont en cours de calcul et sont conservées
+            Integer deleted = newTransaction.execute(status -> {
+                List<MatchingResult> obsolete = matchingResultRepository.findOlderGenerations(userId, activeGeneration);
+                matchingResultRepository.deleteAll(obsolete);
+                return obsolete.size();
+            });
+            logger.debug("{} résultats de matching obsolètes supprimés pour l'utilisateur {}", deleted, userId);
+        } catch (Exception e) {
+            logger.warn("Échec du nettoyage des générations de l'utilisateur {}: {}", userId, e.getMessage());
+        }
+    }
+}
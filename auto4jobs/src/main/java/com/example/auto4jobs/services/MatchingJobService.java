@@ -0,0 +1,355 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.events.CvUploadedEvent;
+import com.example.auto4jobs.events.JobOfferChangedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tâches de matching asynchrones : le matching d'un utilisateur est exécuté sur un pool borné
+ * et le client suit son avancement (offres évaluées / total) puis récupère les résultats, sans
+ * garder de thread ni de connexion HTTP ouverts pendant les appels à Ollama.
+ * Les tâches sont conservées en mémoire et oubliées après la durée de rétention configurée.
+ * Le même pool relance le matching d'un candidat après le dépôt de son CV ; les offres modifiées sont
+ * réévaluées sur le thread du précalcul, afin de ne pas occuper le pool des tâches interactives.
+ */
+@Service
+public class MatchingJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingJobService.class);
+
+    // Durée pendant laquelle une tâche terminée reste consultable
+    @Value("${matching.jobs.retention-minutes:60}")
+    private long retentionMinutes = 60;
+
+    // Durée maximale d'un flux de résultats avant sa fermeture par le serveur
+    @Value("${matching.stream.timeout-minutes:30}")
+    private long streamTimeoutMinutes = 30;
+
+    @Autowired
+    private OllamaMatchingService matchingService;
+
+    @Autowired
+    private MatchingRequestCoalescer matchingRequestCoalescer;
+
+    @Autowired
+    private LlmDispatcher llmDispatcher;
+
+    @Autowired
+    @Qualifier("matchingJobExecutor")
+    private ExecutorService matchingJobExecutor;
+
+    @Autowired
+    @Qualifier("matchingPrecomputeExecutor")
+    private ExecutorService precomputeExecutor;
+
+    private final Map<String, MatchingJob> jobs = new ConcurrentHashMap<>();
+
+    // Offres en attente de réévaluation : une modification répétée avant la réévaluation n'en ajoute pas d'autre
+    private final Set<Long> pendingRescores = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Lance le matching d'un utilisateur en arrière-plan. Si une tâche est déjà en cours pour cet
+     * utilisateur, elle est retournée au lieu d'en lancer une nouvelle.
+     *
+     * @param userId ID de l'utilisateur
+     * @param force true pour recalculer les correspondances même si des résultats récents existent
+     * @return Map contenant l'identifiant et l'état de la tâche
+     * @throws RejectedExecutionException si trop de tâches sont déjà en attente
+     * @throws LlmCapacityExceededException si le service de matching est saturé
+     */
+    public Map<String, Object> submitJob(Long userId, boolean force) {
+        return submitJob(userId, force, force ? LlmPriority.REFRESH : LlmPriority.INTERACTIVE);
+    }
+
+    private synchronized Map<String, Object> submitJob(Long userId, boolean force, LlmPriority priority) {
+        evictExpiredJobs();
+
+        for (MatchingJob existing : jobs.values()) {
+            if (existing.userId.equals(userId) && !existing.isFinished()) {
+                logger.info("Tâche de matching {} déjà en cours pour l'utilisateur {}", existing.id, userId);
+                return existing.toStatus();
+            }
+        }
+
+        llmDispatcher.checkAdmission(priority);
+        MatchingJob job = new MatchingJob(UUID.randomUUID().toString(), userId);
+        jobs.put(job.id, job);
+        try {
+            matchingJobExecutor.execute(() -> runJob(job, force, priority));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.id);
+            logger.warn("Tâche de matching refusée pour l'utilisateur {} : file d'attente pleine", userId);
+            throw e;
+        }
+
+        logger.info("Tâche de matching {} créée pour l'utilisateur {}", job.id, userId);
+        return job.toStatus();
+    }
+
+    /**
+     * Retourne l'état et l'avancement d'une tâche de matching
+     *
+     * @param jobId ID de la tâche
+     * @param userId ID de l'utilisateur qui consulte la tâche
+     * @return Map contenant l'état de la tâche et son avancement
+     * @throws IllegalArgumentException si la tâche n'existe pas ou appartient à un autre utilisateur
+     */
+    public Map<String, Object> getJobStatus(String jobId, Long userId) {
+        return findJob(jobId, userId).toStatus();
+    }
+
+    /**
+     * Retourne les résultats d'une tâche de matching terminée
+     *
+     * @param jobId ID de la tâche
+     * @param userId ID de l'utilisateur qui consulte la tâche
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     * @throws IllegalArgumentException si la tâche n'existe pas ou appartient à un autre utilisateur
+     * @throws IllegalStateException si la tâche n'est pas terminée ou a échoué
+     */
+    public List<Map<String, Object>> getJobResults(String jobId, Long userId) {
+        MatchingJob job = findJob(jobId, userId);
+        if (job.status == JobStatus.FAILED) {
+            throw new IllegalStateException("La tâche de matching a échoué: " + job.error);
+        }
+        if (job.status != JobStatus.COMPLETED) {
+            throw new IllegalStateException("La tâche de matching n'est pas encore terminée");
+        }
+        return job.results;
+    }
+
+    /**
+     * Lance le matching d'un utilisateur en arrière-plan et diffuse les résultats en Server-Sent Events :
+     * un événement "start" avec le nombre d'offres, un événement "match" par offre dès qu'elle est
+     * évaluée, puis un événement "summary" contenant la liste triée (ou "error" en cas d'échec).
+     * Le matching se poursuit si le client se déconnecte, ses résultats étant sauvegardés.
+     *
+     * @param userId ID de l'utilisateur
+     * @param force true pour recalculer les correspondances même si des résultats récents existent
+     * @return Le flux d'événements
+     * @throws RejectedExecutionException si trop de tâches sont déjà en attente
+     * @throws LlmCapacityExceededException si le service de matching est saturé
+     */
+    public SseEmitter streamMatches(Long userId, boolean force) {
+        LlmPriority priority = force ? LlmPriority.REFRESH : LlmPriority.INTERACTIVE;
+        llmDispatcher.checkAdmission(priority);
+        SseEmitter emitter = new SseEmitter(TimeUnit.MINUTES.toMillis(streamTimeoutMinutes));
+        AtomicBoolean connected = new AtomicBoolean(true);
+        emitter.onCompletion(() -> connected.set(false));
+        emitter.onTimeout(() -> connected.set(false));
+        emitter.onError(e -> connected.set(false));
+
+        MatchingProgressListener listener = new MatchingProgressListener() {
+            @Override
+            public void onStart(int totalOffers) {
+                send(emitter, connected, "start", Collections.singletonMap("total", totalOffers));
+            }
+
+            @Override
+            public void onOfferScored(Map<String, Object> result) {
+                send(emitter, connected, "match", result);
+            }
+        };
+
+        matchingJobExecutor.execute(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(priority, userId).open()) {
+                List<Map<String, Object>> matches = force
+                        ? matchingRequestCoalescer.forceMatchJobOffersForUser(userId, listener)
+                        : matchingRequestCoalescer.matchJobOffersForUser(userId, listener);
+                Map<String, Object> summary = new HashMap<>();
+                summary.put("matches", matches);
+                summary.put("total", matches.size());
+                send(emitter, connected, "summary", summary);
+            } catch (Exception e) {
+                logger.error("Échec du matching diffusé pour l'utilisateur {}", userId, e);
+                send(emitter, connected, "error", Collections.singletonMap("error", e.getMessage()));
+            } finally {
+                if (connected.get()) {
+                    emitter.complete();
+                }
+            }
+        });
+
+        logger.info("Diffusion du matching démarrée pour l'utilisateur {}", userId);
+        return emitter;
+    }
+
+    /**
+     * Envoie un événement au client tant qu'il est connecté ; une erreur d'envoi marque le client comme déconnecté
+     */
+    private void send(SseEmitter emitter, AtomicBoolean connected, String name, Object data) {
+        if (!connected.get()) {
+            return;
+        }
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data));
+        } catch (IOException | IllegalStateException e) {
+            logger.debug("Client du flux de matching déconnecté: {}", e.getMessage());
+            connected.set(false);
+        }
+    }
+
+    /**
+     * Réévalue uniquement l'utilisateur qui vient de déposer un nouveau CV
+     *
+     * @param event Événement publié par {@link CVService#saveCV}
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCvUploaded(CvUploadedEvent event) {
+        try {
+            submitJob(event.userId(), false, LlmPriority.REFRESH);
+        } catch (RejectedExecutionException | LlmCapacityExceededException e) {
+            // Les résultats obsolètes seront recalculés lors du prochain matching de l'utilisateur
+            logger.warn("Matching de l'utilisateur {} après dépôt du CV différé : file d'attente pleine", event.userId());
+        }
+    }
+
+    /**
+     * Évalue une offre créée ou modifiée pour les seuls candidats déjà matchés. La réévaluation, longue
+     * (un appel par candidat), est exécutée sur le thread du précalcul, après les lots déjà en cours.
+     *
+     * @param event Événement publié par {@link JobOfferService}
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onJobOfferChanged(JobOfferChangedEvent event) {
+        Long offerId = event.jobOfferId();
+        if (!pendingRescores.add(offerId)) {
+            logger.debug("Réévaluation de l'offre {} déjà en attente", offerId);
+            return;
+        }
+        try {
+            precomputeExecutor.execute(() -> {
+                // Une modification pendant la réévaluation en planifie une nouvelle
+                pendingRescores.remove(offerId);
+                try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, null).open()) {
+                    matchingService.rescoreOffer(offerId);
+                } catch (Exception e) {
+                    logger.error("Échec de la réévaluation de l'offre {}", offerId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingRescores.remove(offerId);
+            // Les résultats obsolètes seront recalculés lors du prochain matching de chaque candidat
+            logger.warn("Réévaluation de l'offre {} différée : thread du précalcul arrêté", offerId);
+        }
+    }
+
+    private void runJob(MatchingJob job, boolean force, LlmPriority priority) {
+        job.status = JobStatus.RUNNING;
+        job.startedAt = LocalDateTime.now();
+        MatchingProgressListener listener = new MatchingProgressListener() {
+            @Override
+            public void onStart(int totalOffers) {
+                job.total = totalOffers;
+            }
+
+            @Override
+            public void onOfferScored(Map<String, Object> result) {
+                job.done.incrementAndGet();
+            }
+        };
+
+        try (LlmRequestContext.Scope scope = LlmRequestContext.of(priority, job.userId).open()) {
+            job.results = force
+                    ? matchingRequestCoalescer.forceMatchJobOffersForUser(job.userId, listener)
+                    : matchingRequestCoalescer.matchJobOffersForUser(job.userId, listener);
+            job.finishedAt = LocalDateTime.now();
+            job.status = JobStatus.COMPLETED;
+            logger.info("Tâche de matching {} terminée : {} offres évaluées", job.id, job.done.get());
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.finishedAt = LocalDateTime.now();
+            job.status = JobStatus.FAILED;
+            logger.error("Échec de la tâche de matching {} pour l'utilisateur {}", job.id, job.userId, e);
+        }
+    }
+
+    private MatchingJob findJob(String jobId, Long userId) {
+        evictExpiredJobs();
+        MatchingJob job = jobs.get(jobId);
+        // Une tâche d'un autre utilisateur est traitée comme inexistante
+        if (job == null || !Objects.equals(job.userId, userId)) {
+            throw new IllegalArgumentException("Tâche de matching non trouvée: " + jobId);
+        }
+        return job;
+    }
+
+    /**
+     * Oublie les tâches terminées depuis plus longtemps que la durée de rétention
+     */
+    private void evictExpiredJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(retentionMinutes);
+        jobs.values().removeIf(job -> job.isFinished() && job.finishedAt != null && job.finishedAt.isBefore(threshold));
+    }
+
+    /**
+     * État d'une tâche de matching
+     */
+    public enum JobStatus {
+        PENDING, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * Tâche de matching en mémoire ; ses champs sont écrits par le thread de la tâche et lus par les requêtes de suivi
+     */
+    private static class MatchingJob {
+        private final String id;
+        private final Long userId;
+        private final LocalDateTime createdAt = LocalDateTime.now();
+        private final AtomicInteger done = new AtomicInteger();
+        private volatile JobStatus status = JobStatus.PENDING;
+        private volatile int total;
+        private volatile LocalDateTime startedAt;
+        private volatile LocalDateTime finishedAt;
+        private volatile List<Map<String, Object>> results = Collections.emptyList();
+        private volatile String error;
+
+        MatchingJob(String id, Long userId) {
+            this.id = id;
+            this.userId = userId;
+        }
+
+        boolean isFinished() {
+            return status == JobStatus.COMPLETED || status == JobStatus.FAILED;
+        }
+
+        Map<String, Object> toStatus() {
+            Map<String, Object> status = new HashMap<>();
+            status.put("jobId", id);
+            status.put("status", this.status.name());
+            status.put("done", done.get());
+            status.put("total", total);
+            status.put("createdAt", createdAt);
+            status.put("startedAt", startedAt);
+            status.put("finishedAt", finishedAt);
+            if (error != null) {
+                status.put("error", error);
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.MatchingGeneration;
+import com.example.auto4jobs.entities.MatchingPrecomputeRun;
+import com.example.auto4jobs.entities.MatchingPrecomputeRun.Status;
+import com.example.auto4jobs.repositories.MatchingGenerationRepository;
+import com.example.auto4jobs.repositories.MatchingPrecomputeRunRepository;
+import com.example.auto4jobs.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Précalcul nocturne des résultats de matching de tous les candidats ayant un CV, afin que leurs
+ * correspondances soient prêtes à la connexion. Les candidats aux résultats obsolètes sont traités
+ * en premier, un à la fois, avec une pause entre deux candidats et en priorité d'arrière-plan
+ * auprès de {@link LlmDispatcher} pour laisser Ollama disponible aux requêtes interactives. L'avancement est enregistré après chaque candidat : un lot interrompu (arrêt
+ * du serveur, fenêtre de temps dépassée) reprend au candidat suivant lors du déclenchement suivant.
+ */
+@Service
+public class MatchingPrecomputeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingPrecomputeService.class);
+
+    private static final List<String> CANDIDATE_ROLES = List.of("APPRENANT", "LAUREAT");
+
+    private static final List<Status> UNFINISHED_STATUSES = List.of(Status.RUNNING, Status.PAUSED);
+
+    @Value("${matching.precompute.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${matching.results.cache-duration-hours:24}")
+    private int cacheDurationHours = 24;
+
+    // Pause entre deux candidats, pendant laquelle Ollama reste disponible pour les requêtes interactives
+    @Value("${matching.precompute.user-pause-ms:1000}")
+    private long userPauseMillis = 1000;
+
+    // Durée maximale d'un lot ; au-delà, il est mis en pause et repris au déclenchement suivant
+    @Value("${matching.precompute.max-duration-minutes:360}")
+    private long maxDurationMinutes = 360;
+
+    @Autowired
+    private MatchingRequestCoalescer matchingRequestCoalescer;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MatchingGenerationRepository matchingGenerationRepository;
+
+    @Autowired
+    private MatchingPrecomputeRunRepository runRepository;
+
+    @Autowired
+    @Qualifier("matchingPrecomputeExecutor")
+    private ExecutorService precomputeExecutor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    /**
+     * Déclenchement planifié du précalcul (par défaut chaque nuit à 2h)
+     */
+    @Scheduled(cron = "${matching.precompute.cron:0 0 2 * * *}")
+    public void scheduledPrecompute() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            startRun("SCHEDULED");
+        } catch (IllegalStateException e) {
+            logger.info("Précalcul planifié ignoré: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Lance un lot de précalcul en arrière-plan, ou reprend le dernier lot non terminé
+     *
+     * @param trigger Origine du déclenchement ("SCHEDULED" ou "MANUAL")
+     * @return Map contenant l'état du lot
+     * @throws IllegalStateException si un lot est déjà en cours
+     */
+    public Map<String, Object> startRun(String trigger) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Un précalcul des correspondances est déjà en cours");
+        }
+        try {
+            MatchingPrecomputeRun run = runRepository.findFirstByStatusInOrderByIdDesc(UNFINISHED_STATUSES)
+                    .orElseGet(() -> newRun(trigger));
+            if (run.getId() != null) {
+                logger.info("Reprise du précalcul {} à l'utilisateur {}/{}", run.getId(), run.getNextIndex(), run.getTotalUsers());
+            }
+            run.setStatus(Status.RUNNING);
+            MatchingPrecomputeRun saved = runRepository.save(run);
+            precomputeExecutor.execute(() -> execute(saved));
+            return toStatus(saved);
+        } catch (RuntimeException e) {
+            running.set(false);
+            if (e instanceof RejectedExecutionException) {
+                throw new IllegalStateException("Le précalcul des correspondances ne peut pas être lancé", e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retourne l'état d'un lot de précalcul
+     *
+     * @param runId ID du lot
+     * @return Map contenant l'avancement et le débit du lot
+     * @throws IllegalArgumentException si le lot n'existe pas
+     */
+    public Map<String, Object> getRun(Long runId) {
+        return runRepository.findById(runId)
+                .map(this::toStatus)
+                .orElseThrow(() -> new IllegalArgumentException("Précalcul non trouvé avec l'ID: " + runId));
+    }
+
+    /**
+     * @return L'état des derniers lots de précalcul, du plus récent au plus ancien
+     */
+    public List<Map<String, Object>> getRecentRuns() {
+        return runRepository.findTop20ByOrderByIdDesc().stream()
+                .map(this::toStatus)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Crée un lot dont la file contient tous les candidats ayant un CV, les plus obsolètes en premier
+     */
+    private MatchingPrecomputeRun newRun(String trigger) {
+        Map<Long, LocalDateTime> activatedAt = new HashMap<>();
+        for (MatchingGeneration pointer : matchingGenerationRepository.findAll()) {
+            if (pointer.getActiveGeneration() != null && pointer.getUpdatedAt() != null) {
+                activatedAt.put(pointer.getUserId(), pointer.getUpdatedAt());
+            }
+        }
+
+        LocalDateTime threshold = LocalDateTime.now().minusHours(cacheDurationHours);
+        List<Candidate> candidates = new ArrayList<>();
+        for (Object[] row : userRepository.findCvUploadDatesByRoleIn(CANDIDATE_ROLES)) {
+            Long userId = (Long) row[0];
+            Long cvUploadDate = (Long) row[1];
+            LocalDateTime computedAt = activatedAt.get(userId);
+            boolean stale = computedAt == null || computedAt.isBefore(threshold)
+                    || (cvUploadDate != null && toLocalDateTime(cvUploadDate).isAfter(computedAt));
+            candidates.add(new Candidate(userId, computedAt, stale));
+        }
+        // Candidats obsolètes d'abord, puis par date de dernier calcul croissante (jamais calculés en tête)
+        candidates.sort(Comparator.comparing((Candidate c) -> !c.stale())
+                .thenComparing(Candidate::computedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        MatchingPrecomputeRun run = new MatchingPrecomputeRun();
+        run.setTrigger(trigger);
+        run.setUserQueue(candidates.stream().map(c -> String.valueOf(c.userId())).collect(Collectors.joining(",")));
+        run.setTotalUsers(candidates.size());
+        run.setStaleUsers((int) candidates.stream().filter(Candidate::stale).count());
+        run.setStartedAt(LocalDateTime.now());
+        logger.info("Nouveau précalcul des correspondances : {} candidats dont {} aux résultats obsolètes",
+                run.getTotalUsers(), run.getStaleUsers());
+        return run;
+    }
+
+    /**
+     * Traite la file du lot à partir de son point de reprise, en enregistrant l'avancement après chaque candidat
+     */
+    private void execute(MatchingPrecomputeRun run) {
+        List<Long> queue = parseQueue(run.getUserQueue());
+        long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(maxDurationMinutes);
+        long segmentStart = System.currentTimeMillis();
+        try {
+            while (run.getNextIndex() < queue.size()) {
+                if (Thread.currentThread().isInterrupted() || System.nanoTime() > deadline) {
+                    run.setStatus(Status.PAUSED);
+                    logger.info("Précalcul {} mis en pause à l'utilisateur {}/{}", run.getId(), run.getNextIndex(), queue.size());
+                    return;
+                }
+
+                Long userId = queue.get(run.getNextIndex());
+                AtomicLong matches = new AtomicLong();
+                try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, userId).open()) {
+                    matchingRequestCoalescer.matchJobOffersForUser(userId, new MatchingProgressListener() {
+                        @Override
+                        public void onOfferScored(Map<String, Object> result) {
+                            matches.incrementAndGet();
+                        }
+                    });
+                    run.setProcessedUsers(run.getProcessedUsers() + 1);
+                    run.setMatchesComputed(run.getMatchesComputed() + matches.get());
+                } catch (Exception e) {
+                    run.setFailedUsers(run.getFailedUsers() + 1);
+                    logger.warn("Échec du précalcul des correspondances de l'utilisateur {}: {}", userId, e.getMessage());
+                }
+
+                run.setNextIndex(run.getNextIndex() + 1);
+                long now = System.currentTimeMillis();
+                run.setElapsedMillis(run.getElapsedMillis() + now - segmentStart);
+                segmentStart = now;
+                run = runRepository.save(run);
+
+                if (userPauseMillis > 0 && run.getNextIndex() < queue.size()) {
+                    Thread.sleep(userPauseMillis);
+                }
+            }
+            run.setStatus(Status.COMPLETED);
+            run.setFinishedAt(LocalDateTime.now());
+            logger.info("Précalcul {} terminé : {} candidats traités, {} échecs, {} correspondances en {} s",
+                    run.getId(), run.getProcessedUsers(), run.getFailedUsers(), run.getMatchesComputed(),
+                    TimeUnit.MILLISECONDS.toSeconds(run.getElapsedMillis()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            run.setStatus(Status.PAUSED);
+        } catch (Exception e) {
+            run.setStatus(Status.FAILED);
+            run.setFinishedAt(LocalDateTime.now());
+            run.setError(e.getMessage());
+            logger.error("Échec du précalcul {}", run.getId(), e);
+        } finally {
+            run.setElapsedMillis(run.getElapsedMillis() + System.currentTimeMillis() - segmentStart);
+            try {
+                runRepository.save(run);
+            } finally {
+                running.set(false);
+            }
+        }
+    }
+
+    private Map<String, Object> toStatus(MatchingPrecomputeRun run) {
+        Map<String, Object> status = new HashMap<>();
+        status.put("runId", run.getId());
+        status.put("status", run.getStatus().name());
+        status.put("trigger", run.getTrigger());
+        status.put("totalUsers", run.getTotalUsers());
+        status.put("staleUsers", run.getStaleUsers());
+        status.put("processedUsers", run.getProcessedUsers());
+        status.put("failedUsers", run.getFailedUsers());
+        status.put("remainingUsers", run.getTotalUsers() - run.getNextIndex());
+        status.put("matchesComputed", run.getMatchesComputed());
+        status.put("elapsedSeconds", TimeUnit.MILLISECONDS.toSeconds(run.getElapsedMillis()));
+        double elapsedMinutes = run.getElapsedMillis() / 60000.0;
+        status.put("usersPerMinute", elapsedMinutes > 0 ? run.getNextIndex() / elapsedMinutes : 0.0);
+        status.put("matchesPerMinute", elapsedMinutes > 0 ? run.getMatchesComputed() / elapsedMinutes : 0.0);
+        status.put("startedAt", run.getStartedAt());
+        status.put("updatedAt", run.getUpdatedAt());
+        status.put("finishedAt", run.getFinishedAt());
+        if (run.getError() != null) {
+            status.put("error", run.getError());
+        }
+        return status;
+    }
+
+    private static List<Long> parseQueue(String userQueue) {
+        if (userQueue == null || userQueue.isEmpty()) {
+            return List.of();
+        }
+        return Arrays.stream(userQueue.split(","))
+                .map(Long::valueOf)
+                .collect(Collectors.toList());
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    private record Candidate(Long userId, LocalDateTime computedAt, boolean stale) {
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.auto4jobs.services;
+
+import java.util.Map;
+
+/**
+ * Suivi de l'avancement d'un matching : reçoit le nombre d'offres à évaluer puis chaque offre
+ * dès que son résultat est disponible
+ */
+public interface MatchingProgressListener {
+
+    /**
+     * Listener qui ignore l'avancement, utilisé par les appels synchrones
+     */
+    MatchingProgressListener NONE = new MatchingProgressListener() {
+    };
+
+    /**
+     * Appelé une fois, avant l'évaluation de la première offre
+     *
+     * @param totalOffers Nombre d'offres à évaluer
+     */
+    default void onStart(int totalOffers) {
+    }
+
+    /**
+     * Appelé pour chaque offre évaluée, au format de réponse de l'API
+     *
+     * @param result Le résultat de matching de l'offre
+     */
+    default void onOfferScored(Map<String, Object> result) {
+    }
+}
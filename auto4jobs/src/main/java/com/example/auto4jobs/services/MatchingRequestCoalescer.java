@@ -0,0 +1,204 @@
+package com.example.auto4jobs.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Regroupe les demandes de matching simultanées d'un même utilisateur : la première lance le calcul,
+ * les suivantes (double clic, consultation et recalcul envoyés ensemble, tâche et flux SSE...) attendent
+ * ce calcul et reçoivent le même résultat, sans relancer d'appels à Ollama. Les appels d'Ollama du calcul
+ * partagé gardent la priorité de la demande qui l'a lancé : une demande plus prioritaire (par exemple une
+ * consultation pendant le précalcul nocturne) ou une demande de recalcul qui arrive pendant un matching
+ * sans recalcul lance son propre calcul, que rejoignent ensuite les demandes suivantes. Le calcul le plus
+ * récent reçoit la génération la plus récente, que le calcul remplacé ne peut plus masquer.
+ */
+@Service
+public class MatchingRequestCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingRequestCoalescer.class);
+
+    @Autowired
+    private OllamaMatchingService matchingService;
+
+    private final Map<Long, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong startedComputations = new AtomicLong();
+
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    /**
+     * @see OllamaMatchingService#matchJobOffersForUser(Long)
+     */
+    public List<Map<String, Object>> matchJobOffersForUser(Long userId) {
+        return matchJobOffersForUser(userId, MatchingProgressListener.NONE);
+    }
+
+    /**
+     * Trouve les offres d'emploi qui correspondent le mieux au CV d'un utilisateur, ou rejoint le
+     * matching déjà en cours pour cet utilisateur
+     *
+     * @param userId ID de l'utilisateur
+     * @param listener Listener notifié de l'avancement du matching
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     * @see OllamaMatchingService#matchJobOffersForUser(Long, MatchingProgressListener)
+     */
+    public List<Map<String, Object>> matchJobOffersForUser(Long userId, MatchingProgressListener listener) {
+        return execute(userId, false, listener);
+    }
+
+    /**
+     * @see OllamaMatchingService#forceMatchJobOffersForUser(Long)
+     */
+    public List<Map<String, Object>> forceMatchJobOffersForUser(Long userId) {
+        return forceMatchJobOffersForUser(userId, MatchingProgressListener.NONE);
+    }
+
+    /**
+     * Force le recalcul des correspondances d'un utilisateur, ou rejoint le matching déjà en cours pour
+     * cet utilisateur
+     *
+     * @param userId ID de l'utilisateur
+     * @param listener Listener notifié de l'avancement du matching
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     * @see OllamaMatchingService#forceMatchJobOffersForUser(Long, MatchingProgressListener)
+     */
+    public List<Map<String, Object>> forceMatchJobOffersForUser(Long userId, MatchingProgressListener listener) {
+        return execute(userId, true, listener);
+    }
+
+    /**
+     * Retourne les compteurs du regroupement des demandes
+     *
+     * @return Map contenant les matchings en cours, lancés et les demandes regroupées
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("inFlight", inFlight.size());
+        statistics.put("startedComputations", startedComputations.get());
+        statistics.put("coalescedRequests", coalescedRequests.get());
+        return statistics;
+    }
+
+    private List<Map<String, Object>> execute(Long userId, boolean force, MatchingProgressListener listener) {
+        Flight flight = new Flight(LlmRequestContext.current().priority(), force);
+        Flight replaced = null;
+        while (true) {
+            Flight existing = inFlight.putIfAbsent(userId, flight);
+            if (existing == null) {
+                break;
+            }
+            if (existing.serves(flight)) {
+                coalescedRequests.incrementAndGet();
+                logger.info("Matching déjà en cours pour l'utilisateur {}, la demande attend son résultat", userId);
+                return existing.await(listener);
+            }
+            // Les demandes suivantes rejoindront ce calcul ; le calcul remplacé se termine pour ses propres demandes
+            if (inFlight.replace(userId, existing, flight)) {
+                replaced = existing;
+                break;
+            }
+        }
+
+        if (replaced != null) {
+            logger.info("Matching {} de l'utilisateur {} lancé sans attendre le matching {} en cours",
+                    flight.describe(), userId, replaced.describe());
+        }
+        startedComputations.incrementAndGet();
+        flight.addListener(listener);
+        try {
+            List<Map<String, Object>> results = force
+                    ? matchingService.forceMatchJobOffersForUser(userId, flight)
+                    : matchingService.matchJobOffersForUser(userId, flight);
+            flight.result.complete(results);
+            return results;
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(userId, flight);
+        }
+    }
+
+    /**
+     * Matching en cours d'un utilisateur. Il retransmet l'avancement à toutes les demandes qui l'attendent ;
+     * une demande arrivée en cours de route reçoit d'abord les événements déjà émis.
+     */
+    private static class Flight implements MatchingProgressListener {
+        private final LlmPriority priority;
+        private final boolean force;
+        private final CompletableFuture<List<Map<String, Object>>> result = new CompletableFuture<>();
+        private final List<MatchingProgressListener> listeners = new ArrayList<>();
+        private final List<Map<String, Object>> scored = new ArrayList<>();
+        private Integer totalOffers;
+
+        Flight(LlmPriority priority, boolean force) {
+            this.priority = priority;
+            this.force = force;
+        }
+
+        /**
+         * Indique si ce calcul peut servir une autre demande : il recalcule si elle le demande et ses appels
+         * à Ollama sont au moins aussi prioritaires que les siens
+         */
+        boolean serves(Flight request) {
+            return (force || !request.force) && priority.compareTo(request.priority) <= 0;
+        }
+
+        String describe() {
+            return (force ? "forcé " : "") + priority.name().toLowerCase();
+        }
+
+        @Override
+        public synchronized void onStart(int totalOffers) {
+            this.totalOffers = totalOffers;
+            listeners.forEach(listener -> listener.onStart(totalOffers));
+        }
+
+        @Override
+        public synchronized void onOfferScored(Map<String, Object> result) {
+            scored.add(result);
+            listeners.forEach(listener -> listener.onOfferScored(result));
+        }
+
+        synchronized void addListener(MatchingProgressListener listener) {
+            if (listener == MatchingProgressListener.NONE) {
+                return;
+            }
+            if (totalOffers != null) {
+                listener.onStart(totalOffers);
+            }
+            scored.forEach(listener::onOfferScored);
+            listeners.add(listener);
+        }
+
+        List<Map<String, Object>> await(MatchingProgressListener listener) {
+            addListener(listener);
+            try {
+                // Chaque demande reçoit sa propre liste, triée comme celle du calcul partagé
+                return new ArrayList<>(result.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                throw new IllegalStateException("Le matching a échoué", e.getCause());
+            } catch (CancellationException e) {
+                throw new IllegalStateException("Le matching a été annulé", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Le matching a été interrompu", e);
+            }
+        }
+    }
+}
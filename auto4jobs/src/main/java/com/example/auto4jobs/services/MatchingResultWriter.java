@@ -0,0 +1,66 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.MatchingResult;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Écriture groupée des résultats de matching. Les résultats d'un utilisateur et leurs explications
+ * sont insérés dans une seule transaction, en lots JDBC (hibernate.jdbc.batch_size) : quelques allers-retours
+ * avec la base suffisent au lieu de plusieurs insertions par offre.
+ */
+@Service
+public class MatchingResultWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatchingResultWriter.class);
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Prépare l'insertion d'un résultat de matching : son identifiant est attribué immédiatement,
+     * l'insertion est envoyée au prochain {@link #flush()} avec les autres.
+     *
+     * @param result Le résultat à sauvegarder
+     * @return Le résultat, avec son identifiant
+     */
+    @Transactional
+    public MatchingResult persist(MatchingResult result) {
+        entityManager.persist(result);
+        return result;
+    }
+
+    /**
+     * Envoie les insertions en attente, regroupées en lots par table
+     */
+    @Transactional
+    public void flush() {
+        entityManager.flush();
+    }
+
+    /**
+     * Sauvegarde un ensemble de résultats de matching. Rejoint la transaction de l'appelant si elle existe.
+     *
+     * @param results Les résultats à sauvegarder (non encore persistés)
+     * @return Les résultats sauvegardés, avec leur identifiant
+     */
+    @Transactional
+    public List<MatchingResult> saveAll(List<MatchingResult> results) {
+        if (results.isEmpty()) {
+            return results;
+        }
+        for (MatchingResult result : results) {
+            entityManager.persist(result);
+        }
+        // Les insertions sont envoyées ici, regroupées par table, plutôt qu'au commit
+        entityManager.flush();
+        logger.debug("{} résultats de matching sauvegardés", results.size());
+        return results;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.auto4jobs.services;
+
+/**
+ * Disjoncteur d'un serveur Ollama. Après {@code failureThreshold} échecs consécutifs, le circuit
+ * s'ouvre et les appels échouent immédiatement pendant {@code openDurationMillis} ; un seul appel
+ * d'essai est ensuite autorisé (circuit semi-ouvert) : son succès referme le circuit, son échec le
+ * rouvre pour une nouvelle période.
+ */
+public class OllamaCircuitBreaker {
+
+    /**
+     * État du disjoncteur
+     */
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String name;
+
+    private final int failureThreshold;
+
+    private final long openDurationMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean probeInFlight;
+
+    /**
+     * @param name Nom du serveur, pour les messages
+     * @param failureThreshold Nombre d'échecs consécutifs qui ouvrent le circuit
+     * @param openDurationMillis Durée pendant laquelle le circuit reste ouvert avant un appel d'essai
+     */
+    public OllamaCircuitBreaker(String name, int failureThreshold, long openDurationMillis) {
+        this.name = name;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * Demande l'autorisation d'effectuer un appel ; un appel autorisé doit être suivi de
+     * {@link #recordSuccess()}, {@link #recordFailure()} ou {@link #recordIgnored()}
+     *
+     * @return true si l'appel peut être effectué
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+            state = State.HALF_OPEN;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probeInFlight) {
+                return false;
+            }
+            probeInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    /**
+     * @return true si un appel serait autorisé, sans le réserver
+     */
+    public synchronized boolean isCallPermitted() {
+        return state == State.CLOSED
+                || (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis)
+                || (state == State.HALF_OPEN && !probeInFlight);
+    }
+
+    public synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        state = State.CLOSED;
+    }
+
+    public synchronized void recordFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Termine un appel autorisé dont le résultat ne renseigne pas sur l'état du serveur (appel annulé)
+     */
+    public synchronized void recordIgnored() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMillis) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
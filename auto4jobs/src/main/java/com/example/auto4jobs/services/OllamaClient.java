@@ -0,0 +1,771 @@
+package com.example.auto4jobs.services;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.hc.client5.http.classic.methods.HttpGet;
+import org.apache.hc.client5.http.classic.methods.HttpPost;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client HTTP de l'API Ollama. Les connexions sont conservées dans un pool et réutilisées d'un appel
+ * à l'autre ; chaque appel est borné par un délai de connexion, un délai de lecture et un délai total,
+ * au-delà duquel la requête est abandonnée, de sorte qu'un serveur Ollama bloqué n'immobilise jamais
+ * un thread indéfiniment. La requête est aussi abandonnée lorsque le thread appelant est interrompu
+ * (évaluation annulée), la lecture bloquante du client HTTP ne réagissant pas aux interruptions.
+ * Tous les appels passent par {@link LlmDispatcher}.
+ * <p>
+ * Chaque serveur est protégé par un {@link OllamaCircuitBreaker} : un serveur en panne est écarté
+ * immédiatement au lieu d'être attendu à chaque appel. Si un second serveur est configuré
+ * ({@code ollama.hedge.url}), une génération qui dépasse le centile de latence configuré est
+ * réémise vers lui et la première réponse obtenue est retenue ; il sert aussi de secours lorsque
+ * le circuit du serveur principal est ouvert ou que son appel échoue. La réémission occupe une place
+ * du répartiteur : elle n'a lieu que si une place est libre et qu'aucun appel n'attend.
+ * <p>
+ * Plusieurs serveurs peuvent être déclarés ({@code ollama.api.urls}) : chaque appel est envoyé au serveur
+ * qui a le moins d'appels en cours. Les appels d'un même utilisateur restent sur le même serveur, qui
+ * conserve ainsi en mémoire le contexte de son CV, tant que ce serveur n'est pas nettement plus chargé
+ * que les autres. Un serveur dont le circuit est ouvert ou qui ne répond plus aux vérifications
+ * périodiques est écarté jusqu'à son rétablissement.
+ */
+@Service
+public class OllamaClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaClient.class);
+
+    // Intervalle de détection des appels dont le thread appelant a été interrompu
+    private static final long INTERRUPT_CHECK_MILLIS = 100;
+
+    @Value("${ollama.api.url:http://localhost:11434/api/generate}")
+    private String generateUrl;
+
+    @Value("${ollama.embeddings.url:http://localhost:11434/api/embeddings}")
+    private String embeddingsUrl;
+
+    // Endpoints /api/generate des serveurs Ollama, séparés par des virgules (vide = ollama.api.url seul)
+    @Value("${ollama.api.urls:}")
+    private String generateUrls = "";
+
+    // Intervalle des vérifications de disponibilité des serveurs (0 = désactivées)
+    @Value("${ollama.pool.health-check-interval-seconds:10}")
+    private long healthCheckIntervalSeconds = 10;
+
+    @Value("${ollama.pool.health-check-timeout-ms:2000}")
+    private long healthCheckTimeoutMillis = 2000;
+
+    // Écart d'appels en cours au-delà duquel un appel quitte le serveur attitré de son utilisateur
+    @Value("${ollama.pool.sticky-max-imbalance:4}")
+    private int stickyMaxImbalance = 4;
+
+    // Nombre maximal de connexions ouvertes vers Ollama
+    @Value("${ollama.http.max-connections:16}")
+    private int maxConnections = 16;
+
+    @Value("${ollama.http.connect-timeout-ms:2000}")
+    private long connectTimeoutMillis = 2000;
+
+    // Délai maximal sans recevoir de données, génération comprise (les réponses ne sont pas diffusées)
+    @Value("${ollama.http.read-timeout-seconds:120}")
+    private long readTimeoutSeconds = 120;
+
+    // Durée maximale d'un appel complet, après laquelle la requête est abandonnée
+    @Value("${ollama.http.total-timeout-seconds:180}")
+    private long totalTimeoutSeconds = 180;
+
+    // Délai au-delà duquel une connexion inactive du pool est fermée
+    @Value("${ollama.http.idle-timeout-seconds:30}")
+    private long idleTimeoutSeconds = 30;
+
+    // Endpoint /api/generate d'un second serveur Ollama, cible des requêtes couvertes (vide = désactivé)
+    @Value("${ollama.hedge.url:}")
+    private String hedgeUrl;
+
+    // Centile de latence du serveur principal au-delà duquel une génération est réémise
+    @Value("${ollama.hedge.percentile:0.95}")
+    private double hedgePercentile = 0.95;
+
+    // Délai minimal avant réémission, utilisé tant que l'historique de latence est insuffisant
+    @Value("${ollama.hedge.min-delay-ms:1000}")
+    private long hedgeMinDelayMillis = 1000;
+
+    @Value("${ollama.hedge.min-samples:20}")
+    private int hedgeMinSamples = 20;
+
+    @Value("${ollama.circuit-breaker.failure-threshold:5}")
+    private int failureThreshold = 5;
+
+    @Value("${ollama.circuit-breaker.open-duration-ms:30000}")
+    private long openDurationMillis = 30000;
+
+    @Autowired
+    private LlmDispatcher llmDispatcher;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private CloseableHttpClient httpClient;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    // Abandon des appels qui dépassent le délai total ou dont le thread appelant a été interrompu
+    private ScheduledExecutorService timeoutScheduler;
+
+    // Requêtes en cours et thread qui attend chacune d'elles
+    private final Map<HttpPost, Thread> inFlightCalls = new ConcurrentHashMap<>();
+
+    // Exécution des appels couverts, dont la durée est surveillée par le thread appelant : un thread par
+    // connexion vers chacun des deux serveurs
+    private ExecutorService hedgeExecutor;
+
+    // Vérifications périodiques de disponibilité, lorsque plusieurs serveurs sont déclarés
+    private ScheduledExecutorService healthCheckScheduler;
+
+    private List<Backend> backends;
+
+    // Point de départ de la recherche du serveur le moins chargé, pour répartir les égalités
+    private final AtomicInteger nextBackend = new AtomicInteger();
+
+    private Backend hedge;
+
+    private final AtomicLong hedgedCalls = new AtomicLong();
+
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    private ObjectWriter requestWriter;
+
+    private ObjectReader generateResponseReader;
+
+    private ObjectReader embeddingResponseReader;
+
+    @PostConstruct
+    public void init() {
+        backends = createBackends();
+        // Chaque serveur dispose de toutes les connexions, plus une pour ses vérifications de disponibilité
+        int connectionsPerBackend = Math.max(1, maxConnections) + (backends.size() > 1 ? 1 : 0);
+        connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(connectionsPerBackend * backends.size())
+                .setMaxConnPerRoute(connectionsPerBackend)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofSeconds(readTimeoutSeconds))
+                        .build())
+                .build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        // Le nombre d'appels simultanés est plafonné par le répartiteur : une connexion est toujours disponible rapidement
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setResponseTimeout(Timeout.ofSeconds(readTimeoutSeconds))
+                        .build())
+                .evictIdleConnections(TimeValue.ofSeconds(idleTimeoutSeconds))
+                .disableAutomaticRetries()
+                .build();
+        timeoutScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ollama-timeout-"));
+        timeoutScheduler.scheduleWithFixedDelay(this::abortInterruptedCalls, INTERRUPT_CHECK_MILLIS, INTERRUPT_CHECK_MILLIS,
+                TimeUnit.MILLISECONDS);
+
+        if (backends.size() > 1 && healthCheckIntervalSeconds > 0) {
+            healthCheckScheduler = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ollama-health-"));
+            healthCheckScheduler.scheduleWithFixedDelay(this::checkBackends, healthCheckIntervalSeconds,
+                    healthCheckIntervalSeconds, TimeUnit.SECONDS);
+        }
+        if (hedgeUrl != null && !hedgeUrl.isBlank()) {
+            hedge = new Backend("secours", -1, URI.create(hedgeUrl), null);
+            int hedgeThreads = 2 * Math.max(1, maxConnections);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(hedgeThreads, hedgeThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new CustomizableThreadFactory("ollama-hedge-"));
+            executor.allowCoreThreadTimeOut(true);
+            hedgeExecutor = executor;
+        }
+        requestWriter = objectMapper.writer();
+        generateResponseReader = objectMapper.readerFor(GenerateResponse.class);
+        embeddingResponseReader = objectMapper.readerFor(EmbeddingResponse.class);
+
+        logger.info("Client Ollama configuré : {} connexions, délais de connexion {} ms, de lecture {} s, total {} s{}{}",
+                maxConnections, connectTimeoutMillis, readTimeoutSeconds, totalTimeoutSeconds,
+                backends.size() > 1 ? ", " + backends.size() + " serveurs répartis" : "",
+                hedge != null ? ", requêtes couvertes vers " + hedgeUrl : "");
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        timeoutScheduler.shutdownNow();
+        if (healthCheckScheduler != null) {
+            healthCheckScheduler.shutdownNow();
+        }
+        if (hedgeExecutor != null) {
+            hedgeExecutor.shutdownNow();
+        }
+        httpClient.close();
+    }
+
+    /**
+     * Génère une réponse avec l'endpoint /api/generate
+     *
+     * @param request La requête de génération
+     * @return La réponse d'Ollama
+     * @throws IOException si Ollama est injoignable, répond en erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     * @throws LlmCapacityExceededException si le répartiteur refuse l'appel
+     */
+    public GenerateResponse generate(GenerateRequest request) throws IOException, InterruptedException {
+        return generate(request, totalTimeoutSeconds);
+    }
+
+    /**
+     * Génère une réponse avec l'endpoint /api/generate, avec un délai total propre à l'appel
+     *
+     * @param request La requête de génération
+     * @param timeoutSeconds Durée maximale de l'appel, après laquelle la requête est abandonnée (0 = délai total par défaut)
+     * @return La réponse d'Ollama
+     * @throws IOException si Ollama est injoignable, répond en erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     * @throws LlmCapacityExceededException si le répartiteur refuse l'appel
+     */
+    public GenerateResponse generate(GenerateRequest request, long timeoutSeconds) throws IOException, InterruptedException {
+        byte[] body = requestWriter.writeValueAsBytes(request);
+        long callTimeoutSeconds = timeoutSeconds > 0 ? timeoutSeconds : totalTimeoutSeconds;
+        GenerateResponse response = llmDispatcher.executeMeasured(latency -> {
+            Backend backend = selectBackend();
+            return hedge != null
+                    ? generateHedged(backend, body, callTimeoutSeconds, latency)
+                    : send(backend, backend.generateUri, body, generateResponseReader, new Attempt(callTimeoutSeconds));
+        });
+        if (response.response() == null) {
+            throw new IOException("Réponse d'Ollama sans texte généré");
+        }
+        return response;
+    }
+
+    /**
+     * Calcule l'embedding d'un texte avec l'endpoint /api/embeddings
+     *
+     * @param model Le modèle d'embeddings
+     * @param text Le texte à encoder
+     * @return Le vecteur retourné par Ollama
+     * @throws IOException si Ollama est injoignable, répond en erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     * @throws LlmCapacityExceededException si le répartiteur refuse l'appel
+     */
+    public float[] embed(String model, String text) throws IOException, InterruptedException {
+        byte[] body = requestWriter.writeValueAsBytes(new EmbeddingRequest(model, text));
+        EmbeddingResponse response = llmDispatcher.execute(() -> {
+            Backend backend = selectBackend();
+            return send(backend, backend.embeddingsUri, body, embeddingResponseReader, new Attempt(totalTimeoutSeconds));
+        });
+        if (response.embedding() == null || response.embedding().length == 0) {
+            throw new IOException("Réponse d'Ollama sans embedding");
+        }
+        return response.embedding();
+    }
+
+    /**
+     * @return true si au moins un serveur accepte des appels (circuit fermé ou prêt pour un appel d'essai)
+     */
+    public boolean isAvailable() {
+        return backends.stream().anyMatch(Backend::isSelectable) || (hedge != null && hedge.breaker.isCallPermitted());
+    }
+
+    /**
+     * @return L'occupation du pool de connexions, l'état et la charge de chaque serveur et les compteurs de requêtes couvertes
+     */
+    public Map<String, Object> getStatistics() {
+        var stats = connectionManager.getTotalStats();
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("leased", stats.getLeased());
+        statistics.put("available", stats.getAvailable());
+        statistics.put("pending", stats.getPending());
+        statistics.put("max", stats.getMax());
+        statistics.put("backends", backends.stream().map(Backend::toStatistics).toList());
+        if (hedge != null) {
+            statistics.put("hedge", hedge.toStatistics());
+            statistics.put("hedgedCalls", hedgedCalls.get());
+            statistics.put("hedgeWins", hedgeWins.get());
+        }
+        return statistics;
+    }
+
+    /**
+     * Choisit le serveur d'un appel parmi les serveurs disponibles : le serveur attitré de l'utilisateur du
+     * contexte courant ({@link LlmRequestContext}), sauf s'il a nettement plus d'appels en cours que le
+     * serveur le moins chargé, qui est choisi dans ce cas et pour les appels sans utilisateur
+     *
+     * @return Le serveur choisi ; si aucun n'est disponible, le premier, dont l'appel échouera rapidement
+     */
+    private Backend selectBackend() {
+        if (backends.size() == 1) {
+            return backends.get(0);
+        }
+        Backend leastLoaded = null;
+        int start = Math.floorMod(nextBackend.getAndIncrement(), backends.size());
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get((start + i) % backends.size());
+            if (backend.isSelectable() && (leastLoaded == null || backend.outstanding.get() < leastLoaded.outstanding.get())) {
+                leastLoaded = backend;
+            }
+        }
+        if (leastLoaded == null) {
+            return backends.get(0);
+        }
+
+        Long userId = LlmRequestContext.current().userId();
+        if (userId != null) {
+            Backend sticky = stickyBackend(userId);
+            if (sticky != null && sticky.outstanding.get() - leastLoaded.outstanding.get() <= stickyMaxImbalance) {
+                return sticky;
+            }
+        }
+        return leastLoaded;
+    }
+
+    /**
+     * Serveur attitré d'un utilisateur parmi les serveurs disponibles, par hachage au plus haut poids :
+     * l'écartement d'un serveur ne déplace que les utilisateurs qui lui étaient attribués
+     */
+    private Backend stickyBackend(Long userId) {
+        Backend sticky = null;
+        long bestWeight = Long.MIN_VALUE;
+        for (Backend backend : backends) {
+            if (!backend.isSelectable()) {
+                continue;
+            }
+            long weight = mix(userId * 31 + backend.index);
+            if (sticky == null || weight > bestWeight) {
+                sticky = backend;
+                bestWeight = weight;
+            }
+        }
+        return sticky;
+    }
+
+    /**
+     * Mélange des bits d'un entier 64 bits (finaliseur de SplitMix64)
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+        value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+        return value ^ (value >>> 31);
+    }
+
+    /**
+     * Vérifie la disponibilité de chaque serveur avec l'endpoint /api/version : un serveur qui ne répond pas
+     * est écarté jusqu'à la vérification suivante réussie
+     */
+    private void checkBackends() {
+        for (Backend backend : backends) {
+            HttpGet get = new HttpGet(backend.generateUri.resolve("/api/version"));
+            get.setConfig(RequestConfig.custom()
+                    .setConnectionRequestTimeout(Timeout.ofMilliseconds(healthCheckTimeoutMillis))
+                    .setResponseTimeout(Timeout.ofMilliseconds(healthCheckTimeoutMillis))
+                    .build());
+            boolean healthy;
+            try {
+                healthy = httpClient.execute(get, response -> {
+                    EntityUtils.consume(response.getEntity());
+                    return response.getCode() >= 200 && response.getCode() < 300;
+                });
+            } catch (IOException | RuntimeException e) {
+                healthy = false;
+            }
+            if (backend.healthy != healthy) {
+                if (healthy) {
+                    logger.info("Serveur Ollama {} rétabli, réintégré dans la répartition", backend.name);
+                } else {
+                    logger.warn("Serveur Ollama {} injoignable, écarté de la répartition", backend.name);
+                }
+                backend.healthy = healthy;
+            }
+        }
+    }
+
+    private List<Backend> createBackends() {
+        List<String> urls = generateUrls == null ? List.of() : Arrays.stream(generateUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .toList();
+        if (urls.isEmpty()) {
+            return List.of(new Backend("principal", 0, URI.create(generateUrl), URI.create(embeddingsUrl)));
+        }
+        List<Backend> created = new ArrayList<>();
+        for (String url : urls) {
+            URI generateUri = URI.create(url);
+            created.add(new Backend(generateUri.getAuthority(), created.size(), generateUri, generateUri.resolve("/api/embeddings")));
+        }
+        return List.copyOf(created);
+    }
+
+    /**
+     * Génère une réponse en réémettant la requête vers le serveur de secours si le serveur choisi tarde au-delà
+     * du centile de latence, ou en basculant sur lui si le serveur choisi est indisponible ou échoue.
+     * La durée retenue par le plafond adaptatif est celle de l'appel au serveur choisi, jusqu'à sa réponse
+     * ou son abandon : une réponse rapide du serveur de secours ne masque pas l'encombrement du premier.
+     */
+    private GenerateResponse generateHedged(Backend selected, byte[] body, long timeoutSeconds,
+                                            LlmDispatcher.CallLatency latency) throws IOException {
+        Backend first = selected.breaker.isCallPermitted() || !hedge.breaker.isCallPermitted() ? selected : hedge;
+        Backend second = first == selected ? hedge : selected;
+
+        Attempt firstAttempt = new Attempt(timeoutSeconds);
+        Attempt secondAttempt = new Attempt(timeoutSeconds);
+        long start = System.nanoTime();
+        AtomicLong firstMillis = new AtomicLong(-1);
+        CompletableFuture<GenerateResponse> firstCall = sendAsync(first, body, firstAttempt);
+        firstCall.whenComplete((response, error) ->
+                firstMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)));
+        try {
+            try {
+                return firstCall.get(hedgeDelayMillis(first), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Appel lent : réémis vers l'autre serveur ci-dessous
+            } catch (ExecutionException e) {
+                if (!second.breaker.isCallPermitted()) {
+                    throw unwrap(e);
+                }
+                logger.warn("Échec de l'appel au serveur Ollama {}, bascule sur le serveur {}: {}",
+                        first.name, second.name, e.getCause().getMessage());
+                return send(second, second.generateUri, body, generateResponseReader, secondAttempt);
+            }
+
+            // La réémission occupe une place du répartiteur : sans place libre, elle doublerait la charge d'Ollama
+            // au moment où il est le plus sollicité
+            if (!second.breaker.isCallPermitted() || !llmDispatcher.tryAcquire()) {
+                return firstCall.get();
+            }
+            CompletableFuture<GenerateResponse> secondCall;
+            try {
+                secondCall = sendAsync(second, body, secondAttempt);
+            } catch (RejectedExecutionException e) {
+                llmDispatcher.release();
+                return firstCall.get();
+            }
+            hedgedCalls.incrementAndGet();
+            // Place rendue à la fin de l'appel couvert, y compris lorsqu'il est abandonné
+            secondCall.whenComplete((response, error) -> llmDispatcher.release());
+
+            // La première réponse réussie l'emporte ; l'échec n'est retenu que si les deux appels échouent
+            CompletableFuture<GenerateResponse> winner = new CompletableFuture<>();
+            AtomicInteger failures = new AtomicInteger();
+            firstCall.whenComplete((response, error) -> complete(winner, failures, response, error, false));
+            secondCall.whenComplete((response, error) -> complete(winner, failures, response, error, true));
+            return winner.get();
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Appel à Ollama interrompu");
+        } finally {
+            long millis = firstMillis.get();
+            latency.record(millis >= 0 ? millis : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+                    millis < 0 || !firstCall.isCompletedExceptionally());
+            // Abandonner l'appel perdant (sans effet sur un appel terminé)
+            firstAttempt.abandon();
+            secondAttempt.abandon();
+        }
+    }
+
+    private void complete(CompletableFuture<GenerateResponse> winner, AtomicInteger failures,
+                          GenerateResponse response, Throwable error, boolean hedged) {
+        if (error == null) {
+            // Compter la victoire avant de libérer l'appelant, qui peut consulter les compteurs aussitôt
+            synchronized (winner) {
+                if (!winner.isDone()) {
+                    if (hedged) {
+                        hedgeWins.incrementAndGet();
+                    }
+                    winner.complete(response);
+                }
+            }
+        } else if (failures.incrementAndGet() == 2) {
+            winner.completeExceptionally(error);
+        }
+    }
+
+    private CompletableFuture<GenerateResponse> sendAsync(Backend backend, byte[] body, Attempt attempt) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(backend, backend.generateUri, body, generateResponseReader, attempt);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, hedgeExecutor);
+    }
+
+    /**
+     * Délai avant réémission : le centile de latence du serveur, sans descendre sous le délai minimal
+     */
+    private long hedgeDelayMillis(Backend backend) {
+        return Math.max(hedgeMinDelayMillis, backend.latency.percentile(hedgePercentile, hedgeMinSamples));
+    }
+
+    private static IOException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                ? e.getCause().getCause() : e.getCause();
+        if (cause instanceof IOException io) {
+            return io;
+        }
+        if (cause instanceof RuntimeException runtime) {
+            throw runtime;
+        }
+        return new IOException("Appel à Ollama impossible", cause);
+    }
+
+    /**
+     * Envoie une requête à un serveur en tenant compte de son disjoncteur
+     *
+     * @throws OllamaUnavailableException si le circuit du serveur est ouvert
+     */
+    private <T> T send(Backend backend, URI uri, byte[] body, ObjectReader reader, Attempt attempt) throws IOException {
+        if (!backend.breaker.tryAcquire()) {
+            throw new OllamaUnavailableException("Serveur Ollama " + backend.name + " indisponible (circuit ouvert)");
+        }
+        HttpPost post = attempt.prepare(uri);
+        post.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        long start = System.nanoTime();
+        backend.outstanding.incrementAndGet();
+        backend.requests.incrementAndGet();
+        try {
+            T response = execute(post, reader, attempt.timeoutSeconds);
+            backend.breaker.recordSuccess();
+            backend.latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return response;
+        } catch (HttpStatusException e) {
+            // Une erreur 4xx (modèle inconnu, requête invalide) ne met pas en cause la disponibilité du serveur
+            if (e.status >= 500) {
+                backend.breaker.recordFailure();
+            } else {
+                backend.breaker.recordSuccess();
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            // Appel abandonné par l'appelant (autre tentative retenue, évaluation annulée) : le serveur n'est pas en cause
+            if (attempt.abandoned || Thread.currentThread().isInterrupted()) {
+                backend.breaker.recordIgnored();
+            } else {
+                backend.breaker.recordFailure();
+            }
+            throw e;
+        } finally {
+            backend.outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Exécute la requête en l'abandonnant si elle dépasse le délai total ou si le thread appelant est interrompu
+     */
+    private <T> T execute(HttpPost post, ObjectReader reader, long timeoutSeconds) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Appel à Ollama interrompu");
+        }
+        ScheduledFuture<?> abort = timeoutScheduler.schedule(post::cancel, timeoutSeconds, TimeUnit.SECONDS);
+        inFlightCalls.put(post, Thread.currentThread());
+        try {
+            return httpClient.execute(post, response -> {
+                byte[] content = response.getEntity() != null ? EntityUtils.toByteArray(response.getEntity()) : new byte[0];
+                if (response.getCode() < 200 || response.getCode() >= 300) {
+                    throw new HttpStatusException(response.getCode(), "Ollama a répondu " + response.getCode() + " à " + post.getRequestUri());
+                }
+                return reader.readValue(content);
+            });
+        } catch (IOException e) {
+            if (post.isCancelled() && Thread.currentThread().isInterrupted()) {
+                InterruptedIOException interrupted = new InterruptedIOException("Appel à Ollama interrompu");
+                interrupted.initCause(e);
+                throw interrupted;
+            }
+            if (post.isCancelled() && abort.isDone()) {
+                throw new IOException("Délai total de " + timeoutSeconds + " s dépassé pour l'appel à Ollama", e);
+            }
+            throw e;
+        } finally {
+            inFlightCalls.remove(post);
+            abort.cancel(false);
+        }
+    }
+
+    /**
+     * Abandonne les requêtes dont le thread appelant a été interrompu (par exemple une évaluation annulée
+     * avec {@code Future.cancel(true)}), qui resteraient sinon bloquées jusqu'au délai de lecture
+     */
+    private void abortInterruptedCalls() {
+        inFlightCalls.forEach((post, thread) -> {
+            if (thread.isInterrupted()) {
+                post.cancel();
+            }
+        });
+    }
+
+    /**
+     * Requête de l'endpoint /api/generate ; les champs nuls ne sont pas envoyés
+     *
+     * @param model Le modèle
+     * @param prompt Le prompt
+     * @param stream Toujours false : la réponse est attendue en une seule fois
+     * @param format Le format de réponse imposé : "json", un schéma JSON (voir {@link JsonResponseSchema}), ou null
+     * @param options Les options de génération, ou null
+     * @param context Le contexte retourné par un appel précédent, dont la génération repart, ou null
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record GenerateRequest(String model, String prompt, boolean stream, Object format, Map<String, Object> options,
+                                  List<Integer> context) {
+
+        public static GenerateRequest of(String model, String prompt, Object format) {
+            return new GenerateRequest(model, prompt, false, format, null, null);
+        }
+
+        public GenerateRequest withOptions(Map<String, Object> options) {
+            return new GenerateRequest(model, prompt, stream, format, options, context);
+        }
+
+        public GenerateRequest withContext(List<Integer> context) {
+            return new GenerateRequest(model, prompt, stream, format, options, context);
+        }
+    }
+
+    /**
+     * Réponse de l'endpoint /api/generate
+     *
+     * @param model Le modèle ayant généré la réponse
+     * @param response Le texte généré
+     * @param done true si la génération est terminée
+     * @param context Le contexte de la conversation, réutilisable par un appel suivant
+     * @param totalDuration Durée totale de l'appel côté Ollama, en nanosecondes
+     * @param evalCount Nombre de jetons générés
+     */
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record GenerateResponse(String model, String response, boolean done, List<Integer> context,
+                                   @JsonProperty("total_duration") Long totalDuration,
+                                   @JsonProperty("eval_count") Integer evalCount) {
+    }
+
+    private record EmbeddingRequest(String model, String prompt) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    private record EmbeddingResponse(float[] embedding) {
+    }
+
+    /**
+     * Serveur Ollama, avec son disjoncteur, son nombre d'appels en cours et l'historique de ses latences
+     */
+    private class Backend {
+        private final String name;
+        private final int index;
+        private final URI generateUri;
+        private final URI embeddingsUri;
+        private final OllamaCircuitBreaker breaker;
+        private final LatencyTracker latency = new LatencyTracker(200);
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        // Résultat de la dernière vérification de disponibilité
+        private volatile boolean healthy = true;
+
+        Backend(String name, int index, URI generateUri, URI embeddingsUri) {
+            this.name = name;
+            this.index = index;
+            this.generateUri = generateUri;
+            this.embeddingsUri = embeddingsUri;
+            this.breaker = new OllamaCircuitBreaker(name, failureThreshold, openDurationMillis);
+        }
+
+        boolean isSelectable() {
+            return healthy && breaker.isCallPermitted();
+        }
+
+        Map<String, Object> toStatistics() {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("url", generateUri.toString());
+            statistics.put("healthy", healthy);
+            statistics.put("circuit", breaker.getState().name());
+            statistics.put("outstanding", outstanding.get());
+            statistics.put("requests", requests.get());
+            statistics.put("latencyP95Millis", latency.percentile(0.95, 1));
+            return statistics;
+        }
+    }
+
+    /**
+     * Tentative d'appel, que l'appelant peut abandonner lorsqu'une autre tentative l'a emporté
+     */
+    private static class Attempt {
+        private final long timeoutSeconds;
+        private volatile HttpPost post;
+        private volatile boolean abandoned;
+
+        Attempt(long timeoutSeconds) {
+            this.timeoutSeconds = timeoutSeconds;
+        }
+
+        HttpPost prepare(URI uri) {
+            post = new HttpPost(uri);
+            if (abandoned) {
+                post.cancel();
+            }
+            return post;
+        }
+
+        void abandon() {
+            abandoned = true;
+            HttpPost current = post;
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * Réponse HTTP en erreur d'Ollama
+     */
+    private static class HttpStatusException extends IOException {
+        private final int status;
+
+        HttpStatusException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.auto4jobs.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+
+/**
+ * Calcule les embeddings avec l'endpoint /api/embeddings d'Ollama
+ */
+@Service
+@ConditionalOnProperty(name = "matching.embedding.provider", havingValue = "ollama", matchIfMissing = true)
+public class OllamaEmbeddingProvider implements EmbeddingProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaEmbeddingProvider.class);
+
+    @Value("${ollama.embedding-model:nomic-embed-text}")
+    private String embeddingModel;
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    @Override
+    public float[] embed(String text) {
+        try {
+            return ollamaClient.embed(embeddingModel, text);
+        } catch (IOException e) {
+            logger.error("Réponse invalide de l'endpoint d'embeddings d'Ollama: {}", e.getMessage());
+            throw new IllegalStateException("Impossible de calculer l'embedding avec Ollama", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Le calcul de l'embedding a été interrompu", e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "ollama:" + embeddingModel;
+    }
+}
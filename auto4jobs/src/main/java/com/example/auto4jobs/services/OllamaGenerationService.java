@@ -0,0 +1,254 @@
+package com.example.auto4jobs.services;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Génération de texte avec Ollama, en consultant d'abord le cache des réponses. Chaque étape du
+ * matching ({@link LlmStage}) est servie par son propre modèle, par défaut {@code ollama.model} :
+ * un petit modèle rapide peut ainsi calculer les scores, le grand modèle étant réservé aux explications
+ * et à l'extraction des compétences. Une étape peut aussi limiter son nombre d'appels simultanés, à
+ * l'intérieur de la limite globale du {@link LlmDispatcher}, et borner la durée de ses appels.
+ */
+@Service
+public class OllamaGenerationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaGenerationService.class);
+
+    @Value("${ollama.model:llama3}")
+    private String ollamaModel;
+
+    // Modèle de chaque étape (vide = ollama.model)
+    @Value("${ollama.stage.scoring.model:}")
+    private String scoringModel = "";
+
+    @Value("${ollama.stage.explanations.model:}")
+    private String explanationsModel = "";
+
+    @Value("${ollama.stage.skill-extraction.model:}")
+    private String skillExtractionModel = "";
+
+    // Appels simultanés de chaque étape (0 = seule la limite globale s'applique)
+    @Value("${ollama.stage.scoring.max-concurrent-calls:0}")
+    private int scoringMaxConcurrentCalls = 0;
+
+    @Value("${ollama.stage.explanations.max-concurrent-calls:0}")
+    private int explanationsMaxConcurrentCalls = 0;
+
+    @Value("${ollama.stage.skill-extraction.max-concurrent-calls:0}")
+    private int skillExtractionMaxConcurrentCalls = 0;
+
+    // Durée maximale d'un appel de chaque étape (0 = ollama.http.total-timeout-seconds)
+    @Value("${ollama.stage.scoring.timeout-seconds:0}")
+    private long scoringTimeoutSeconds = 0;
+
+    @Value("${ollama.stage.explanations.timeout-seconds:0}")
+    private long explanationsTimeoutSeconds = 0;
+
+    @Value("${ollama.stage.skill-extraction.timeout-seconds:0}")
+    private long skillExtractionTimeoutSeconds = 0;
+
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    private final Map<LlmStage, StageRoute> routes = new EnumMap<>(LlmStage.class);
+
+    @PostConstruct
+    public void init() {
+        routes.put(LlmStage.SCORING, new StageRoute(scoringModel, scoringMaxConcurrentCalls, scoringTimeoutSeconds));
+        routes.put(LlmStage.EXPLANATIONS, new StageRoute(explanationsModel, explanationsMaxConcurrentCalls, explanationsTimeoutSeconds));
+        routes.put(LlmStage.SKILL_EXTRACTION, new StageRoute(skillExtractionModel, skillExtractionMaxConcurrentCalls,
+                skillExtractionTimeoutSeconds));
+        routes.forEach((stage, route) -> logger.info("Étape {} : modèle {}, appels simultanés {}, délai {}",
+                stage.getKey(), route.model, route.permits != null ? String.valueOf(route.maxConcurrentCalls) : "sans limite propre",
+                route.timeoutSeconds > 0 ? route.timeoutSeconds + " s" : "par défaut"));
+    }
+
+    /**
+     * Génère une réponse avec Ollama en consultant d'abord le cache des réponses. Seules les réponses
+     * acceptées par {@code cacheable} sont mises en cache, afin de ne jamais conserver une réponse
+     * inexploitable qu'un nouvel appel pourrait corriger.
+     *
+     * @param stage L'étape du matching, qui détermine le modèle, la limite d'appels et le délai
+     * @param prompt Le prompt à envoyer
+     * @param format Le format de réponse imposé : "json", un schéma JSON, ou null
+     * @param cacheable Condition pour qu'une réponse soit mise en cache
+     * @return Le texte de la réponse
+     * @throws IOException si Ollama est injoignable, retourne une erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     */
+    public String generate(LlmStage stage, String prompt, Object format, Predicate<String> cacheable)
+            throws IOException, InterruptedException {
+        return generate(stage, prompt, format, null, cacheable);
+    }
+
+    /**
+     * Génère la suite d'un préfixe déjà évalué : seul {@code prompt} est envoyé, la génération repartant
+     * du contexte du préfixe. L'empreinte du préfixe fait partie de la clé de cache.
+     *
+     * @param stage L'étape du matching, qui détermine le modèle, la limite d'appels et le délai
+     * @param prompt La suite du prompt à envoyer
+     * @param format Le format de réponse imposé : "json", un schéma JSON, ou null
+     * @param prefix Le préfixe évalué avec {@link #evaluatePrefix(LlmStage, String)} pour le même modèle, ou null
+     * @param cacheable Condition pour qu'une réponse soit mise en cache
+     * @return Le texte de la réponse
+     * @throws IOException si Ollama est injoignable, retourne une erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     */
+    public String generate(LlmStage stage, String prompt, Object format, PromptPrefix prefix, Predicate<String> cacheable)
+            throws IOException, InterruptedException {
+        StageRoute route = routes.get(stage);
+        if (prefix != null && !prefix.model().equals(route.model)) {
+            throw new IllegalArgumentException("Préfixe évalué avec le modèle " + prefix.model()
+                    + ", l'étape " + stage.getKey() + " utilise " + route.model);
+        }
+        Map<String, Object> options = new HashMap<>();
+        if (format != null) {
+            options.put("format", format);
+        }
+        if (prefix != null) {
+            options.put("prefix", prefix.key());
+        }
+        String cacheKey = llmResponseCache.computeKey(route.model, prompt, options);
+        Optional<String> cached = llmResponseCache.get(cacheKey);
+        if (cached.isPresent()) {
+            logger.debug("Réponse Ollama servie depuis le cache");
+            return cached.get();
+        }
+
+        OllamaClient.GenerateRequest request = OllamaClient.GenerateRequest.of(route.model, prompt, format);
+        if (prefix != null) {
+            request = request.withContext(prefix.context());
+        }
+        String responseText = call(route, request).response();
+        if (cacheable.test(responseText)) {
+            llmResponseCache.put(cacheKey, route.model, responseText);
+        }
+        return responseText;
+    }
+
+    /**
+     * Évalue un préfixe commun à plusieurs prompts (par exemple un CV) et retourne le contexte de
+     * génération d'Ollama, à partir duquel les appels suivants ne transmettent que leur propre suite.
+     * Une réponse d'un seul jeton est demandée : seule l'évaluation du préfixe compte. Le contexte
+     * n'est valable que pour le modèle qui l'a produit, c'est-à-dire pour les étapes servies par ce modèle.
+     *
+     * @param stage L'étape dont les appels reprendront le préfixe
+     * @param prompt Le préfixe à évaluer
+     * @return Le préfixe évalué
+     * @throws IOException si Ollama est injoignable, ne retourne pas de contexte ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     */
+    public PromptPrefix evaluatePrefix(LlmStage stage, String prompt) throws IOException, InterruptedException {
+        StageRoute route = routes.get(stage);
+        OllamaClient.GenerateResponse response = call(route,
+                OllamaClient.GenerateRequest.of(route.model, prompt, null).withOptions(Map.of("num_predict", 1)));
+        if (response.context() == null || response.context().isEmpty()) {
+            throw new IOException("Réponse d'Ollama sans contexte de génération");
+        }
+        logger.debug("Préfixe évalué par Ollama : {} jetons de contexte", response.context().size());
+        return new PromptPrefix(route.model, llmResponseCache.computeKey(route.model, prompt, Map.of()), response.context());
+    }
+
+    /**
+     * @return true si au moins un serveur Ollama peut actuellement être appelé
+     */
+    public boolean isAvailable() {
+        return ollamaClient.isAvailable();
+    }
+
+    /**
+     * @param stage L'étape du matching
+     * @return Le modèle de génération de l'étape
+     */
+    public String getModel(LlmStage stage) {
+        return routes.get(stage).model;
+    }
+
+    /**
+     * Retourne la configuration et l'occupation de chaque étape
+     *
+     * @return Map contenant, pour chaque étape, son modèle, sa limite d'appels, son délai, ses appels en cours et effectués
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        routes.forEach((stage, route) -> {
+            Map<String, Object> stageStatistics = new LinkedHashMap<>();
+            stageStatistics.put("model", route.model);
+            stageStatistics.put("maxConcurrentCalls", route.maxConcurrentCalls);
+            stageStatistics.put("timeoutSeconds", route.timeoutSeconds);
+            stageStatistics.put("inFlight", route.inFlight.get());
+            stageStatistics.put("calls", route.calls.get());
+            statistics.put(stage.getKey(), stageStatistics);
+        });
+        return statistics;
+    }
+
+    /**
+     * Appelle Ollama après avoir obtenu une place dans la limite de l'étape
+     */
+    private OllamaClient.GenerateResponse call(StageRoute route, OllamaClient.GenerateRequest request)
+            throws IOException, InterruptedException {
+        if (route.permits != null) {
+            route.permits.acquire();
+        }
+        route.inFlight.incrementAndGet();
+        route.calls.incrementAndGet();
+        try {
+            return ollamaClient.generate(request, route.timeoutSeconds);
+        } finally {
+            route.inFlight.decrementAndGet();
+            if (route.permits != null) {
+                route.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Préfixe de prompt évalué par Ollama
+     *
+     * @param model Le modèle qui a évalué le préfixe, seul capable de reprendre son contexte
+     * @param key L'empreinte du modèle et du préfixe, incluse dans la clé de cache des suites
+     * @param context Le contexte de génération retourné par Ollama après le préfixe
+     */
+    public record PromptPrefix(String model, String key, List<Integer> context) {
+    }
+
+    /**
+     * Modèle, limite d'appels simultanés et délai d'une étape ; 0 signifie sans limite propre et délai par défaut
+     */
+    private class StageRoute {
+        private final String model;
+        private final int maxConcurrentCalls;
+        private final Semaphore permits;
+        private final long timeoutSeconds;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong calls = new AtomicLong();
+
+        StageRoute(String model, int maxConcurrentCalls, long timeoutSeconds) {
+            this.model = model == null || model.isBlank() ? ollamaModel : model.trim();
+            this.maxConcurrentCalls = Math.max(0, maxConcurrentCalls);
+            this.permits = this.maxConcurrentCalls > 0 ? new Semaphore(this.maxConcurrentCalls, true) : null;
+            this.timeoutSeconds = Math.max(0, timeoutSeconds);
+        }
+    }
+}
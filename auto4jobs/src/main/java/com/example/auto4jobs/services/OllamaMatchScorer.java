@@ -0,0 +1,536 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import com.example.auto4jobs.services.OllamaGenerationService.PromptPrefix;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Calcule les scores de correspondance avec le modèle Ollama. Si Ollama est indisponible ou si sa
+ * réponse est inexploitable, le résultat est calculé localement par le {@link LexicalMatchScorer}.
+ * Lorsque la réutilisation du contexte est activée, le CV est évalué une seule fois par matching
+ * ({@link #beginSweep(String)}) : chaque offre est ensuite envoyée seule, à la suite du contexte du CV.
+ * En mode de réponse structurée, chaque appel impose un schéma JSON à la génération ; une réponse non
+ * conforme est redemandée dans la limite d'un nombre de tentatives, avant de recourir au calcul local.
+ */
+@Service
+public class OllamaMatchScorer implements MatchScorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaMatchScorer.class);
+
+    private static final String SCORING_MODE_COMBINED = "combined";
+
+    private static final Pattern NUMERIC_SCORE = Pattern.compile("\\d+(\\.\\d+)?");
+
+    // "combined" : un seul appel Ollama par offre pour le score et les explications ; "separate" : deux appels
+    @Value("${matching.scoring-mode:combined}")
+    private String scoringMode = SCORING_MODE_COMBINED;
+
+    // Évaluer le CV une fois par matching et réutiliser son contexte de génération pour chaque offre
+    @Value("${matching.cv-context-reuse.enabled:false}")
+    private boolean cvContextReuse;
+
+    // Réponses contraintes par un schéma JSON et vérifiées (false : réponses libres du modèle)
+    @Value("${matching.structured-output.enabled:true}")
+    private boolean structuredOutput = true;
+
+    // Nombre maximal de générations par appel lorsque la réponse ne respecte pas le schéma
+    @Value("${matching.structured-output.max-attempts:2}")
+    private int structuredOutputMaxAttempts = 2;
+
+    @Autowired
+    private OllamaGenerationService ollamaGenerationService;
+
+    @Autowired
+    private LexicalMatchScorer lexicalMatchScorer;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Contextes des CV en cours de matching, libérés à la fin du dernier matching qui les utilise
+    private final Map<String, CvContext> cvContexts = new ConcurrentHashMap<>();
+
+    private final Map<ResponseType, ResponseStatistics> responseStatistics = new EnumMap<>(ResponseType.class);
+
+    private final Map<ResponseType, JsonResponseSchema> responseSchemas = new EnumMap<>(ResponseType.class);
+
+    @PostConstruct
+    public void init() throws JsonProcessingException {
+        for (ResponseType type : ResponseType.values()) {
+            responseStatistics.put(type, new ResponseStatistics());
+            responseSchemas.put(type, new JsonResponseSchema(type.key, objectMapper.readTree(type.schema)));
+        }
+    }
+
+    @Override
+    public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+        // Explications non demandées : un seul appel court, limité au score
+        if (!withExplanations) {
+            return new MatchEvaluation(calculateMatchScore(cvText, offer, offerText, findCvPrefix(cvText, LlmStage.SCORING)), List.of());
+        }
+
+        // Mode combiné : un seul appel Ollama pour le score et les explications
+        if (SCORING_MODE_COMBINED.equalsIgnoreCase(scoringMode)) {
+            return calculateCombinedMatch(cvText, offerText, offer, findCvPrefix(cvText, LlmStage.EXPLANATIONS));
+        }
+
+        return new MatchEvaluation(calculateMatchScore(cvText, offer, offerText, findCvPrefix(cvText, LlmStage.SCORING)),
+                generateMatchExplanations(cvText, offer, offerText, findCvPrefix(cvText, LlmStage.EXPLANATIONS)));
+    }
+
+    /**
+     * Conserve le contexte du CV pendant le matching, si la réutilisation du contexte est activée.
+     * Le CV est évalué par Ollama lors de la première évaluation d'une offre.
+     */
+    @Override
+    public Sweep beginSweep(String cvText) {
+        if (!cvContextReuse) {
+            return Sweep.NONE;
+        }
+        cvContexts.compute(cvText, (key, context) -> {
+            CvContext retained = context != null ? context : new CvContext();
+            retained.users++;
+            return retained;
+        });
+        return () -> cvContexts.computeIfPresent(cvText, (key, context) -> --context.users > 0 ? context : null);
+    }
+
+    /**
+     * Génère des explications sur le matching entre un CV et une offre d'emploi
+     */
+    @Override
+    public List<String> explain(String cvText, JobOffer offer, String offerText) {
+        return generateMatchExplanations(cvText, offer, offerText, findCvPrefix(cvText, LlmStage.EXPLANATIONS));
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return ollamaGenerationService.isAvailable();
+    }
+
+    @Override
+    public String getName() {
+        return "ollama";
+    }
+
+    /**
+     * Retourne les compteurs des réponses d'Ollama par type d'appel
+     *
+     * @return Map contenant, pour chaque type d'appel, les réponses reçues, les réponses inexploitables
+     * et leur taux, les nouvelles tentatives et les recours au calcul local
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("structuredOutput", structuredOutput);
+        for (ResponseType type : ResponseType.values()) {
+            statistics.put(type.key, responseStatistics.get(type).toMap());
+        }
+        return statistics;
+    }
+
+    /**
+     * Génère des explications sur le matching entre un CV et une offre d'emploi
+     *
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @param offerText Texte de l'offre d'emploi
+     * @param prefix Contexte du CV déjà évalué, ou null pour envoyer le CV avec l'offre
+     * @return Liste d'explications
+     */
+    private List<String> generateMatchExplanations(String cvText, JobOffer offer, String offerText, PromptPrefix prefix) {
+        logger.info("Génération d'explications sur le matching avec Ollama");
+
+        try {
+            if (structuredOutput) {
+                String prompt = "Explique pourquoi ce CV correspond ou ne correspond pas à cette offre d'emploi. " +
+                        "Réponds uniquement au format JSON avec les clés 'strengths' (liste de 3 points forts) " +
+                        "et 'weaknesses' (liste de 3 points faibles).\n\n" +
+                        documents(cvText, offerText, prefix);
+                JsonNode json = generateStructured(LlmStage.EXPLANATIONS, ResponseType.EXPLANATIONS, prompt, prefix);
+                if (json != null) {
+                    return toEvaluation(json).explanations();
+                }
+                return lexicalMatchScorer.explain(cvText, offer, offerText);
+            }
+
+            String prompt = "Explique pourquoi ce CV correspond ou ne correspond pas à cette offre d'emploi. " +
+                    "Donne 3 points forts et 3 points faibles. Réponds sous forme de liste avec des tirets.\n\n" +
+                    documents(cvText, offerText, prefix);
+            String responseText = ollamaGenerationService.generate(LlmStage.EXPLANATIONS, prompt, null, prefix, text -> !parseExplanationLines(text).isEmpty());
+
+            // Traiter la réponse pour extraire les explications
+            List<String> explanations = parseExplanationLines(responseText);
+            responseStatistics.get(ResponseType.EXPLANATIONS).record(!explanations.isEmpty());
+
+            if (explanations.isEmpty()) {
+                logger.error("Aucune explication dans la réponse d'Ollama: {}", responseText);
+                responseStatistics.get(ResponseType.EXPLANATIONS).fallbacks.incrementAndGet();
+                return lexicalMatchScorer.explain(cvText, offer, offerText);
+            }
+
+            return explanations;
+        } catch (LlmCapacityExceededException e) {
+            throw e;
+        } catch (OllamaUnavailableException e) {
+            logger.warn("Explications calculées localement: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Exception lors de l'appel à Ollama", e);
+        }
+
+        return lexicalMatchScorer.explain(cvText, offer, offerText);
+    }
+
+    /**
+     * Calcule le score de correspondance entre un CV et une offre d'emploi en utilisant Ollama
+     *
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @param offerText Texte de l'offre d'emploi
+     * @param prefix Contexte du CV déjà évalué, ou null pour envoyer le CV avec l'offre
+     * @return Score de correspondance (0-100)
+     */
+    private double calculateMatchScore(String cvText, JobOffer offer, String offerText, PromptPrefix prefix) {
+        logger.info("Calcul du score de correspondance avec Ollama");
+
+        try {
+            if (structuredOutput) {
+                String prompt = "Calcule le score de correspondance (de 0 à 100) entre " + subject(prefix) + ". " +
+                        "Réponds uniquement au format JSON avec la clé 'score' (nombre entier entre 0 et 100). " +
+                        "Plus le score est élevé, plus la correspondance est forte.\n\n" +
+                        documents(cvText, offerText, prefix);
+                JsonNode json = generateStructured(LlmStage.SCORING, ResponseType.SCORE, prompt, prefix);
+                if (json != null) {
+                    return json.path("score").asDouble();
+                }
+                return lexicalMatchScorer.evaluate(cvText, offer, offerText, false).score();
+            }
+
+            String prompt = "Calcule le score de correspondance (de 0 à 100) entre " + subject(prefix) + ". " +
+                    "Réponds uniquement avec un nombre entier entre 0 et 100. Plus le score est élevé, plus la correspondance est forte.\n\n" +
+                    documents(cvText, offerText, prefix);
+            String responseText = ollamaGenerationService.generate(LlmStage.SCORING, prompt, null, prefix, text -> NUMERIC_SCORE.matcher(text.trim()).matches());
+
+            try {
+                // Essayer de convertir la réponse en nombre
+                double score = Double.parseDouble(responseText.trim());
+                responseStatistics.get(ResponseType.SCORE).record(true);
+                return score;
+            } catch (NumberFormatException e) {
+                logger.error("Impossible de convertir la réponse d'Ollama en nombre: {}", responseText);
+                responseStatistics.get(ResponseType.SCORE).record(false);
+                responseStatistics.get(ResponseType.SCORE).fallbacks.incrementAndGet();
+            }
+        } catch (LlmCapacityExceededException e) {
+            throw e;
+        } catch (OllamaUnavailableException e) {
+            logger.warn("Score calculé localement: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Exception lors de l'appel à Ollama", e);
+        }
+
+        return lexicalMatchScorer.evaluate(cvText, offer, offerText, false).score();
+    }
+
+    /**
+     * Calcule le score de correspondance et les explications en un seul appel à Ollama.
+     * La réponse JSON attendue contient un score et les listes de points forts et de points faibles,
+     * convertis dans le même format que les explications du mode séparé (points forts puis points faibles).
+     *
+     * @param cvText Texte du CV
+     * @param offerText Texte de l'offre d'emploi
+     * @param offer Offre d'emploi
+     * @param prefix Contexte du CV déjà évalué, ou null pour envoyer le CV avec l'offre
+     * @return Résultat de l'évaluation
+     */
+    private MatchEvaluation calculateCombinedMatch(String cvText, String offerText, JobOffer offer, PromptPrefix prefix) {
+        logger.info("Calcul combiné du score et des explications avec Ollama");
+
+        String prompt = "Évalue la correspondance entre " + subject(prefix) + ". " +
+                "Réponds uniquement au format JSON avec les clés 'score' (nombre entier entre 0 et 100, " +
+                "plus le score est élevé, plus la correspondance est forte), 'strengths' (liste de 3 points forts) " +
+                "et 'weaknesses' (liste de 3 points faibles).\n\n" +
+                documents(cvText, offerText, prefix);
+
+        try {
+            MatchEvaluation evaluation;
+            if (structuredOutput) {
+                JsonNode json = generateStructured(LlmStage.EXPLANATIONS, ResponseType.COMBINED, prompt, prefix);
+                evaluation = json != null ? toEvaluation(json) : null;
+            } else {
+                String responseText = ollamaGenerationService.generate(LlmStage.EXPLANATIONS, prompt, "json", prefix, text -> parseCombinedResponse(text) != null);
+                evaluation = parseCombinedResponse(responseText);
+                responseStatistics.get(ResponseType.COMBINED).record(evaluation != null);
+                if (evaluation == null) {
+                    logger.error("Score absent ou invalide dans la réponse d'Ollama: {}", responseText);
+                    responseStatistics.get(ResponseType.COMBINED).fallbacks.incrementAndGet();
+                }
+            }
+
+            if (evaluation != null && evaluation.explanations().isEmpty()) {
+                // Score du modèle, explications calculées localement
+                return new MatchEvaluation(evaluation.score(), lexicalMatchScorer.explain(cvText, offer, offerText));
+            } else if (evaluation != null) {
+                return evaluation;
+            }
+        } catch (LlmCapacityExceededException e) {
+            throw e;
+        } catch (OllamaUnavailableException e) {
+            logger.warn("Résultat calculé localement: {}", e.getMessage());
+        } catch (Exception e) {
+            logger.error("Exception lors de l'appel à Ollama", e);
+        }
+
+        return lexicalMatchScorer.evaluate(cvText, offer, offerText, true);
+    }
+
+    /**
+     * Génère une réponse contrainte par le schéma du type d'appel et la vérifie. Une réponse non conforme
+     * n'est pas mise en cache et est redemandée, en indiquant au modèle les écarts constatés, tant que
+     * le nombre de tentatives le permet.
+     *
+     * @param stage L'étape du matching, qui détermine le modèle
+     * @param type Le type d'appel
+     * @param prompt Le prompt
+     * @param prefix Contexte du CV déjà évalué, ou null
+     * @return La réponse conforme au schéma, ou null si aucune tentative n'a produit de réponse conforme
+     * @throws IOException si Ollama est injoignable, retourne une erreur ou dépasse un délai
+     * @throws InterruptedException si le thread est interrompu en attendant une place libre
+     */
+    private JsonNode generateStructured(LlmStage stage, ResponseType type, String prompt, PromptPrefix prefix)
+            throws IOException, InterruptedException {
+        JsonResponseSchema schema = responseSchemas.get(type);
+        ResponseStatistics statistics = responseStatistics.get(type);
+        String attemptPrompt = prompt;
+        int attempts = Math.max(1, structuredOutputMaxAttempts);
+        for (int attempt = 1; attempt <= attempts; attempt++) {
+            if (attempt > 1) {
+                statistics.retries.incrementAndGet();
+            }
+            String responseText = ollamaGenerationService.generate(stage, attemptPrompt, schema.getSchema(), prefix,
+                    text -> validateResponse(schema, text).isEmpty());
+            List<String> errors = validateResponse(schema, responseText);
+            statistics.record(errors.isEmpty());
+            if (errors.isEmpty()) {
+                return objectMapper.readTree(responseText);
+            }
+            logger.warn("Réponse d'Ollama non conforme au schéma {} (tentative {}/{}): {}", schema.getName(), attempt,
+                    attempts, String.join(", ", errors));
+            attemptPrompt = prompt + "\n\nTa réponse précédente ne respectait pas le format demandé (" +
+                    String.join(", ", errors) + "). Réponds uniquement avec un objet JSON conforme.";
+        }
+        statistics.fallbacks.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Vérifie une réponse d'Ollama avec un schéma
+     *
+     * @return Les écarts au schéma, vides si la réponse est valide
+     */
+    private List<String> validateResponse(JsonResponseSchema schema, String responseText) {
+        try {
+            return schema.validate(objectMapper.readTree(responseText));
+        } catch (JsonProcessingException e) {
+            return List.of("JSON invalide");
+        }
+    }
+
+    /**
+     * Convertit une réponse JSON conforme en évaluation (points forts puis points faibles)
+     */
+    private MatchEvaluation toEvaluation(JsonNode json) {
+        List<String> explanations = new ArrayList<>();
+        json.path("strengths").forEach(item -> explanations.add(item.asText().trim()));
+        json.path("weaknesses").forEach(item -> explanations.add(item.asText().trim()));
+        explanations.removeIf(String::isEmpty);
+        double score = Math.max(0, Math.min(100, json.path("score").asDouble()));
+        return new MatchEvaluation(score, explanations);
+    }
+
+    /**
+     * Désigne les documents comparés dans la consigne : le CV déjà transmis dans le contexte, ou le CV et l'offre qui suivent
+     */
+    private String subject(PromptPrefix prefix) {
+        return prefix != null ? "le CV transmis précédemment et l'offre d'emploi suivante" : "le CV et l'offre d'emploi suivants";
+    }
+
+    /**
+     * Documents ajoutés après la consigne : l'offre seule si le CV est déjà dans le contexte
+     */
+    private String documents(String cvText, String offerText, PromptPrefix prefix) {
+        if (prefix != null) {
+            return "Offre d'emploi:\n" + offerText;
+        }
+        return "CV:\n" + cvText + "\n\n" + "Offre d'emploi:\n" + offerText;
+    }
+
+    /**
+     * Retourne le contexte du CV pour le modèle d'une étape s'il fait l'objet d'un matching en cours,
+     * en faisant évaluer le CV par ce modèle lors de la première demande
+     *
+     * @param cvText Texte du CV
+     * @param stage L'étape du matching dont les appels reprendront le contexte
+     * @return Le contexte du CV, ou null s'il n'y a pas de matching en cours ou si l'évaluation a échoué
+     */
+    private PromptPrefix findCvPrefix(String cvText, LlmStage stage) {
+        CvContext context = cvContexts.get(cvText);
+        return context != null ? context.get(cvText, stage) : null;
+    }
+
+    /**
+     * Extrait les explications d'une réponse en liste à tirets
+     *
+     * @param responseText Réponse d'Ollama
+     * @return Liste d'explications (vide si la réponse ne contient aucune ligne à tiret)
+     */
+    private List<String> parseExplanationLines(String responseText) {
+        return Arrays.stream(responseText.split("\n"))
+                .filter(line -> line.trim().startsWith("-"))
+                .map(line -> line.trim().substring(1).trim())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Interprète la réponse JSON du mode combiné
+     *
+     * @param responseText Réponse d'Ollama
+     * @return Résultat de l'évaluation, ou null si la réponse n'est pas un JSON contenant un score valide
+     */
+    private MatchEvaluation parseCombinedResponse(String responseText) {
+        try {
+            JsonNode json = objectMapper.readTree(responseText);
+            JsonNode score = json.path("score");
+            if (!score.isNumber() && !(score.isTextual() && NUMERIC_SCORE.matcher(score.asText().trim()).matches())) {
+                return null;
+            }
+
+            List<String> explanations = new ArrayList<>();
+            json.path("strengths").forEach(item -> explanations.add(item.asText().trim()));
+            json.path("weaknesses").forEach(item -> explanations.add(item.asText().trim()));
+            explanations.removeIf(String::isEmpty);
+
+            double matchScore = Math.max(0, Math.min(100, score.asDouble()));
+            return new MatchEvaluation(matchScore, explanations);
+        } catch (JsonProcessingException e) {
+            logger.debug("Réponse JSON invalide d'Ollama pour le calcul combiné: {}", e.getOriginalMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Types d'appel à Ollama, avec le schéma JSON de leur réponse en mode structuré
+     */
+    private enum ResponseType {
+        SCORE("score", """
+                {"type": "object",
+                 "properties": {"score": {"type": "integer", "minimum": 0, "maximum": 100}},
+                 "required": ["score"]}
+                """),
+        EXPLANATIONS("explanations", """
+                {"type": "object",
+                 "properties": {
+                   "strengths": {"type": "array", "items": {"type": "string", "minLength": 1}, "minItems": 1, "maxItems": 5},
+                   "weaknesses": {"type": "array", "items": {"type": "string", "minLength": 1}, "minItems": 1, "maxItems": 5}},
+                 "required": ["strengths", "weaknesses"]}
+                """),
+        COMBINED("combined", """
+                {"type": "object",
+                 "properties": {
+                   "score": {"type": "integer", "minimum": 0, "maximum": 100},
+                   "strengths": {"type": "array", "items": {"type": "string", "minLength": 1}, "minItems": 1, "maxItems": 5},
+                   "weaknesses": {"type": "array", "items": {"type": "string", "minLength": 1}, "minItems": 1, "maxItems": 5}},
+                 "required": ["score", "strengths", "weaknesses"]}
+                """);
+
+        private final String key;
+        private final String schema;
+
+        ResponseType(String key, String schema) {
+            this.key = key;
+            this.schema = schema;
+        }
+    }
+
+    /**
+     * Compteurs des réponses d'un type d'appel
+     */
+    private static class ResponseStatistics {
+        private final AtomicLong responses = new AtomicLong();
+        private final AtomicLong parseFailures = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong fallbacks = new AtomicLong();
+
+        void record(boolean valid) {
+            responses.incrementAndGet();
+            if (!valid) {
+                parseFailures.incrementAndGet();
+            }
+        }
+
+        Map<String, Object> toMap() {
+            long total = responses.get();
+            long invalid = parseFailures.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("responses", total);
+            map.put("parseFailures", invalid);
+            map.put("parseFailureRate", total > 0 ? (double) invalid / total : 0.0);
+            map.put("retries", retries.get());
+            map.put("fallbacks", fallbacks.get());
+            return map;
+        }
+    }
+
+    /**
+     * Contexte d'un CV pendant un matching. Le CV est évalué une seule fois par modèle, par la première offre
+     * qui en a besoin ; les autres attendent ce résultat. En cas d'échec, les offres sont évaluées avec le CV complet.
+     */
+    private class CvContext {
+        // Nombre de matchings en cours pour ce CV, protégé par la map des contextes
+        private int users;
+        // Contexte par modèle ; une valeur nulle indique une évaluation qui a échoué
+        private final Map<String, PromptPrefix> prefixes = new HashMap<>();
+
+        synchronized PromptPrefix get(String cvText, LlmStage stage) {
+            String model = ollamaGenerationService.getModel(stage);
+            if (!prefixes.containsKey(model)) {
+                PromptPrefix prefix = null;
+                String prompt = "Voici le CV d'un candidat. Il va être comparé à plusieurs offres d'emploi, " +
+                        "transmises dans les messages suivants. Réponds uniquement OK.\n\n" +
+                        "CV:\n" + cvText;
+                try {
+                    prefix = ollamaGenerationService.evaluatePrefix(stage, prompt);
+                    logger.info("Contexte du CV évalué par le modèle {} ({} jetons), réutilisé pour chaque offre", model,
+                            prefix.context().size());
+                } catch (LlmCapacityExceededException | OllamaUnavailableException e) {
+                    logger.warn("Contexte du CV non évalué, les offres sont évaluées avec le CV complet: {}", e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    logger.error("Échec de l'évaluation du contexte du CV, les offres sont évaluées avec le CV complet", e);
+                }
+                prefixes.put(model, prefix);
+            }
+            return prefixes.get(model);
+        }
+    }
+}
@@ -1,32 +1,48 @@
 package com.example.auto4jobs.services;
 
+import com.example.auto4jobs.entities.CvSkillProfile;
 import com.example.auto4jobs.entities.JobOffer;
+import com.example.auto4jobs.entities.MatchingGeneration;
 import com.example.auto4jobs.entities.MatchingResult;
 import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.events.CvUploadedEvent;
+import com.example.auto4jobs.repositories.CvSkillProfileRepository;
 import com.example.auto4jobs.repositories.JobOfferRepository;
 import com.example.auto4jobs.repositories.MatchingResultRepository;
 import com.example.auto4jobs.repositories.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.Hibernate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.temporal.ChronoUnit;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Service
@@ -34,18 +50,31 @@ public class OllamaMatchingService {
 
     private static final Logger logger = LoggerFactory.getLogger(OllamaMatchingService.class);
     
-    @Value("${ollama.api.url:http://localhost:11434/api/generate}")
-    private String ollamaApiUrl;
+    private static final String EXPLANATIONS_MODE_LAZY = "lazy";
     
-    @Value("${ollama.model:llama3}")
-    private String ollamaModel;
-    
-    @Value("${file.upload-dir:./uploads/cvs}")
-    private String uploadDir;
+    /**
+     * Classement des résultats au format de réponse : les résultats évalués par le backend de scoring,
+     * puis ceux du seul préfiltrage local, dont le score n'est pas sur la même échelle ; chaque groupe
+     * par score décroissant
+     */
+    static final Comparator<Map<String, Object>> RANKING = Comparator
+            .comparing((Map<String, Object> result) -> Boolean.TRUE.equals(result.get("prefiltered")))
+            .thenComparing(result -> (Double) result.get("matchScore"), Comparator.reverseOrder());
     
     @Value("${matching.results.cache-duration-hours:24}")
     private int cacheDurationHours = 24;
     
+    @Value("${matching.offer-timeout-seconds:120}")
+    private long offerTimeoutSeconds = 120;
+    
+    // "lazy" : score seul lors du matching, explications générées à la première consultation ; "eager" : avec le matching
+    @Value("${matching.explanations.mode:lazy}")
+    private String explanationsMode = EXPLANATIONS_MODE_LAZY;
+    
+    // Nombre d'offres les mieux classées localement envoyées à Ollama (0 = toutes)
+    @Value("${matching.prefilter.top-k:20}")
+    private int prefilterTopK = 20;
+    
     @Autowired
     private UserRepository userRepository;
     
@@ -56,46 +85,101 @@ public class OllamaMatchingService {
     private MatchingResultRepository matchingResultRepository;
     
     @Autowired
-    private CVService cvService;
+    private CvSkillProfileRepository cvSkillProfileRepository;
+    
+    @Autowired
+    private CVTextExtractionService cvTextExtractionService;
+    
+    @Autowired
+    private SkillOverlapPrefilter skillOverlapPrefilter;
+    
+    @Autowired
+    private JobOfferEmbeddingIndex jobOfferEmbeddingIndex;
+    
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+    
+    @Autowired
+    private MatchScorerSelector matchScorerSelector;
+    
+    @Autowired
+    private LexicalMatchScorer lexicalMatchScorer;
+    
+    @Autowired
+    private JobOfferLexicalIndex jobOfferLexicalIndex;
+    
+    @Autowired
+    private OllamaGenerationService ollamaGenerationService;
+    
+    @Autowired
+    private MatchingResultWriter matchingResultWriter;
     
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private LlmDispatcher llmDispatcher;
+    
+    @Autowired
+    private MatchingGenerationService matchingGenerationService;
+    
+    @Autowired
+    private ObjectMapper objectMapper;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    @Qualifier("matchingExecutor")
+    private ExecutorService matchingExecutor;
+    
+    // Transactions des mises à jour effectuées hors requête (réévaluation d'une offre)
+    private TransactionTemplate transactionTemplate;
+    
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        logger.info("Matching configuré avec un délai de {}s par offre", offerTimeoutSeconds);
+    }
     
     /**
-     * Analyse un CV et retourne les compétences extraites
+     * Retourne les compétences extraites du CV d'un utilisateur. Le profil est calculé une seule fois
+     * par CV déposé puis servi depuis la base de données.
      * 
      * @param userId ID de l'utilisateur dont on veut analyser le CV
      * @return Map contenant les compétences extraites
+     * @throws IllegalStateException si l'utilisateur n'a pas de CV ou si l'extraction échoue
      */
     public Map<String, Object> extractCVSkills(Long userId) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + userId));
         
-        String cvText;
-        
-        // Vérifier si le CV est stocké en base de données
-        if (user.getCvData() != null && user.getCvData().length > 0) {
-            logger.info("Extraction du texte à partir du CV en base de données pour l'utilisateur {}", userId);
-            cvText = extractTextFromCV(user.getCvData());
-        } 
-        // Sinon, vérifier si le CV est stocké dans le système de fichiers
-        else if (user.getCvFilename() != null && !user.getCvFilename().isEmpty()) {
-            logger.info("Extraction du texte à partir du CV dans le système de fichiers pour l'utilisateur {}", userId);
-            try {
-                Path cvPath = Paths.get(uploadDir, user.getCvFilename());
-                byte[] cvData = Files.readAllBytes(cvPath);
-                cvText = extractTextFromCV(cvData);
-            } catch (IOException e) {
-                logger.error("Erreur lors de la lecture du fichier CV: {}", e.getMessage());
-                throw new IllegalStateException("Impossible de lire le fichier CV", e);
-            }
-        } else {
-            throw new IllegalStateException("Aucun CV trouvé pour cet utilisateur");
+        Optional<CvSkillProfile> storedProfile = findCurrentSkillProfile(user);
+        if (storedProfile.isPresent()) {
+            logger.info("Profil de compétences de l'utilisateur {} lu depuis la base de données", userId);
+            return mapSkillProfileToDto(storedProfile.get());
         }
         
-        // Utiliser Ollama pour extraire les compétences
-        Map<String, Object> extractedSkills = callOllamaForSkillExtraction(cvText);
-        
-        return extractedSkills;
+        // Aucun profil pour ce CV (CV déposé avant le calcul des profils, ou calcul en arrière-plan en échec)
+        return mapSkillProfileToDto(computeSkillProfile(user));
+    }
+    
+    /**
+     * Recalcule en arrière-plan le profil de compétences lorsqu'un nouveau CV a été enregistré
+     * 
+     * @param event Événement publié par {@link CVService#saveCV}
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onCvUploaded(CvUploadedEvent event) {
+        matchingExecutor.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.REFRESH, event.userId()).open()) {
+                User user = userRepository.findById(event.userId()).orElse(null);
+                if (user == null || !Objects.equals(user.getCvUploadDate(), event.cvUploadDate())) {
+                    // Un CV plus récent a été déposé entre-temps : son propre événement s'en charge
+                    return;
+                }
+                computeSkillProfile(user);
+            } catch (Exception e) {
+                logger.warn("Échec du calcul du profil de compétences de l'utilisateur {}: {}", event.userId(), e.getMessage());
+            }
+        });
     }
     
     /**
@@ -106,144 +190,676 @@ public class OllamaMatchingService {
      */
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public List<Map<String, Object>> matchJobOffersForUser(Long userId) {
+        return matchJobOffersForUser(userId, MatchingProgressListener.NONE);
+    }
+    
+    /**
+     * Trouve les offres d'emploi qui correspondent le mieux au CV d'un utilisateur en signalant
+     * l'avancement au listener au fur et à mesure de l'évaluation des offres
+     * 
+     * @param userId ID de l'utilisateur
+     * @param listener Listener notifié de l'avancement du matching
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public List<Map<String, Object>> matchJobOffersForUser(Long userId, MatchingProgressListener listener) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + userId));
         
-        // Vérifier si des résultats de matching récents existent déjà en base de données
-        LocalDateTime cacheThreshold = LocalDateTime.now().minus(cacheDurationHours, ChronoUnit.HOURS);
-        List<MatchingResult> existingResults = matchingResultRepository.findByUserAndCreatedAtAfter(user, cacheThreshold);
+        // Récupérer toutes les offres d'emploi actives
+        List<JobOffer> activeJobOffers = jobOfferRepository.findByIsActiveTrue();
+        Set<Long> activeOfferIds = activeJobOffers.stream().map(JobOffer::getId).collect(Collectors.toSet());
         
-        // Si des résultats récents existent et que le CV n'a pas été mis à jour depuis
-        if (!existingResults.isEmpty() && !isCVUpdatedAfterResults(user, existingResults)) {
-            logger.info("Utilisation des résultats de matching en cache pour l'utilisateur {}", userId);
-            return convertMatchingResultsToResponseFormat(existingResults);
-        }
-        
-        // Sinon, effectuer un nouveau matching
-        logger.info("Aucun résultat de matching récent trouvé, calcul d'un nouveau matching pour l'utilisateur {}", userId);
-        
-        String cvText;
-        
-        // Vérifier si le CV est stocké en base de données
-        if (user.getCvData() != null && user.getCvData().length > 0) {
-            logger.info("Extraction du texte à partir du CV en base de données pour l'utilisateur {}", userId);
-            cvText = extractTextFromCV(user.getCvData());
-        } 
-        // Sinon, vérifier si le CV est stocké dans le système de fichiers
-        else if (user.getCvFilename() != null && !user.getCvFilename().isEmpty()) {
-            logger.info("Extraction du texte à partir du CV dans le système de fichiers pour l'utilisateur {}", userId);
-            try {
-                Path cvPath = Paths.get(uploadDir, user.getCvFilename());
-                byte[] cvData = Files.readAllBytes(cvPath);
-                cvText = extractTextFromCV(cvData);
-            } catch (IOException e) {
-                logger.error("Erreur lors de la lecture du fichier CV: {}", e.getMessage());
-                throw new IllegalStateException("Impossible de lire le fichier CV", e);
+        // Conserver les résultats encore valides de la génération active ; les offres des autres (offre
+        // modifiée, nouveau CV, résultat expiré) sont réévaluées
+        Map<Long, MatchingResult> validResults = new HashMap<>();
+        List<MatchingResult> activeResults = matchingGenerationService.findActiveResults(user);
+        for (MatchingResult result : activeResults) {
+            Long offerId = result.getJobOffer().getId();
+            if (activeOfferIds.contains(offerId) && isResultValid(result, user)) {
+                validResults.putIfAbsent(offerId, result);
             }
-        } else {
-            throw new IllegalStateException("Aucun CV trouvé pour cet utilisateur");
         }
         
-        // Récupérer toutes les offres d'emploi actives
-        List<JobOffer> activeJobOffers = jobOfferRepository.findByIsActiveTrue();
-        
         if (activeJobOffers.isEmpty()) {
             logger.info("Aucune offre d'emploi active trouvée");
+            if (!activeResults.isEmpty()) {
+                // Une génération vide remplace les résultats des offres fermées, qui ne restent pas visibles
+                matchingGenerationService.activate(userId, matchingGenerationService.allocateGeneration(userId));
+            }
             return Collections.emptyList();
         }
         
-        logger.info("Trouvé {} offres d'emploi actives pour le matching", activeJobOffers.size());
+        List<JobOffer> offersToScore = activeJobOffers.stream()
+                .filter(offer -> !validResults.containsKey(offer.getId()))
+                .collect(Collectors.toList());
         
-        // Supprimer les anciens résultats dans une transaction séparée
-        deleteExistingMatchingResults(user);
+        if (offersToScore.isEmpty()) {
+            logger.info("Utilisation des résultats de matching en cache pour l'utilisateur {}", userId);
+            List<Map<String, Object>> cachedResults = convertMatchingResultsToResponseFormat(new ArrayList<>(validResults.values()));
+            listener.onStart(activeJobOffers.size());
+            cachedResults.forEach(listener::onOfferScored);
+            return cachedResults;
+        }
         
-        // Calculer le score de correspondance pour chaque offre et sauvegarder les résultats
-        List<Map<String, Object>> matchResults = new ArrayList<>();
+        logger.info("{} offres à évaluer pour l'utilisateur {} ({} résultats encore valides sur {} offres actives)",
+                offersToScore.size(), userId, validResults.size(), activeJobOffers.size());
         
-        for (JobOffer offer : activeJobOffers) {
-            // Créer le texte de l'offre avec les compétences requises
-            String offerText = createJobOfferText(offer);
-            
-            // Calculer le score de correspondance avec Ollama
-            double matchScore = calculateMatchScore(cvText, offerText);
-            
-            // Ajouter des explications sur le matching
-            List<String> matchExplanations = generateMatchExplanations(cvText, offer);
-            
-            // Créer et sauvegarder le résultat de matching en base de données dans une transaction séparée
-            MatchingResult matchingResult = saveMatchingResult(user, offer, matchScore, matchExplanations);
-            
-            // Ajouter le résultat au format de réponse
-            Map<String, Object> result = new HashMap<>();
-            result.put("jobOffer", mapJobOfferToDto(offer));
-            result.put("matchScore", matchScore);
-            result.put("matchExplanations", matchExplanations);
-            matchResults.add(result);
-        }
+        // Refuser immédiatement si le service est saturé, avant tout calcul
+        llmDispatcher.checkAdmission(LlmRequestContext.current().priority());
+        
+        String cvText = readCVText(user);
+        
+        // La nouvelle génération reprend les résultats valides et reçoit ceux des offres réévaluées ;
+        // elle ne devient visible qu'à son activation, au commit
+        List<MatchingResult> carriedResults = new ArrayList<>();
+        long generation = matchingGenerationService.allocateGeneration(userId, allocated ->
+                carriedResults.addAll(carryForward(user, activeJobOffers, validResults.keySet(), allocated)));
+        Set<Long> carriedOfferIds = carriedResults.stream().map(result -> result.getJobOffer().getId()).collect(Collectors.toSet());
+        // Une offre dont le résultat a disparu de la génération active depuis sa lecture est réévaluée
+        offersToScore = activeJobOffers.stream()
+                .filter(offer -> !carriedOfferIds.contains(offer.getId()))
+                .collect(Collectors.toList());
+        
+        listener.onStart(activeJobOffers.size());
+        List<Map<String, Object>> matchResults = convertMatchingResultsToResponseFormat(carriedResults);
+        matchResults.forEach(listener::onOfferScored);
+        
+        // L'index lexical du mode dégradé suit les offres actives (seules les offres modifiées sont ré-analysées)
+        jobOfferLexicalIndex.refresh(activeJobOffers, this::createJobOfferText);
         
-        // Trier les résultats par score de correspondance (du plus élevé au plus bas)
-        matchResults.sort((a, b) -> Double.compare((Double) b.get("matchScore"), (Double) a.get("matchScore")));
+        // Calculer le score de correspondance des offres à réévaluer en parallèle et sauvegarder les résultats
+        matchResults.addAll(scoreJobOffers(user, cvText, offersToScore, listener, generation));
+        matchingGenerationService.activate(userId, generation);
+        
+        // Trier les résultats par score de correspondance (du plus élevé au plus bas), scores du préfiltrage en dernier
+        matchResults.sort(RANKING);
         
         return matchResults;
     }
     
     /**
-     * Supprime les résultats de matching existants pour un utilisateur
+     * Met à jour les résultats de matching après la création ou la modification d'une offre : l'offre
+     * est évaluée uniquement pour les candidats déjà matchés (génération active), sans recalculer leurs
+     * autres résultats. Comme lors du matching, l'offre n'est évaluée par le backend de scoring que si
+     * elle entre dans les {@code matching.prefilter.top-k} du préfiltrage local ; sinon elle reçoit son
+     * score local. L'échec de l'évaluation pour un candidat n'interrompt pas celle des suivants : ses
+     * résultats, plus anciens que l'offre, seront recalculés lors de son prochain matching.
+     * Les résultats d'une offre désactivée sont supprimés.
+     * 
+     * @param offerId ID de l'offre d'emploi
+     * @return Nombre de candidats pour lesquels l'offre a été évaluée, par le backend ou localement
+     */
+    public int rescoreOffer(Long offerId) {
+        JobOffer offer = jobOfferRepository.findById(offerId).orElse(null);
+        if (offer == null) {
+            return 0;
+        }
+        if (!offer.isActive()) {
+            transactionTemplate.executeWithoutResult(status ->
+                    matchingResultRepository.deleteAll(matchingResultRepository.findByJobOffer(offer)));
+            return 0;
+        }
+        
+        int scored = 0;
+        int prefiltered = 0;
+        int failed = 0;
+        for (User user : matchingResultRepository.findUsersWithResults()) {
+            if (Thread.currentThread().isInterrupted()) {
+                break;
+            }
+            Long generation = matchingGenerationService.getActiveGeneration(user.getId());
+            if (generation == null) {
+                // Résultats antérieurs aux générations, invisibles une fois une génération écrite : recalculés au prochain matching
+                continue;
+            }
+            try (LlmRequestContext.Scope scope = LlmRequestContext.current().withUser(user.getId()).open()) {
+                String cvText = readCVText(user);
+                MatchEvaluation localEvaluation = prefilterOffer(user, cvText, offer,
+                        matchingResultRepository.findByUserAndGeneration(user, generation));
+                MatchEvaluation evaluation = localEvaluation != null
+                        ? localEvaluation
+                        : evaluateOffer(matchScorerSelector.forScoring(), cvText, offer);
+                transactionTemplate.executeWithoutResult(status ->
+                        replaceOfferResult(user, offer, evaluation, localEvaluation != null));
+                if (localEvaluation != null) {
+                    prefiltered++;
+                } else {
+                    scored++;
+                }
+            } catch (IllegalStateException e) {
+                // CV supprimé ou illisible : le candidat sera réévalué lors de son prochain matching
+                logger.warn("Offre {} non évaluée pour l'utilisateur {}: {}", offerId, user.getId(), e.getMessage());
+            } catch (RuntimeException e) {
+                // Backend indisponible ou saturé, erreur d'écriture : les candidats suivants sont tout de même traités
+                failed++;
+                logger.warn("Échec de l'évaluation de l'offre {} pour l'utilisateur {}: {}", offerId, user.getId(), e.toString());
+            }
+        }
+        
+        logger.info("Offre {} évaluée pour {} candidats par le backend de scoring, {} localement ({} échecs)",
+                offerId, scored, prefiltered, failed);
+        return scored + prefiltered;
+    }
+    
+    /**
+     * Remplace le résultat d'une offre réévaluée, pointeur de génération verrouillé : les générations sont relues
+     * au moment de l'écriture et non avant l'évaluation. Le résultat est écrit dans la génération active, et dans
+     * chaque génération en cours de calcul qui a déjà reçu l'ancien résultat de l'offre (reporté avant
+     * l'évaluation), afin que l'activation de ce calcul ne le masque pas. Une génération en cours qui n'a pas
+     * reçu l'offre l'évalue elle-même, avec l'offre modifiée.
      * 
      * @param user L'utilisateur
+     * @param offer Offre d'emploi réévaluée
+     * @param evaluation Résultat de l'évaluation
+     * @param prefiltered true si le score est celui du préfiltrage local
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public void deleteExistingMatchingResults(User user) {
-        logger.info("Suppression des résultats de matching existants pour l'utilisateur {}", user.getId());
-        matchingResultRepository.deleteByUser(user);
+    private void replaceOfferResult(User user, JobOffer offer, MatchEvaluation evaluation, boolean prefiltered) {
+        MatchingGeneration pointer = matchingGenerationService.lockPointer(user.getId());
+        if (pointer == null || pointer.getActiveGeneration() == null) {
+            return;
+        }
+        long activeGeneration = pointer.getActiveGeneration();
+        Set<Long> generations = new TreeSet<>();
+        generations.add(activeGeneration);
+        List<MatchingResult> replaced = matchingResultRepository.findByUserAndJobOffer(user, offer).stream()
+                .filter(result -> result.getGeneration() != null && result.getGeneration() >= activeGeneration
+                        && result.getGeneration() <= pointer.getLastAllocatedGeneration())
+                .collect(Collectors.toList());
+        replaced.forEach(result -> generations.add(result.getGeneration()));
+        matchingResultRepository.deleteAll(replaced);
+        for (Long generation : generations) {
+            matchingResultRepository.save(newMatchingResult(user, offer, evaluation.score(),
+                    new ArrayList<>(evaluation.explanations()), generation, prefiltered));
+        }
     }
     
     /**
-     * Sauvegarde un résultat de matching
+     * Applique le préfiltrage local à une offre réévaluée pour un candidat. L'offre n'entre dans les
+     * top-K que si son score local dépasse celui de toutes les offres que le préfiltrage a écartées lors
+     * du dernier matching du candidat.
+     * 
+     * @param user L'utilisateur
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi réévaluée
+     * @param activeResults Résultats de la génération active du candidat
+     * @return L'évaluation locale de l'offre, ou null si elle doit être évaluée par le backend de scoring
+     */
+    private MatchEvaluation prefilterOffer(User user, String cvText, JobOffer offer, List<MatchingResult> activeResults) {
+        if (prefilterTopK <= 0) {
+            return null;
+        }
+        OptionalDouble threshold = activeResults.stream()
+                .filter(result -> result.isPrefiltered() && !Objects.equals(result.getJobOffer().getId(), offer.getId()))
+                .mapToDouble(MatchingResult::getMatchScore)
+                .max();
+        if (threshold.isEmpty()) {
+            // Aucune offre écartée lors du dernier matching : toutes ont été évaluées par le backend
+            return null;
+        }
+        SkillOverlapPrefilter.SkillOverlap overlap = skillOverlapPrefilter.evaluate(cvSkillTokens(user, cvText), offer);
+        return overlap.score() > threshold.getAsDouble()
+                ? null
+                : new MatchEvaluation(overlap.score(), skillOverlapPrefilter.explain(overlap));
+    }
+    
+    /**
+     * Trouve les offres d'emploi sémantiquement les plus proches du CV d'un utilisateur grâce à
+     * l'index d'embeddings, sans appel de génération à Ollama
+     * 
+     * @param userId ID de l'utilisateur
+     * @param limit Nombre maximal d'offres à retourner
+     * @return Liste des offres d'emploi avec leur similarité, triées par similarité décroissante
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> findSemanticMatches(Long userId, int limit) {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + userId));
+        
+        String cvText = readCVText(user);
+        
+        // Mettre l'index en cohérence avec les offres actives (seules les offres modifiées sont ré-encodées)
+        List<JobOffer> activeJobOffers = jobOfferRepository.findByIsActiveTrue();
+        jobOfferEmbeddingIndex.refresh(activeJobOffers, this::createJobOfferText);
+        
+        Map<Long, JobOffer> offersById = activeJobOffers.stream()
+                .collect(Collectors.toMap(JobOffer::getId, offer -> offer));
+        
+        List<Map<String, Object>> matches = new ArrayList<>();
+        for (JobOfferEmbeddingIndex.ScoredOffer scored : jobOfferEmbeddingIndex.topN(jobOfferEmbeddingIndex.embedQuery(cvText), limit)) {
+            JobOffer offer = offersById.get(scored.offerId());
+            if (offer == null) {
+                continue;
+            }
+            Map<String, Object> match = new HashMap<>();
+            match.put("jobOffer", mapJobOfferToDto(offer));
+            match.put("similarity", scored.similarity());
+            match.put("matchScore", Math.max(0, scored.similarity()) * 100);
+            matches.add(match);
+        }
+        
+        return matches;
+    }
+    
+    /**
+     * Retourne les statistiques du cache des réponses d'Ollama
+     * 
+     * @return Map contenant les compteurs du cache
+     */
+    public Map<String, Object> getLlmCacheStatistics() {
+        return llmResponseCache.getStatistics();
+    }
+    
+    /**
+     * Retourne les explications d'un résultat de matching, en les générant avec le backend des
+     * explications lors de la première demande puis en les stockant avec le résultat
+     * 
+     * @param matchingResultId ID du résultat de matching
+     * @param userId ID de l'utilisateur qui consulte le résultat
+     * @return Map contenant le score et les explications du résultat
+     * @throws IllegalArgumentException si le résultat n'existe pas ou appartient à un autre utilisateur
+     * @throws IllegalStateException si le résultat est obsolète ou si le CV est illisible
+     */
+    public Map<String, Object> getMatchExplanations(Long matchingResultId, Long userId) {
+        MatchingResult result = transactionTemplate.execute(status -> {
+            MatchingResult found = matchingResultRepository.findById(matchingResultId)
+                    .filter(r -> r.getUser().getId().equals(userId))
+                    .orElseThrow(() -> new IllegalArgumentException("Résultat de matching non trouvé avec l'ID: " + matchingResultId));
+            // Charger les explications tant que la session est ouverte
+            Hibernate.initialize(found.getMatchExplanations());
+            return found;
+        });
+        
+        if (result.getMatchExplanations().isEmpty()) {
+            if (!isResultValid(result, result.getUser())) {
+                throw new IllegalStateException("Ce résultat de matching est obsolète, veuillez relancer le matching");
+            }
+            
+            JobOffer offer = result.getJobOffer();
+            List<String> explanations;
+            try (LlmRequestContext.Scope scope = LlmRequestContext.current().withUser(userId).open()) {
+                explanations = matchScorerSelector.forExplanations().explain(readCVText(result.getUser()), offer, createJobOfferText(offer));
+            }
+            transactionTemplate.executeWithoutResult(status ->
+                    // Le résultat a pu être supprimé entre-temps avec une ancienne génération
+                    matchingResultRepository.findById(matchingResultId).ifPresent(stored -> {
+                        stored.setMatchExplanations(explanations);
+                        matchingResultRepository.save(stored);
+                    }));
+            result.setMatchExplanations(explanations);
+            logger.info("Explications générées pour le résultat de matching {}", matchingResultId);
+        }
+        
+        Map<String, Object> response = new HashMap<>();
+        response.put("matchingResultId", result.getId());
+        response.put("matchScore", result.getMatchScore());
+        response.put("matchExplanations", result.getMatchExplanations());
+        return response;
+    }
+    
+    /**
+     * Crée un résultat de matching (non sauvegardé) dans une génération
      * 
      * @param user L'utilisateur
      * @param offer L'offre d'emploi
      * @param matchScore Le score de correspondance
      * @param matchExplanations Les explications sur le matching
-     * @return Le résultat de matching sauvegardé
+     * @param generation La génération du résultat
+     * @param prefiltered true si le score provient du seul préfiltrage local
+     * @return Le résultat de matching
      */
-    @Transactional(propagation = Propagation.REQUIRES_NEW)
-    public MatchingResult saveMatchingResult(User user, JobOffer offer, double matchScore, List<String> matchExplanations) {
+    private MatchingResult newMatchingResult(User user, JobOffer offer, double matchScore, List<String> matchExplanations,
+                                             Long generation, boolean prefiltered) {
         MatchingResult matchingResult = new MatchingResult();
+        matchingResult.setPrefiltered(prefiltered);
         matchingResult.setUser(user);
         matchingResult.setJobOffer(offer);
         matchingResult.setMatchScore(matchScore);
         matchingResult.setMatchExplanations(matchExplanations);
-        return matchingResultRepository.save(matchingResult);
+        matchingResult.setGeneration(generation);
+        return matchingResult;
     }
     
     /**
-     * Vérifie si le CV de l'utilisateur a été mis à jour après la création des résultats de matching
+     * Reporte les résultats encore valides dans une nouvelle génération, au moment de son attribution (pointeur
+     * verrouillé). Ils sont relus dans la génération active : une offre réévaluée depuis la lecture des
+     * résultats ({@link #rescoreOffer(Long)}) est reprise avec son nouveau résultat, et non avec l'ancien.
      * 
      * @param user L'utilisateur
-     * @param results Les résultats de matching existants
-     * @return true si le CV a été mis à jour après les résultats, false sinon
+     * @param activeJobOffers Offres actives, référencées par les copies
+     * @param offerIds Offres dont le résultat est encore valide
+     * @param generation La génération attribuée
+     * @return Les résultats reportés
      */
-    private boolean isCVUpdatedAfterResults(User user, List<MatchingResult> results) {
-        if (user.getCvUploadDate() == null || results.isEmpty()) {
-            return false;
+    private List<MatchingResult> carryForward(User user, List<JobOffer> activeJobOffers, Set<Long> offerIds, long generation) {
+        Map<Long, JobOffer> offersById = activeJobOffers.stream().collect(Collectors.toMap(JobOffer::getId, offer -> offer));
+        Map<Long, MatchingResult> copies = new LinkedHashMap<>();
+        for (MatchingResult result : matchingGenerationService.findActiveResults(user)) {
+            Long offerId = result.getJobOffer().getId();
+            if (offerIds.contains(offerId) && !copies.containsKey(offerId)) {
+                MatchingResult copy = copyToGeneration(result, generation);
+                copy.setUser(user);
+                copy.setJobOffer(offersById.get(offerId));
+                copies.put(offerId, copy);
+            }
+        }
+        return matchingResultWriter.saveAll(new ArrayList<>(copies.values()));
+    }
+    
+    /**
+     * Reporte un résultat encore valide dans une nouvelle génération, en conservant sa date de calcul
+     */
+    private MatchingResult copyToGeneration(MatchingResult result, long generation) {
+        MatchingResult copy = newMatchingResult(result.getUser(), result.getJobOffer(), result.getMatchScore(),
+                new ArrayList<>(result.getMatchExplanations()), generation, result.isPrefiltered());
+        copy.setCreatedAt(result.getCreatedAt());
+        return copy;
+    }
+    
+    /**
+     * Évalue les offres d'emploi en deux étapes puis sauvegarde les résultats.
+     * Les offres sont d'abord classées localement selon le recouvrement de compétences ; seules les
+     * {@code matching.prefilter.top-k} meilleures sont évaluées par le backend de scoring
+     * ({@link MatchScorerSelector}), en parallèle sur le pool de matching, les autres conservant leur score local,
+     * marqué {@code prefiltered} et classé après tous les scores du backend ({@link #RANKING}). Les résultats sont signalés au listener dans
+     * leur ordre d'achèvement puis sauvegardés ensemble, en lots JDBC, par le {@link MatchingResultWriter}.
+     * Chaque évaluation dispose de {@code matching.offer-timeout-seconds} à partir de son démarrage sur le
+     * pool : au-delà, elle est annulée (l'appel HTTP en cours est abandonné) et l'offre reçoit un résultat
+     * de repli, sans attendre ni interrompre les autres offres.
+     * 
+     * @param user L'utilisateur
+     * @param cvText Texte du CV
+     * @param offers Offres d'emploi à évaluer
+     * @param listener Listener notifié de chaque résultat
+     * @param generation Génération dans laquelle les résultats sont écrits
+     * @return Liste des résultats triés par score de correspondance décroissant
+     */
+    private List<Map<String, Object>> scoreJobOffers(User user, String cvText, List<JobOffer> offers,
+                                                     MatchingProgressListener listener, long generation) {
+        Map<JobOffer, MatchEvaluation> localEvaluations = prefilterJobOffers(user, cvText, offers);
+        Set<JobOffer> prefilteredOffers = Collections.newSetFromMap(new IdentityHashMap<>());
+        prefilteredOffers.addAll(localEvaluations.keySet());
+        
+        // Les évaluations sont exécutées sur le pool avec la priorité de l'appelant, pour le compte de l'utilisateur
+        LlmRequestContext context = LlmRequestContext.current().withUser(user.getId());
+        CompletionService<MatchEvaluation> completionService = new ExecutorCompletionService<>(matchingExecutor);
+        Map<Future<MatchEvaluation>, OfferEvaluation> pending = new HashMap<>();
+        // Backend indisponible (circuit Ollama ouvert) : les offres reçoivent directement un résultat de repli
+        MatchScorer scorer = matchScorerSelector.forScoring();
+        boolean scorerAvailable = scorer.isAvailable();
+        if (!scorerAvailable) {
+            logger.warn("Backend de scoring {} indisponible, {} offres reçoivent un résultat de repli",
+                    scorer.getName(), offers.size() - localEvaluations.size());
+        }
+        // Le backend peut préparer le CV une seule fois pour toutes les offres du matching
+        MatchScorer.Sweep sweep = scorerAvailable ? scorer.beginSweep(cvText) : MatchScorer.Sweep.NONE;
+        
+        List<Map<String, Object>> matchResults = new ArrayList<>(offers.size());
+        try {
+            for (JobOffer offer : offers) {
+                if (!scorerAvailable && !localEvaluations.containsKey(offer)) {
+                    localEvaluations.put(offer, fallbackEvaluation(cvText, offer));
+                } else if (!localEvaluations.containsKey(offer)) {
+                    OfferEvaluation task = new OfferEvaluation(offer, context.wrap(() -> evaluateOffer(scorer, cvText, offer)));
+                    pending.put(completionService.submit(task), task);
+                }
+            }
+            
+            // Les offres évaluées localement sont disponibles immédiatement
+            for (JobOffer offer : offers) {
+                MatchEvaluation evaluation = localEvaluations.get(offer);
+                if (evaluation != null) {
+                    matchResults.add(recordResult(user, offer, evaluation, prefilteredOffers.contains(offer), listener, generation));
+                }
+            }
+            
+            long timeoutNanos = TimeUnit.SECONDS.toNanos(offerTimeoutSeconds);
+            while (!pending.isEmpty()) {
+                // Attendre jusqu'à la première échéance des évaluations démarrées ; une évaluation encore en
+                // file n'a pas d'échéance, l'attente est alors bornée par le délai complet
+                long now = System.nanoTime();
+                long waitNanos = timeoutNanos;
+                for (OfferEvaluation task : pending.values()) {
+                    if (task.startedNanos != 0) {
+                        waitNanos = Math.min(waitNanos, task.startedNanos + timeoutNanos - now);
+                    }
+                }
+                Future<MatchEvaluation> future = completionService.poll(Math.max(0, waitNanos), TimeUnit.NANOSECONDS);
+                if (future != null) {
+                    // Une évaluation annulée ci-dessous est aussi signalée par le CompletionService
+                    OfferEvaluation task = pending.remove(future);
+                    if (task != null) {
+                        matchResults.add(recordResult(user, task.offer, getEvaluation(future, cvText, task.offer), false, listener, generation));
+                    }
+                }
+                
+                now = System.nanoTime();
+                Iterator<Map.Entry<Future<MatchEvaluation>, OfferEvaluation>> expired = pending.entrySet().iterator();
+                while (expired.hasNext()) {
+                    Map.Entry<Future<MatchEvaluation>, OfferEvaluation> entry = expired.next();
+                    OfferEvaluation task = entry.getValue();
+                    if (task.startedNanos != 0 && now - task.startedNanos >= timeoutNanos && !entry.getKey().isDone()) {
+                        entry.getKey().cancel(true);
+                        expired.remove();
+                        logger.warn("Évaluation de l'offre {} abandonnée après {}s, résultat de repli", task.offer.getId(), offerTimeoutSeconds);
+                        matchResults.add(recordResult(user, task.offer, fallbackEvaluation(cvText, task.offer), false, listener, generation));
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Le matching a été interrompu", e);
+        } finally {
+            // Annuler les évaluations restantes si la boucle a été interrompue
+            pending.keySet().forEach(future -> future.cancel(true));
+            sweep.close();
         }
         
-        // Trouver le résultat le plus récent
-        LocalDateTime mostRecentResultTime = results.stream()
-                .map(MatchingResult::getCreatedAt)
-                .max(LocalDateTime::compareTo)
-                .orElse(LocalDateTime.MIN);
+        // Envoyer toutes les insertions (résultats et explications) en lots dans la transaction courante
+        matchingResultWriter.flush();
+        
+        // Trier les résultats par score de correspondance (du plus élevé au plus bas), scores du préfiltrage en dernier
+        matchResults.sort(RANKING);
+        
+        return matchResults;
+    }
+    
+    /**
+     * Évaluation d'une offre soumise au pool de matching, qui note l'instant de son démarrage : son
+     * délai ne court pas tant qu'elle attend un thread libre
+     */
+    private static class OfferEvaluation implements Callable<MatchEvaluation> {
+        private final JobOffer offer;
+        private final Callable<MatchEvaluation> evaluation;
+        // Instant de démarrage (System.nanoTime), 0 tant que l'évaluation est en file
+        private volatile long startedNanos;
         
-        // Convertir le timestamp du CV en LocalDateTime
-        LocalDateTime cvUploadTime = LocalDateTime.ofEpochSecond(
-                user.getCvUploadDate() / 1000, 
-                0, 
-                java.time.ZoneOffset.UTC
-        );
+        OfferEvaluation(JobOffer offer, Callable<MatchEvaluation> evaluation) {
+            this.offer = offer;
+            this.evaluation = evaluation;
+        }
+        
+        @Override
+        public MatchEvaluation call() throws Exception {
+            long now = System.nanoTime();
+            startedNanos = now != 0 ? now : 1;
+            return evaluation.call();
+        }
+    }
+    
+    /**
+     * Prépare le résultat d'une offre pour l'écriture groupée, le convertit au format de réponse et le
+     * signale au listener
+     * 
+     * @param user L'utilisateur
+     * @param offer L'offre d'emploi
+     * @param evaluation Résultat de l'évaluation de l'offre
+     * @param prefiltered true si l'évaluation provient du seul préfiltrage local
+     * @param listener Listener notifié du résultat
+     * @param generation Génération du résultat
+     * @return Le résultat au format de réponse
+     */
+    private Map<String, Object> recordResult(User user, JobOffer offer, MatchEvaluation evaluation, boolean prefiltered,
+                                             MatchingProgressListener listener, long generation) {
+        // Créer le résultat de matching : son identifiant est attribué immédiatement, l'insertion est
+        // envoyée avec les autres à la fin de l'évaluation
+        MatchingResult matchingResult = matchingResultWriter.persist(
+                newMatchingResult(user, offer, evaluation.score(), evaluation.explanations(), generation, prefiltered));
+        
+        // Ajouter le résultat au format de réponse
+        Map<String, Object> result = toResponseFormat(matchingResult);
+        listener.onOfferScored(result);
+        return result;
+    }
+    
+    /**
+     * Classe les offres localement et retourne l'évaluation locale des offres qui ne font pas
+     * partie des {@code matching.prefilter.top-k} meilleures et ne seront donc pas envoyées à Ollama
+     * 
+     * @param user L'utilisateur
+     * @param cvText Texte du CV
+     * @param offers Offres d'emploi à classer
+     * @return Évaluations locales des offres écartées du second étage (vide si le préfiltrage est désactivé)
+     */
+    private Map<JobOffer, MatchEvaluation> prefilterJobOffers(User user, String cvText, List<JobOffer> offers) {
+        Map<JobOffer, MatchEvaluation> localEvaluations = new IdentityHashMap<>();
+        if (prefilterTopK <= 0 || offers.size() <= prefilterTopK) {
+            return localEvaluations;
+        }
+        
+        Set<String> cvTokens = cvSkillTokens(user, cvText);
+        Map<JobOffer, SkillOverlapPrefilter.SkillOverlap> overlaps = new IdentityHashMap<>();
+        for (JobOffer offer : offers) {
+            overlaps.put(offer, skillOverlapPrefilter.evaluate(cvTokens, offer));
+        }
+        
+        List<JobOffer> ranked = new ArrayList<>(offers);
+        ranked.sort((a, b) -> Double.compare(overlaps.get(b).score(), overlaps.get(a).score()));
+        for (JobOffer offer : ranked.subList(prefilterTopK, ranked.size())) {
+            SkillOverlapPrefilter.SkillOverlap overlap = overlaps.get(offer);
+            localEvaluations.put(offer, new MatchEvaluation(overlap.score(), skillOverlapPrefilter.explain(overlap)));
+        }
         
-        // Vérifier si le CV a été mis à jour après le résultat le plus récent
-        return cvUploadTime.isAfter(mostRecentResultTime);
+        logger.info("Préfiltrage local : {} offres envoyées à Ollama, {} évaluées localement",
+                prefilterTopK, localEvaluations.size());
+        return localEvaluations;
+    }
+    
+    /**
+     * Tokens du CV comparés aux compétences des offres par le préfiltrage local
+     * 
+     * @param user L'utilisateur
+     * @param cvText Texte du CV
+     * @return Les tokens du texte du CV et des compétences de son profil stocké
+     */
+    private Set<String> cvSkillTokens(User user, String cvText) {
+        Set<String> cvTokens = skillOverlapPrefilter.tokenize(cvText);
+        // Les compétences du profil stocké complètent le texte brut (formulations normalisées par Ollama)
+        findCurrentSkillProfile(user).ifPresent(profile -> {
+            for (List<String> skills : Arrays.asList(profile.getTechnicalSkills(), profile.getSoftSkills(), profile.getCertifications())) {
+                if (skills != null) {
+                    cvTokens.addAll(skillOverlapPrefilter.tokenize(String.join(" ", skills)));
+                }
+            }
+        });
+        return cvTokens;
+    }
+    
+    /**
+     * Calcule le score et les explications d'une offre (exécuté sur le pool de matching)
+     * 
+     * @param scorer Backend de scoring
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @return Résultat de l'évaluation
+     */
+    private MatchEvaluation evaluateOffer(MatchScorer scorer, String cvText, JobOffer offer) {
+        // Explications générées à la demande : le score seul est calculé lors du matching
+        boolean withExplanations = !EXPLANATIONS_MODE_LAZY.equalsIgnoreCase(explanationsMode);
+        return scorer.evaluate(cvText, offer, createJobOfferText(offer), withExplanations);
+    }
+    
+    /**
+     * Retourne le résultat d'une évaluation terminée
+     * 
+     * @param future Évaluation terminée
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi évaluée
+     * @return Résultat de l'évaluation, ou un résultat de repli si l'évaluation a échoué
+     * @throws InterruptedException si le thread est interrompu
+     * @throws LlmCapacityExceededException si l'appel à Ollama a été refusé faute de capacité
+     */
+    private MatchEvaluation getEvaluation(Future<MatchEvaluation> future, String cvText, JobOffer offer) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof LlmCapacityExceededException capacityExceeded) {
+                // Service saturé : le matching est abandonné plutôt que complété de résultats de repli
+                throw capacityExceeded;
+            }
+            logger.error("Erreur lors de l'évaluation de l'offre {}", offer.getId(), e);
+            return fallbackEvaluation(cvText, offer);
+        } catch (CancellationException e) {
+            logger.error("Erreur lors de l'évaluation de l'offre {}", offer.getId(), e);
+            return fallbackEvaluation(cvText, offer);
+        }
+    }
+    
+    /**
+     * Résultat de repli d'une offre dont l'évaluation a échoué ou dépassé le délai
+     * 
+     * @param cvText Texte du CV
+     * @param offer Offre d'emploi
+     * @return Résultat calculé localement par l'index lexical, pour ne pas bloquer les autres offres
+     */
+    private MatchEvaluation fallbackEvaluation(String cvText, JobOffer offer) {
+        return lexicalMatchScorer.evaluate(cvText, offer, createJobOfferText(offer), true);
+    }
+    
+    /**
+     * Vérifie si un résultat de matching est toujours valide : il doit être plus récent que le CV de
+     * l'utilisateur et que la dernière modification de l'offre, et ne pas avoir expiré
+     * 
+     * @param result Le résultat de matching
+     * @param user L'utilisateur
+     * @return true si le résultat peut être réutilisé, false s'il doit être recalculé
+     */
+    private boolean isResultValid(MatchingResult result, User user) {
+        LocalDateTime createdAt = result.getCreatedAt();
+        if (createdAt == null || createdAt.isBefore(LocalDateTime.now().minus(cacheDurationHours, ChronoUnit.HOURS))) {
+            return false;
+        }
+        if (user.getCvUploadDate() != null && toLocalDateTime(user.getCvUploadDate()).isAfter(createdAt)) {
+            return false;
+        }
+        Date offerUpdatedAt = result.getJobOffer().getUpdatedAt();
+        return offerUpdatedAt == null || !toLocalDateTime(offerUpdatedAt.getTime()).isAfter(createdAt);
+    }
+    
+    /**
+     * Convertit un timestamp en millisecondes dans le fuseau du serveur, celui des dates de création des résultats
+     */
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+    
+    /**
+     * Convertit un résultat de matching en format de réponse pour l'API. Les explications sont vides
+     * tant qu'elles n'ont pas été demandées (mode {@code lazy}).
+     * 
+     * @param result Le résultat de matching
+     * @return Le résultat au format de réponse
+     */
+    private Map<String, Object> toResponseFormat(MatchingResult result) {
+        List<String> explanations = result.getMatchExplanations() != null ? result.getMatchExplanations() : Collections.emptyList();
+        Map<String, Object> matchResult = new HashMap<>();
+        matchResult.put("matchingResultId", result.getId());
+        matchResult.put("jobOffer", mapJobOfferToDto(result.getJobOffer()));
+        matchResult.put("matchScore", result.getMatchScore());
+        matchResult.put("prefiltered", result.isPrefiltered());
+        matchResult.put("matchExplanations", explanations);
+        matchResult.put("explanationsAvailable", !explanations.isEmpty());
+        return matchResult;
     }
     
     /**
@@ -256,98 +872,196 @@ public class OllamaMatchingService {
         List<Map<String, Object>> responseFormat = new ArrayList<>();
         
         for (MatchingResult result : results) {
-            Map<String, Object> matchResult = new HashMap<>();
-            matchResult.put("jobOffer", mapJobOfferToDto(result.getJobOffer()));
-            matchResult.put("matchScore", result.getMatchScore());
-            matchResult.put("matchExplanations", result.getMatchExplanations());
-            responseFormat.add(matchResult);
+            responseFormat.add(toResponseFormat(result));
         }
         
-        // Trier les résultats par score de correspondance (du plus élevé au plus bas)
-        responseFormat.sort((a, b) -> Double.compare((Double) b.get("matchScore"), (Double) a.get("matchScore")));
+        // Trier les résultats par score de correspondance (du plus élevé au plus bas), scores du préfiltrage en dernier
+        responseFormat.sort(RANKING);
         
         return responseFormat;
     }
     
     /**
-     * Extrait le texte d'un CV au format PDF
+     * Retourne le texte du CV d'un utilisateur. Le texte est extrait une seule fois par version du CV
+     * puis lu depuis la table cv_texts.
      * 
-     * @param cvData Données binaires du CV
+     * @param user L'utilisateur
      * @return Texte extrait du CV
+     * @throws IllegalStateException si l'utilisateur n'a pas de CV ou si le fichier est illisible
+     */
+    private String readCVText(User user) {
+        return cvTextExtractionService.getCvText(user);
+    }
+    
+    /**
+     * Retourne le profil de compétences stocké pour l'utilisateur s'il correspond à son CV actuel
+     * 
+     * @param user L'utilisateur
+     * @return Le profil de compétences, ou vide s'il est absent ou calculé pour un ancien CV
+     */
+    private Optional<CvSkillProfile> findCurrentSkillProfile(User user) {
+        if (user.getCvUploadDate() == null) {
+            return Optional.empty();
+        }
+        return cvSkillProfileRepository.findByUser(user)
+                .filter(profile -> user.getCvUploadDate().equals(profile.getCvUploadDate()));
+    }
+    
+    /**
+     * Extrait le profil de compétences du CV actuel de l'utilisateur avec Ollama et le stocke
+     * 
+     * @param user L'utilisateur
+     * @return Le profil de compétences stocké
+     * @throws IllegalStateException si l'utilisateur n'a pas de CV ou si l'extraction échoue
      */
-    private String extractTextFromCV(byte[] cvData) {
-        // Dans une implémentation réelle, vous utiliseriez une bibliothèque comme Apache PDFBox
-        // pour extraire le texte d'un PDF
+    private CvSkillProfile computeSkillProfile(User user) {
+        logger.info("Calcul du profil de compétences de l'utilisateur {}", user.getId());
+        Long cvUploadDate = user.getCvUploadDate();
+        CvSkillProfile extracted;
+        try (LlmRequestContext.Scope scope = LlmRequestContext.current().withUser(user.getId()).open()) {
+            extracted = callOllamaForSkillExtraction(readCVText(user));
+        }
         
-        logger.info("Extraction du texte à partir d'un CV de {} octets", cvData.length);
+        CvSkillProfile profile = cvSkillProfileRepository.findByUser(user).orElseGet(CvSkillProfile::new);
+        profile.setUser(user);
+        profile.setTechnicalSkills(extracted.getTechnicalSkills());
+        profile.setSoftSkills(extracted.getSoftSkills());
+        profile.setCertifications(extracted.getCertifications());
+        profile.setExperience(extracted.getExperience());
+        profile.setEducation(extracted.getEducation());
+        profile.setCvUploadDate(cvUploadDate);
         
-        // Simuler l'extraction de texte pour le développement
-        return "Simulé: Texte extrait du CV contenant les compétences et l'expérience de l'utilisateur. " +
-               "Compétences techniques: Java, Spring Boot, React, Angular, TypeScript, JavaScript, HTML, CSS, " +
-               "MySQL, PostgreSQL, MongoDB, Docker, Kubernetes, AWS, Git. " +
-               "Compétences comportementales: Travail d'équipe, Communication, Résolution de problèmes, " +
-               "Autonomie, Adaptabilité, Gestion du temps. " +
-               "Expérience: 3 ans en tant que développeur full stack, 2 ans en tant que développeur frontend. " +
-               "Formation: Master en Informatique, Université Mohammed V. " +
-               "Certifications: Oracle Certified Java Developer, AWS Certified Developer.";
+        try {
+            return cvSkillProfileRepository.save(profile);
+        } catch (DataIntegrityViolationException e) {
+            // Le profil a été créé en parallèle (calcul en arrière-plan et requête simultanés)
+            logger.debug("Profil de compétences de l'utilisateur {} déjà stocké", user.getId());
+            return cvSkillProfileRepository.findByUser(user).orElseThrow(() -> e);
+        }
     }
     
     /**
      * Appelle l'API Ollama pour extraire les compétences d'un CV
      * 
      * @param cvText Texte du CV
-     * @return Map contenant les compétences extraites
+     * @return Profil de compétences extrait (non sauvegardé)
+     * @throws IllegalStateException si Ollama est indisponible ou si sa réponse est inexploitable
      */
-    private Map<String, Object> callOllamaForSkillExtraction(String cvText) {
+    private CvSkillProfile callOllamaForSkillExtraction(String cvText) {
         logger.info("Appel à Ollama pour l'extraction des compétences");
         
         String prompt = "Extrait les compétences techniques, compétences comportementales, " +
                 "expériences professionnelles, formation et certifications à partir du CV suivant. " +
-                "Réponds uniquement au format JSON avec les clés 'technicalSkills', 'softSkills', " +
-                "'experience', 'education' et 'certifications'. Voici le CV:\n\n" + cvText;
+                "Réponds uniquement au format JSON avec les clés 'technicalSkills' (liste), 'softSkills' (liste), " +
+                "'experience' (texte), 'education' (texte) et 'certifications' (liste). Voici le CV:\n\n" + cvText;
         
+        String responseText;
         try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", ollamaModel);
-            requestBody.put("prompt", prompt);
-            requestBody.put("stream", false);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            ResponseEntity<Map> response = restTemplate.postForEntity(ollamaApiUrl, request, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                String responseText = (String) response.getBody().get("response");
-                
-                // Simuler le résultat pour le développement
-                Map<String, Object> extractedSkills = new HashMap<>();
-                extractedSkills.put("technicalSkills", Arrays.asList("Java", "Spring Boot", "React", "SQL"));
-                extractedSkills.put("softSkills", Arrays.asList("Communication", "Travail en équipe", "Résolution de problèmes"));
-                extractedSkills.put("experience", "3 ans d'expérience en développement web");
-                extractedSkills.put("education", "Master en Informatique");
-                extractedSkills.put("certifications", Arrays.asList("Oracle Certified Java Developer"));
-                
-                return extractedSkills;
-            } else {
-                logger.error("Erreur lors de l'appel à Ollama: {}", response.getStatusCode());
-                throw new IOException("Erreur lors de l'appel à Ollama");
-            }
-        } catch (Exception e) {
+            responseText = ollamaGenerationService.generate(LlmStage.SKILL_EXTRACTION, prompt, "json", text -> parseSkillProfile(text) != null);
+        } catch (OllamaUnavailableException e) {
+            logger.warn("Extraction des compétences impossible: {}", e.getMessage());
+            throw new IllegalStateException("Le service d'extraction des compétences est indisponible", e);
+        } catch (IOException e) {
             logger.error("Exception lors de l'appel à Ollama", e);
+            throw new IllegalStateException("Le service d'extraction des compétences est indisponible", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("L'extraction des compétences a été interrompue", e);
+        }
+        
+        CvSkillProfile profile = parseSkillProfile(responseText);
+        if (profile == null) {
+            logger.error("Réponse d'Ollama inexploitable pour l'extraction des compétences: {}", responseText);
+            throw new IllegalStateException("Les compétences n'ont pas pu être extraites du CV");
+        }
+        return profile;
+    }
+    
+    /**
+     * Interprète la réponse JSON de l'extraction des compétences. Les listes et textes sont acceptés
+     * sous plusieurs formes (chaîne, liste, objets imbriqués) et ramenés à du texte simple.
+     * 
+     * @param responseText Réponse d'Ollama
+     * @return Profil extrait, ou null si la réponse n'est pas un JSON contenant au moins une rubrique
+     */
+    private CvSkillProfile parseSkillProfile(String responseText) {
+        try {
+            JsonNode json = objectMapper.readTree(responseText);
+            if (json == null || !json.isObject()) {
+                return null;
+            }
             
-            // Simuler le résultat pour le développement
-            Map<String, Object> extractedSkills = new HashMap<>();
-            extractedSkills.put("technicalSkills", Arrays.asList("Java", "Spring Boot", "React", "SQL"));
-            extractedSkills.put("softSkills", Arrays.asList("Communication", "Travail en équipe", "Résolution de problèmes"));
-            extractedSkills.put("experience", "3 ans d'expérience en développement web");
-            extractedSkills.put("education", "Master en Informatique");
-            extractedSkills.put("certifications", Arrays.asList("Oracle Certified Java Developer"));
+            CvSkillProfile profile = new CvSkillProfile();
+            profile.setTechnicalSkills(toTextList(json.path("technicalSkills")));
+            profile.setSoftSkills(toTextList(json.path("softSkills")));
+            profile.setCertifications(toTextList(json.path("certifications")));
+            profile.setExperience(toText(json.path("experience"), "\n"));
+            profile.setEducation(toText(json.path("education"), "\n"));
             
-            return extractedSkills;
+            boolean empty = profile.getTechnicalSkills().isEmpty() && profile.getSoftSkills().isEmpty()
+                    && profile.getCertifications().isEmpty() && profile.getExperience() == null && profile.getEducation() == null;
+            return empty ? null : profile;
+        } catch (JsonProcessingException e) {
+            logger.debug("Réponse JSON invalide d'Ollama pour l'extraction des compétences: {}", e.getOriginalMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Convertit un nœud JSON (liste ou chaîne séparée par des virgules) en liste de textes sans doublons
+     */
+    private List<String> toTextList(JsonNode node) {
+        Set<String> values = new LinkedHashSet<>();
+        if (node.isArray()) {
+            node.forEach(item -> {
+                String text = toText(item, ", ");
+                if (text != null) {
+                    values.add(text);
+                }
+            });
+        } else if (node.isTextual()) {
+            Arrays.stream(node.asText().split("[,;\n]"))
+                    .map(String::trim)
+                    .filter(text -> !text.isEmpty())
+                    .forEach(values::add);
+        }
+        return new ArrayList<>(values);
+    }
+    
+    /**
+     * Convertit un nœud JSON en texte simple ; les listes et objets sont aplatis avec le séparateur donné
+     */
+    private String toText(JsonNode node, String separator) {
+        List<String> parts = new ArrayList<>();
+        if (node.isArray() || node.isObject()) {
+            node.forEach(item -> {
+                String text = toText(item, ", ");
+                if (text != null) {
+                    parts.add(text);
+                }
+            });
+        } else if (node.isValueNode() && !node.isNull()) {
+            parts.add(node.asText().trim());
         }
+        String text = parts.stream().filter(part -> !part.isEmpty()).collect(Collectors.joining(separator));
+        return text.isEmpty() ? null : text;
+    }
+    
+    /**
+     * Convertit un profil de compétences en format de réponse pour l'API
+     * 
+     * @param profile Profil de compétences
+     * @return Map contenant les compétences extraites
+     */
+    private Map<String, Object> mapSkillProfileToDto(CvSkillProfile profile) {
+        Map<String, Object> dto = new HashMap<>();
+        dto.put("technicalSkills", profile.getTechnicalSkills());
+        dto.put("softSkills", profile.getSoftSkills());
+        dto.put("experience", profile.getExperience());
+        dto.put("education", profile.getEducation());
+        dto.put("certifications", profile.getCertifications());
+        dto.put("extractedAt", profile.getExtractedAt());
+        return dto;
     }
     
     /**
@@ -386,160 +1100,6 @@ public class OllamaMatchingService {
         return builder.toString();
     }
     
-    /**
-     * Calcule le score de correspondance entre un CV et une offre d'emploi en utilisant Ollama
-     * 
-     * @param cvText Texte du CV
-     * @param offerText Texte de l'offre d'emploi
-     * @return Score de correspondance (0-100)
-     */
-    private double calculateMatchScore(String cvText, String offerText) {
-        logger.info("Calcul du score de correspondance avec Ollama");
-        
-        String prompt = "Calcule le score de correspondance (de 0 à 100) entre le CV et l'offre d'emploi suivants. " +
-                "Réponds uniquement avec un nombre entier entre 0 et 100. Plus le score est élevé, plus la correspondance est forte.\n\n" +
-                "CV:\n" + cvText + "\n\n" +
-                "Offre d'emploi:\n" + offerText;
-        
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", ollamaModel);
-            requestBody.put("prompt", prompt);
-            requestBody.put("stream", false);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            ResponseEntity<Map> response = restTemplate.postForEntity(ollamaApiUrl, request, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                String responseText = (String) response.getBody().get("response");
-                
-                try {
-                    // Essayer de convertir la réponse en nombre
-                    return Double.parseDouble(responseText.trim());
-                } catch (NumberFormatException e) {
-                    logger.error("Impossible de convertir la réponse d'Ollama en nombre: {}", responseText);
-                    
-                    // Simuler un score pour le développement
-                    return 30 + Math.random() * 70; // Score entre 30 et 100
-                }
-            } else {
-                logger.error("Erreur lors de l'appel à Ollama: {}", response.getStatusCode());
-                
-                // Simuler un score pour le développement
-                return 30 + Math.random() * 70; // Score entre 30 et 100
-            }
-        } catch (Exception e) {
-            logger.error("Exception lors de l'appel à Ollama", e);
-            
-            // Simuler un score pour le développement
-            return 30 + Math.random() * 70; // Score entre 30 et 100
-        }
-    }
-    
-    /**
-     * Génère des explications sur le matching entre un CV et une offre d'emploi
-     * 
-     * @param cvText Texte du CV
-     * @param offer Offre d'emploi
-     * @return Liste d'explications
-     */
-    private List<String> generateMatchExplanations(String cvText, JobOffer offer) {
-        logger.info("Génération d'explications sur le matching avec Ollama");
-        
-        String offerText = createJobOfferText(offer);
-        
-        String prompt = "Explique pourquoi ce CV correspond ou ne correspond pas à cette offre d'emploi. " +
-                "Donne 3 points forts et 3 points faibles. Réponds sous forme de liste avec des tirets.\n\n" +
-                "CV:\n" + cvText + "\n\n" +
-                "Offre d'emploi:\n" + offerText;
-        
-        try {
-            Map<String, Object> requestBody = new HashMap<>();
-            requestBody.put("model", ollamaModel);
-            requestBody.put("prompt", prompt);
-            requestBody.put("stream", false);
-            
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            
-            HttpEntity<Map<String, Object>> request = new HttpEntity<>(requestBody, headers);
-            
-            ResponseEntity<Map> response = restTemplate.postForEntity(ollamaApiUrl, request, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                String responseText = (String) response.getBody().get("response");
-                
-                // Traiter la réponse pour extraire les explications
-                List<String> explanations = Arrays.stream(responseText.split("\n"))
-                        .filter(line -> line.trim().startsWith("-"))
-                        .map(line -> line.trim().substring(1).trim())
-                        .collect(Collectors.toList());
-                
-                if (explanations.isEmpty()) {
-                    // Simuler des explications pour le développement
-                    return generateSimulatedExplanations(offer);
-                }
-                
-                return explanations;
-            } else {
-                logger.error("Erreur lors de l'appel à Ollama: {}", response.getStatusCode());
-                
-                // Simuler des explications pour le développement
-                return generateSimulatedExplanations(offer);
-            }
-        } catch (Exception e) {
-            logger.error("Exception lors de l'appel à Ollama", e);
-            
-            // Simuler des explications pour le développement
-            return generateSimulatedExplanations(offer);
-        }
-    }
-    
-    /**
-     * Génère des explications simulées pour le développement
-     * 
-     * @param offer Offre d'emploi
-     * @return Liste d'explications simulées
-     */
-    private List<String> generateSimulatedExplanations(JobOffer offer) {
-        List<String> explanations = new ArrayList<>();
-        
-        // Points forts
-        if (offer.getCompetencesTechniquesRequises() != null && !offer.getCompetencesTechniquesRequises().isEmpty()) {
-            explanations.add("Le candidat possède une bonne expérience en " + 
-                    offer.getCompetencesTechniquesRequises().iterator().next());
-        } else {
-            explanations.add("Le candidat possède une bonne expérience en développement");
-        }
-        
-        explanations.add("La formation du candidat correspond au niveau requis");
-        
-        if (offer.getCompetencesComportementalesRequises() != null && !offer.getCompetencesComportementalesRequises().isEmpty()) {
-            explanations.add("Le candidat a démontré des compétences en " + 
-                    offer.getCompetencesComportementalesRequises().iterator().next());
-        } else {
-            explanations.add("Le candidat a démontré des compétences en travail d'équipe");
-        }
-        
-        // Points faibles
-        explanations.add("Le candidat manque d'expérience dans certaines technologies requises");
-        
-        if (offer.getCertificationsDemandees() != null && !offer.getCertificationsDemandees().isEmpty()) {
-            explanations.add("Le candidat ne possède pas la certification " + 
-                    offer.getCertificationsDemandees().iterator().next());
-        } else {
-            explanations.add("Le candidat ne possède pas toutes les certifications demandées");
-        }
-        
-        explanations.add("L'expérience du candidat est légèrement inférieure à celle souhaitée");
-        
-        return explanations;
-    }
-    
     /**
      * Convertit une offre d'emploi en DTO pour l'API
      * 
@@ -569,75 +1129,49 @@ public class OllamaMatchingService {
      */
     @Transactional(isolation = Isolation.READ_COMMITTED)
     public List<Map<String, Object>> forceMatchJobOffersForUser(Long userId) {
+        return forceMatchJobOffersForUser(userId, MatchingProgressListener.NONE);
+    }
+    
+    /**
+     * Force le recalcul des correspondances pour un utilisateur spécifique en signalant l'avancement
+     * 
+     * @param userId ID de l'utilisateur
+     * @param listener Listener notifié de l'avancement du matching
+     * @return Liste des offres d'emploi avec leurs scores de correspondance
+     */
+    @Transactional(isolation = Isolation.READ_COMMITTED)
+    public List<Map<String, Object>> forceMatchJobOffersForUser(Long userId, MatchingProgressListener listener) {
         User user = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Utilisateur non trouvé avec l'ID: " + userId));
         
-        // Supprimer tous les résultats de matching existants pour cet utilisateur dans une transaction séparée
-        logger.info("Suppression des résultats de matching existants pour l'utilisateur {}", userId);
-        deleteExistingMatchingResults(user);
-        
-        // Effectuer un nouveau matching
+        // Effectuer un nouveau matching dans une nouvelle génération : les résultats existants restent
+        // visibles jusqu'à son activation, puis sont supprimés en arrière-plan
         logger.info("Calcul d'un nouveau matching pour l'utilisateur {}", userId);
         
-        String cvText;
-        
-        // Vérifier si le CV est stocké en base de données
-        if (user.getCvData() != null && user.getCvData().length > 0) {
-            logger.info("Extraction du texte à partir du CV en base de données pour l'utilisateur {}", userId);
-            cvText = extractTextFromCV(user.getCvData());
-        } 
-        // Sinon, vérifier si le CV est stocké dans le système de fichiers
-        else if (user.getCvFilename() != null && !user.getCvFilename().isEmpty()) {
-            logger.info("Extraction du texte à partir du CV dans le système de fichiers pour l'utilisateur {}", userId);
-            try {
-                Path cvPath = Paths.get(uploadDir, user.getCvFilename());
-                byte[] cvData = Files.readAllBytes(cvPath);
-                cvText = extractTextFromCV(cvData);
-            } catch (IOException e) {
-                logger.error("Erreur lors de la lecture du fichier CV: {}", e.getMessage());
-                throw new IllegalStateException("Impossible de lire le fichier CV", e);
-            }
-        } else {
-            throw new IllegalStateException("Aucun CV trouvé pour cet utilisateur");
-        }
+        // Refuser immédiatement si le service est saturé, avant tout calcul
+        llmDispatcher.checkAdmission(LlmRequestContext.current().priority());
+        
+        String cvText = readCVText(user);
         
         // Récupérer toutes les offres d'emploi actives
         List<JobOffer> activeJobOffers = jobOfferRepository.findByIsActiveTrue();
+        long generation = matchingGenerationService.allocateGeneration(userId);
         
         if (activeJobOffers.isEmpty()) {
             logger.info("Aucune offre d'emploi active trouvée");
+            matchingGenerationService.activate(userId, generation);
             return Collections.emptyList();
         }
         
         logger.info("Trouvé {} offres d'emploi actives pour le matching", activeJobOffers.size());
         
-        // Calculer le score de correspondance pour chaque offre et sauvegarder les résultats
-        List<Map<String, Object>> matchResults = new ArrayList<>();
-        
-        for (JobOffer offer : activeJobOffers) {
-            // Créer le texte de l'offre avec les compétences requises
-            String offerText = createJobOfferText(offer);
-            
-            // Calculer le score de correspondance avec Ollama
-            double matchScore = calculateMatchScore(cvText, offerText);
-            
-            // Ajouter des explications sur le matching
-            List<String> matchExplanations = generateMatchExplanations(cvText, offer);
-            
-            // Créer et sauvegarder le résultat de matching en base de données dans une transaction séparée
-            MatchingResult matchingResult = saveMatchingResult(user, offer, matchScore, matchExplanations);
-            
-            // Ajouter le résultat au format de réponse
-            Map<String, Object> result = new HashMap<>();
-            result.put("jobOffer", mapJobOfferToDto(offer));
-            result.put("matchScore", matchScore);
-            result.put("matchExplanations", matchExplanations);
-            matchResults.add(result);
-        }
-        
-        // Trier les résultats par score de correspondance (du plus élevé au plus bas)
-        matchResults.sort((a, b) -> Double.compare((Double) b.get("matchScore"), (Double) a.get("matchScore")));
+        // L'index lexical du mode dégradé suit les offres actives (seules les offres modifiées sont ré-analysées)
+        jobOfferLexicalIndex.refresh(activeJobOffers, this::createJobOfferText);
         
+        // Calculer le score de correspondance pour chaque offre en parallèle et sauvegarder les résultats
+        listener.onStart(activeJobOffers.size());
+        List<Map<String, Object>> matchResults = scoreJobOffers(user, cvText, activeJobOffers, listener, generation);
+        matchingGenerationService.activate(userId, generation);
         return matchResults;
     }
 } 
\ No newline at end of file
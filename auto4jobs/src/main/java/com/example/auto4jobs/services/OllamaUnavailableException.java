@@ -0,0 +1,13 @@
+package com.example.auto4jobs.services;
+
+import java.io.IOException;
+
+/**
+ * Appel à Ollama refusé sans être envoyé : le disjoncteur de chaque serveur disponible est ouvert
+ */
+public class OllamaUnavailableException extends IOException {
+
+    public OllamaUnavailableException(String message) {
+        super(message);
+    }
+}
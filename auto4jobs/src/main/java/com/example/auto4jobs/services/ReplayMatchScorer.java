@@ -0,0 +1,198 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rejoue des évaluations enregistrées dans un fichier (une évaluation JSON par ligne), adressées par
+ * l'empreinte du CV et de l'offre. Le fichier est alimenté en enregistrant les évaluations d'un autre
+ * backend ({@link #recording(MatchScorer)}), puis permet de rejouer le matching, à l'identique et sans
+ * modèle, pour les mesures et tests de charge. Une évaluation absente du fichier est calculée par le
+ * backend local.
+ */
+@Service
+public class ReplayMatchScorer implements MatchScorer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReplayMatchScorer.class);
+
+    @Value("${matching.scorer.replay.file:./replay/match-evaluations.jsonl}")
+    private String replayFile = "./replay/match-evaluations.jsonl";
+
+    @Autowired
+    private LocalMatchScorer localMatchScorer;
+
+    @Autowired
+    private LlmResponseCache llmResponseCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private final Map<String, MatchEvaluation> evaluations = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong recorded = new AtomicLong();
+
+    private final Object writeLock = new Object();
+
+    @PostConstruct
+    public void load() {
+        Path path = Paths.get(replayFile);
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (!line.isBlank()) {
+                    ReplayEntry entry = objectMapper.readValue(line, ReplayEntry.class);
+                    // Les lignes les plus récentes remplacent les précédentes
+                    List<String> explanations = entry.explanations() != null ? entry.explanations() : List.of();
+                    evaluations.merge(entry.key(), new MatchEvaluation(entry.score(), explanations), this::merge);
+                }
+            }
+            logger.info("{} évaluations chargées depuis {}", evaluations.size(), path);
+        } catch (IOException e) {
+            logger.warn("Impossible de lire le fichier d'évaluations enregistrées {}: {}", path, e.getMessage());
+        }
+    }
+
+    @Override
+    public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+        MatchEvaluation stored = evaluations.get(computeKey(cvText, offerText));
+        if (stored != null && (!withExplanations || !stored.explanations().isEmpty())) {
+            hits.incrementAndGet();
+            return withExplanations ? stored : new MatchEvaluation(stored.score(), List.of());
+        }
+        misses.incrementAndGet();
+        logger.debug("Évaluation absente des enregistrements pour l'offre {}, calcul local", offer.getId());
+        return localMatchScorer.evaluate(cvText, offer, offerText, withExplanations);
+    }
+
+    @Override
+    public List<String> explain(String cvText, JobOffer offer, String offerText) {
+        return evaluate(cvText, offer, offerText, true).explanations();
+    }
+
+    @Override
+    public String getName() {
+        return "replay";
+    }
+
+    /**
+     * Enveloppe un backend pour enregistrer chacune de ses évaluations dans le fichier de rejeu
+     *
+     * @param delegate Le backend dont les évaluations sont enregistrées
+     * @return Le backend enregistreur
+     */
+    public MatchScorer recording(MatchScorer delegate) {
+        return new MatchScorer() {
+            @Override
+            public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+                MatchEvaluation evaluation = delegate.evaluate(cvText, offer, offerText, withExplanations);
+                record(cvText, offerText, evaluation);
+                return evaluation;
+            }
+
+            @Override
+            public List<String> explain(String cvText, JobOffer offer, String offerText) {
+                List<String> explanations = delegate.explain(cvText, offer, offerText);
+                MatchEvaluation stored = evaluations.get(computeKey(cvText, offerText));
+                if (stored != null) {
+                    record(cvText, offerText, new MatchEvaluation(stored.score(), explanations));
+                }
+                return explanations;
+            }
+
+            @Override
+            public Sweep beginSweep(String cvText) {
+                return delegate.beginSweep(cvText);
+            }
+
+            @Override
+            public boolean isAvailable() {
+                return delegate.isAvailable();
+            }
+
+            @Override
+            public String getName() {
+                return delegate.getName();
+            }
+        };
+    }
+
+    /**
+     * Retourne les compteurs du rejeu
+     *
+     * @return Map contenant le nombre d'évaluations enregistrées, rejouées et absentes
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("entries", evaluations.size());
+        statistics.put("hits", hits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("recorded", recorded.get());
+        return statistics;
+    }
+
+    private void record(String cvText, String offerText, MatchEvaluation evaluation) {
+        String key = computeKey(cvText, offerText);
+        MatchEvaluation merged = evaluations.merge(key, evaluation, this::merge);
+        synchronized (writeLock) {
+            Path path = Paths.get(replayFile);
+            try {
+                if (path.getParent() != null) {
+                    Files.createDirectories(path.getParent());
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    writer.write(objectMapper.writeValueAsString(new ReplayEntry(key, merged.score(), merged.explanations())));
+                    writer.newLine();
+                }
+                recorded.incrementAndGet();
+            } catch (IOException e) {
+                logger.warn("Impossible d'enregistrer l'évaluation dans {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Conserve les explications déjà enregistrées lorsqu'une nouvelle évaluation n'en contient pas
+     */
+    private MatchEvaluation merge(MatchEvaluation previous, MatchEvaluation latest) {
+        if (latest.explanations().isEmpty() && !previous.explanations().isEmpty()) {
+            return new MatchEvaluation(latest.score(), previous.explanations());
+        }
+        return latest;
+    }
+
+    private String computeKey(String cvText, String offerText) {
+        return llmResponseCache.computeKey(getName(), cvText + "\n\n" + offerText, Map.of());
+    }
+
+    /**
+     * Ligne du fichier de rejeu
+     */
+    private record ReplayEntry(String key, double score, List<String> explanations) {
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Premier étage du matching : classe les offres localement, sans appel à Ollama, selon le
+ * recouvrement entre les compétences présentes dans le CV et celles demandées par l'offre.
+ */
+@Service
+public class SkillOverlapPrefilter {
+
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^a-z0-9+#]+");
+
+    // Poids de chaque catégorie de compétences dans le score local
+    private static final double TECHNICAL_WEIGHT = 0.6;
+    private static final double BEHAVIORAL_WEIGHT = 0.25;
+    private static final double CERTIFICATION_WEIGHT = 0.15;
+
+    /**
+     * Découpe un texte en tokens normalisés (minuscules, sans accents ni ponctuation)
+     *
+     * @param text Le texte à découper
+     * @return L'ensemble des tokens du texte
+     */
+    public Set<String> tokenize(String text) {
+        if (text == null || text.isBlank()) {
+            return new HashSet<>();
+        }
+        String normalized = DIACRITICS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        String[] tokens = SEPARATORS.split(normalized.toLowerCase());
+        Set<String> result = new HashSet<>(Arrays.asList(tokens));
+        result.remove("");
+        return result;
+    }
+
+    /**
+     * Calcule le score local (0-100) d'une offre pour un CV
+     *
+     * @param cvTokens Tokens du CV, obtenus avec {@link #tokenize(String)}
+     * @param offer Offre d'emploi
+     * @return Le recouvrement de compétences entre le CV et l'offre
+     */
+    public SkillOverlap evaluate(Set<String> cvTokens, JobOffer offer) {
+        List<String> matched = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+
+        double weightedScore = 0;
+        double totalWeight = 0;
+
+        double[] categoryWeights = {TECHNICAL_WEIGHT, BEHAVIORAL_WEIGHT, CERTIFICATION_WEIGHT};
+        List<Collection<String>> categories = Arrays.asList(
+                offer.getCompetencesTechniquesRequises(),
+                offer.getCompetencesComportementalesRequises(),
+                offer.getCertificationsDemandees());
+
+        for (int i = 0; i < categories.size(); i++) {
+            Collection<String> skills = categories.get(i);
+            if (skills == null || skills.isEmpty()) {
+                // Une catégorie vide ne pénalise pas l'offre : son poids est redistribué
+                continue;
+            }
+            int found = 0;
+            for (String skill : skills) {
+                if (containsSkill(cvTokens, skill)) {
+                    matched.add(skill);
+                    found++;
+                } else {
+                    missing.add(skill);
+                }
+            }
+            weightedScore += categoryWeights[i] * found / skills.size();
+            totalWeight += categoryWeights[i];
+        }
+
+        double score = totalWeight > 0 ? 100 * weightedScore / totalWeight : 0;
+        return new SkillOverlap(score, matched, missing);
+    }
+
+    /**
+     * Génère des explications à partir du recouvrement de compétences
+     *
+     * @param overlap Le recouvrement calculé pour l'offre
+     * @return Liste d'explications
+     */
+    public List<String> explain(SkillOverlap overlap) {
+        List<String> explanations = new ArrayList<>();
+        if (!overlap.matchedSkills().isEmpty()) {
+            explanations.add("Compétences du CV correspondant à l'offre : " + String.join(", ", overlap.matchedSkills()));
+        }
+        if (!overlap.missingSkills().isEmpty()) {
+            explanations.add("Compétences demandées absentes du CV : " + String.join(", ", overlap.missingSkills()));
+        }
+        if (explanations.isEmpty()) {
+            explanations.add("L'offre ne précise aucune compétence requise");
+        }
+        return explanations;
+    }
+
+    /**
+     * Vérifie si une compétence est présente dans le CV (tous ses tokens doivent y figurer)
+     */
+    private boolean containsSkill(Set<String> cvTokens, String skill) {
+        Set<String> skillTokens = tokenize(skill);
+        return !skillTokens.isEmpty() && cvTokens.containsAll(skillTokens);
+    }
+
+    /**
+     * Résultat du préfiltrage local d'une offre
+     *
+     * @param score Score local entre 0 et 100
+     * @param matchedSkills Compétences demandées présentes dans le CV
+     * @param missingSkills Compétences demandées absentes du CV
+     */
+    public record SkillOverlap(double score, List<String> matchedSkills, List<String> missingSkills) {
+    }
+}
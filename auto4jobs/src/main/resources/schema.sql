@@ -38,9 +38,46 @@ CREATE TABLE IF NOT EXISTS users (
     cv_data LONGBLOB,
     cv_content_type VARCHAR(100),
     cv_filename VARCHAR(255),
+    cv_content_hash VARCHAR(64),
     FOREIGN KEY (centre_id) REFERENCES centres(id)
 );
 
+-- Texte extrait des CV, stocké une seule fois par version de CV (empreinte SHA-256 du fichier)
+CREATE TABLE IF NOT EXISTS cv_texts (
+    content_hash VARCHAR(64) PRIMARY KEY,
+    extracted_text LONGTEXT NOT NULL,
+    extracted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Profil de compétences extrait du CV, recalculé uniquement lors du dépôt d'un nouveau CV
+CREATE TABLE IF NOT EXISTS cv_skill_profiles (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT NOT NULL UNIQUE,
+    experience TEXT,
+    education TEXT,
+    cv_upload_date BIGINT,
+    extracted_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
+
+CREATE TABLE IF NOT EXISTS cv_skill_profile_technical_skills (
+    profile_id BIGINT NOT NULL,
+    skill VARCHAR(255),
+    FOREIGN KEY (profile_id) REFERENCES cv_skill_profiles(id)
+);
+
+CREATE TABLE IF NOT EXISTS cv_skill_profile_soft_skills (
+    profile_id BIGINT NOT NULL,
+    skill VARCHAR(255),
+    FOREIGN KEY (profile_id) REFERENCES cv_skill_profiles(id)
+);
+
+CREATE TABLE IF NOT EXISTS cv_skill_profile_certifications (
+    profile_id BIGINT NOT NULL,
+    certification VARCHAR(255),
+    FOREIGN KEY (profile_id) REFERENCES cv_skill_profiles(id)
+);
+
 -- Table d'association entre utilisateurs et entreprises
 CREATE TABLE IF NOT EXISTS user_entreprises (
     user_id BIGINT NOT NULL,
@@ -99,10 +136,42 @@ CREATE TABLE IF NOT EXISTS matching_results (
     user_id BIGINT NOT NULL,
     job_offer_id BIGINT NOT NULL,
     match_score DOUBLE NOT NULL,
+    prefiltered BOOLEAN NOT NULL DEFAULT FALSE,
+    generation BIGINT,
     created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
     updated_at TIMESTAMP NULL ON UPDATE CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(id),
-    FOREIGN KEY (job_offer_id) REFERENCES job_offers(id)
+    FOREIGN KEY (job_offer_id) REFERENCES job_offers(id),
+    INDEX idx_matching_results_user_generation (user_id, generation)
+);
+
+-- Génération active des résultats de matching de chaque utilisateur. Une nouvelle génération est
+-- calculée à part puis activée en une seule mise à jour ; les anciennes sont supprimées en arrière-plan.
+CREATE TABLE IF NOT EXISTS matching_generations (
+    user_id BIGINT PRIMARY KEY,
+    active_generation BIGINT,
+    last_allocated_generation BIGINT NOT NULL,
+    updated_at TIMESTAMP NULL,
+    FOREIGN KEY (user_id) REFERENCES users(id)
+);
+
+-- Table des lots de précalcul des correspondances
+CREATE TABLE IF NOT EXISTS matching_precompute_runs (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    status VARCHAR(20) NOT NULL,
+    trigger_type VARCHAR(20) NOT NULL,
+    user_queue LONGTEXT NOT NULL,
+    next_index INT NOT NULL DEFAULT 0,
+    total_users INT NOT NULL DEFAULT 0,
+    stale_users INT NOT NULL DEFAULT 0,
+    processed_users INT NOT NULL DEFAULT 0,
+    failed_users INT NOT NULL DEFAULT 0,
+    matches_computed BIGINT NOT NULL DEFAULT 0,
+    elapsed_millis BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP NOT NULL,
+    updated_at TIMESTAMP NULL,
+    finished_at TIMESTAMP NULL,
+    error TEXT
 );
 
 -- Table des explications de matching
@@ -112,6 +181,34 @@ CREATE TABLE IF NOT EXISTS matching_explanations (
     FOREIGN KEY (matching_result_id) REFERENCES matching_results(id)
 );
 
+-- Générateur des identifiants des résultats de matching, réservés par blocs de 50 pour permettre
+-- les insertions par lots. La valeur doit dépasser d'un bloc le plus grand identifiant existant.
+CREATE TABLE IF NOT EXISTS id_generators (
+    generator_name VARCHAR(64) PRIMARY KEY,
+    next_value BIGINT NOT NULL
+);
+
+INSERT INTO id_generators (generator_name, next_value)
+SELECT 'matching_results', COALESCE(MAX(id), 0) + 51 FROM matching_results
+WHERE NOT EXISTS (SELECT 1 FROM id_generators WHERE generator_name = 'matching_results');
+
+-- Hibernate (ddl-auto=update) crée la table et y insère sa propre valeur initiale avant l'exécution de
+-- ce script : la valeur est relevée à chaque démarrage, sans jamais redescendre
+UPDATE id_generators
+SET next_value = GREATEST(next_value, (SELECT COALESCE(MAX(id), 0) + 51 FROM matching_results))
+WHERE generator_name = 'matching_results';
+
+-- Cache des réponses d'Ollama, adressé par l'empreinte SHA-256 du modèle, du prompt et des options
+CREATE TABLE IF NOT EXISTS llm_response_cache (
+    cache_key VARCHAR(64) PRIMARY KEY,
+    model VARCHAR(100) NOT NULL,
+    user_id BIGINT,
+    response LONGTEXT NOT NULL,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    INDEX idx_llm_response_cache_created_at (created_at),
+    INDEX idx_llm_response_cache_user_id (user_id)
+);
+
 -- Table des candidatures
 CREATE TABLE IF NOT EXISTS job_applications (
     id BIGINT AUTO_INCREMENT PRIMARY KEY,
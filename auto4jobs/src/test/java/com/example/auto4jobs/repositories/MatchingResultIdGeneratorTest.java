@@ -0,0 +1,82 @@
+package com.example.auto4jobs.repositories;
+
+import com.example.auto4jobs.entities.MatchingResult;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Démarrage sur une base existante, antérieure à la table id_generators : Hibernate crée la table et sa
+ * valeur initiale avant schema.sql, qui doit la relever au-dessus des identifiants existants
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=" + MatchingResultIdGeneratorTest.URL,
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.hibernate.ddl-auto=update",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.defer-datasource-initialization=true",
+        "spring.sql.init.mode=always",
+        "spring.sql.init.schema-locations=classpath:schema.sql",
+        "spring.sql.init.continue-on-error=true"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class MatchingResultIdGeneratorTest {
+
+    static final String URL = "jdbc:h2:mem:existing;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+
+    private static final long MAX_EXISTING_ID = 120;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MatchingResultRepository matchingResultRepository;
+
+    @BeforeAll
+    static void populateExistingDatabase() throws Exception {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            ScriptUtils.executeSqlScript(connection, new EncodedResource(
+                    new ClassPathResource("schema.sql")), true, true, ScriptUtils.DEFAULT_COMMENT_PREFIX,
+                    ScriptUtils.DEFAULT_STATEMENT_SEPARATOR, ScriptUtils.DEFAULT_BLOCK_COMMENT_START_DELIMITER,
+                    ScriptUtils.DEFAULT_BLOCK_COMMENT_END_DELIMITER);
+            // Base antérieure au générateur (données de test de schema.sql) : résultats existants, table id_generators absente
+            statement.execute("DROP TABLE IF EXISTS id_generators");
+            statement.execute("UPDATE job_offers SET type_contrat = 'EMPLOI_CDI'");
+            for (long id : new long[] {1, 2, MAX_EXISTING_ID}) {
+                statement.execute("INSERT INTO matching_results (id, user_id, job_offer_id, match_score) SELECT "
+                        + id + ", (SELECT MIN(id) FROM users), (SELECT MIN(id) FROM job_offers), 50");
+            }
+        }
+    }
+
+    @Test
+    void generatorIsRaisedAboveExistingIdsAtStartup() {
+        Long nextValue = jdbcTemplate.queryForObject(
+                "SELECT next_value FROM id_generators WHERE generator_name = 'matching_results'", Long.class);
+        assertEquals(MAX_EXISTING_ID + 51, nextValue);
+
+        MatchingResult existing = matchingResultRepository.findById(MAX_EXISTING_ID).orElseThrow();
+        MatchingResult result = new MatchingResult();
+        result.setUser(existing.getUser());
+        result.setJobOffer(existing.getJobOffer());
+        result.setMatchScore(75.0);
+        MatchingResult saved = matchingResultRepository.saveAndFlush(result);
+
+        assertTrue(saved.getId() > MAX_EXISTING_ID, "Identifiant déjà attribué : " + saved.getId());
+    }
+}
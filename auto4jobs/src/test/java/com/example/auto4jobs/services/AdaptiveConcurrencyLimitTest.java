@@ -0,0 +1,223 @@
+package com.example.auto4jobs.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntToLongFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private final List<LatencyCurveServer> servers = new ArrayList<>();
+
+    private final List<OllamaClient> clients = new ArrayList<>();
+
+    private final List<ExecutorService> loadGenerators = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        loadGenerators.forEach(ExecutorService::shutdownNow);
+        for (OllamaClient client : clients) {
+            client.close();
+        }
+        servers.forEach(LatencyCurveServer::stop);
+    }
+
+    @Test
+    void flatLatencyRaisesLimitUpToMaximum() throws Exception {
+        LatencyCurveServer server = startServer(active -> 20);
+        LlmDispatcher dispatcher = newDispatcher(2, 12);
+        OllamaClient client = newClient(server, dispatcher);
+
+        startLoad(client, 24);
+
+        assertTrue(waitUntil(() -> limit(dispatcher) == 12, 15000), "plafond atteint : " + limit(dispatcher));
+        assertTrue(server.maxActive.get() > 2, "appels simultanés observés : " + server.maxActive.get());
+    }
+
+    @Test
+    void queueingLatencyKeepsLimitNearServerCapacity() throws Exception {
+        // Serveur traitant 4 appels à la fois : au-delà, la durée des appels croît avec leur nombre
+        LatencyCurveServer server = startServer(active -> 60L * Math.max(4, active) / 4);
+        LlmDispatcher dispatcher = newDispatcher(2, 16);
+        OllamaClient client = newClient(server, dispatcher);
+
+        startLoad(client, 32);
+        Thread.sleep(5000);
+
+        int limit = limit(dispatcher);
+        assertTrue(limit >= 3 && limit <= 10, "plafond stabilisé à " + limit);
+        assertTrue(dispatcherStatistic(dispatcher, "decreases") > 0);
+    }
+
+    @Test
+    void latencySpikeLowersLimit() throws Exception {
+        AtomicBoolean overloaded = new AtomicBoolean();
+        LatencyCurveServer server = startServer(active -> overloaded.get() ? 150 : 20);
+        LlmDispatcher dispatcher = newDispatcher(4, 8);
+        OllamaClient client = newClient(server, dispatcher);
+
+        startLoad(client, 16);
+        assertTrue(waitUntil(() -> limit(dispatcher) == 8, 15000), "plafond atteint : " + limit(dispatcher));
+
+        overloaded.set(true);
+
+        assertTrue(waitUntil(() -> limit(dispatcher) <= 4, 15000), "plafond après le pic : " + limit(dispatcher));
+    }
+
+    @Test
+    void limitDoesNotGrowWhileItIsNotReached() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(4, 1, 16, 1.5, 0.9);
+
+        for (int i = 0; i < 100; i++) {
+            limit.record(20, 2);
+        }
+
+        assertEquals(4, limit.getLimit());
+        assertEquals(0, limit.getIncreases());
+    }
+
+    @Test
+    void fixedLimitIsKeptWhenAdaptiveLimitIsDisabled() throws Exception {
+        LatencyCurveServer server = startServer(active -> 20);
+        LlmDispatcher dispatcher = new LlmDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "adaptive", false);
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", 3);
+        dispatcher.init();
+        OllamaClient client = newClient(server, dispatcher);
+
+        startLoad(client, 12);
+        Thread.sleep(1000);
+
+        assertEquals(3, limit(dispatcher));
+        assertTrue(server.maxActive.get() <= 3, "appels simultanés observés : " + server.maxActive.get());
+    }
+
+    private int limit(LlmDispatcher dispatcher) {
+        return (Integer) dispatcher.getStatistics().get("maxConcurrentCalls");
+    }
+
+    private long dispatcherStatistic(LlmDispatcher dispatcher, String name) {
+        return (Long) ((Map<?, ?>) dispatcher.getStatistics().get("adaptiveLimit")).get(name);
+    }
+
+    private LlmDispatcher newDispatcher(int initialLimit, int maxLimit) {
+        LlmDispatcher dispatcher = new LlmDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", initialLimit);
+        ReflectionTestUtils.setField(dispatcher, "adaptiveMaxLimit", maxLimit);
+        dispatcher.init();
+        return dispatcher;
+    }
+
+    private OllamaClient newClient(LatencyCurveServer server, LlmDispatcher dispatcher) {
+        OllamaClient client = new OllamaClient();
+        ReflectionTestUtils.setField(client, "llmDispatcher", dispatcher);
+        ReflectionTestUtils.setField(client, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(client, "generateUrl", server.url("/api/generate"));
+        ReflectionTestUtils.setField(client, "embeddingsUrl", server.url("/api/embeddings"));
+        ReflectionTestUtils.setField(client, "hedgeUrl", "");
+        ReflectionTestUtils.setField(client, "maxConnections", 32);
+        client.init();
+        clients.add(client);
+        return client;
+    }
+
+    /**
+     * Lance des threads qui appellent Ollama en continu, jusqu'à la fin du test
+     */
+    private void startLoad(OllamaClient client, int threads) {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        loadGenerators.add(executor);
+        for (int i = 0; i < threads; i++) {
+            executor.submit(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null));
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        // Appel refusé ou abandonné : la charge continue
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean waitUntil(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+
+    private LatencyCurveServer startServer(IntToLongFunction latencyCurve) throws IOException {
+        LatencyCurveServer server = new LatencyCurveServer(latencyCurve);
+        servers.add(server);
+        return server;
+    }
+
+    /**
+     * Serveur Ollama factice dont la durée de réponse dépend du nombre d'appels qu'il traite simultanément
+     */
+    static class LatencyCurveServer {
+        private final HttpServer server;
+        private final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+
+        LatencyCurveServer(IntToLongFunction latencyCurve) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 64);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/api/generate", exchange -> {
+                int concurrent = active.incrementAndGet();
+                maxActive.accumulateAndGet(concurrent, Math::max);
+                try {
+                    exchange.getRequestBody().readAllBytes();
+                    Thread.sleep(latencyCurve.applyAsLong(concurrent));
+                    byte[] body = "{\"model\":\"llama3\",\"response\":\"ok\",\"done\":true}".getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (IOException e) {
+                    // Client parti (requête abandonnée)
+                } finally {
+                    active.decrementAndGet();
+                }
+            });
+            server.start();
+        }
+
+        String url(String path) {
+            return "http://localhost:" + server.getAddress().getPort() + path;
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobOfferEmbeddingIndexTest {
+
+    private static final Function<JobOffer, String> OFFER_TEXT = JobOffer::getDescriptionDetaillee;
+
+    private final CountingProvider provider = new CountingProvider();
+
+    private JobOfferEmbeddingIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new JobOfferEmbeddingIndex();
+        ReflectionTestUtils.setField(index, "embeddingProvider", provider);
+    }
+
+    @Test
+    void topNReturnsClosestOffersBySimilarity() {
+        index.refresh(List.of(
+                offer(1L, "java spring hibernate", 0),
+                offer(2L, "java spring react", 0),
+                offer(3L, "comptabilite fiscalite audit", 0),
+                offer(4L, "java", 0)), OFFER_TEXT);
+
+        List<JobOfferEmbeddingIndex.ScoredOffer> top = index.topN(index.embedQuery("java spring hibernate"), 3);
+
+        assertEquals(List.of(1L, 2L, 4L), top.stream().map(JobOfferEmbeddingIndex.ScoredOffer::offerId).toList());
+        assertEquals(1.0, top.get(0).similarity(), 1e-5);
+        assertTrue(top.get(1).similarity() > top.get(2).similarity());
+    }
+
+    @Test
+    void topNIsLimitedToIndexedOffers() {
+        index.refresh(List.of(offer(1L, "java", 0), offer(2L, "python", 0)), OFFER_TEXT);
+
+        assertEquals(2, index.topN(index.embedQuery("java"), 10).size());
+        assertTrue(index.topN(index.embedQuery("java"), 0).isEmpty());
+    }
+
+    @Test
+    void refreshEncodesOnlyNewOrModifiedOffers() {
+        index.refresh(List.of(offer(1L, "java spring", 0), offer(2L, "python django", 0)), OFFER_TEXT);
+        assertEquals(2, provider.calls.get());
+
+        // Aucun changement : aucun encodage
+        index.refresh(List.of(offer(1L, "java spring", 0), offer(2L, "python django", 0)), OFFER_TEXT);
+        assertEquals(2, provider.calls.get());
+
+        // Offre 2 modifiée, offre 3 ajoutée
+        index.refresh(List.of(offer(1L, "java spring", 0), offer(2L, "rust tokio", 1), offer(3L, "go kubernetes", 0)), OFFER_TEXT);
+        assertEquals(4, provider.calls.get());
+        assertEquals(3, index.size());
+        assertEquals(2L, index.topN(index.embedQuery("rust tokio"), 1).get(0).offerId());
+    }
+
+    @Test
+    void refreshRemovesInactiveOffers() {
+        index.refresh(List.of(offer(1L, "java spring", 0), offer(2L, "python django", 0)), OFFER_TEXT);
+
+        index.refresh(List.of(offer(1L, "java spring", 0)), OFFER_TEXT);
+
+        assertEquals(1, index.size());
+        assertEquals(List.of(1L), index.topN(index.embedQuery("python django"), 5).stream()
+                .map(JobOfferEmbeddingIndex.ScoredOffer::offerId).toList());
+    }
+
+    @Test
+    void queryWithOtherDimensionsIsRejected() {
+        index.refresh(List.of(offer(1L, "java", 0)), OFFER_TEXT);
+
+        assertThrows(IllegalArgumentException.class, () -> index.topN(new float[8], 1));
+    }
+
+    @Test
+    void searchesAreNotBlockedWhileOffersAreEncoded() throws Exception {
+        index.refresh(List.of(offer(1L, "java spring", 0)), OFFER_TEXT);
+        float[] query = index.embedQuery("java spring");
+        provider.block();
+
+        ExecutorService refreshers = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> refresh = refreshers.submit(() -> index.refresh(List.of(offer(1L, "java spring", 0), offer(2L, "python", 0)), OFFER_TEXT));
+            assertTrue(provider.blocked.await(5, TimeUnit.SECONDS));
+
+            // La recherche lit l'instantané précédent pendant que l'offre 2 est encodée
+            assertEquals(List.of(1L), index.topN(query, 5).stream().map(JobOfferEmbeddingIndex.ScoredOffer::offerId).toList());
+            // Une autre mise à jour, sans offre à encoder, n'attend pas la fin de l'encodage en cours
+            Future<?> other = refreshers.submit(() -> index.refresh(List.of(offer(1L, "java spring", 0)), OFFER_TEXT));
+            other.get(2, TimeUnit.SECONDS);
+            assertFalse(refresh.isDone());
+
+            provider.release();
+            refresh.get(5, TimeUnit.SECONDS);
+        } finally {
+            refreshers.shutdownNow();
+        }
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void concurrentRefreshesKeepEveryOffer() throws Exception {
+        List<JobOffer> offers = List.of(offer(1L, "java", 0), offer(2L, "python", 0), offer(3L, "rust", 0));
+        ExecutorService refreshers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> refreshes = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                refreshes.add(refreshers.submit(() -> index.refresh(offers, OFFER_TEXT)));
+            }
+            for (Future<?> refresh : refreshes) {
+                refresh.get(5, TimeUnit.SECONDS);
+            }
+        } finally {
+            refreshers.shutdownNow();
+        }
+
+        assertEquals(3, index.size());
+        assertEquals(3L, index.topN(index.embedQuery("rust"), 1).get(0).offerId());
+    }
+
+    private JobOffer offer(Long id, String text, long updatedAt) {
+        JobOffer offer = new JobOffer();
+        offer.setId(id);
+        offer.setDescriptionDetaillee(text);
+        offer.setUpdatedAt(new Date(updatedAt));
+        return offer;
+    }
+
+    /**
+     * Fournisseur local déterministe qui compte les encodages et peut être bloqué pendant un encodage
+     */
+    static class CountingProvider implements EmbeddingProvider {
+        private final LocalHashingEmbeddingProvider delegate = new LocalHashingEmbeddingProvider();
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        private volatile CountDownLatch gate;
+
+        CountingProvider() {
+            ReflectionTestUtils.setField(delegate, "skillOverlapPrefilter", new SkillOverlapPrefilter());
+        }
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public float[] embed(String text) {
+            CountDownLatch current = gate;
+            if (current != null && current.getCount() > 0) {
+                blocked.countDown();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            calls.incrementAndGet();
+            return delegate.embed(text);
+        }
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+    }
+}
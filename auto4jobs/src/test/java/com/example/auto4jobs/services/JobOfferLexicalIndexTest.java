@@ -0,0 +1,117 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JobOfferLexicalIndexTest {
+
+    private final JobOfferLexicalIndex index = new JobOfferLexicalIndex();
+
+    private final AtomicInteger analyzed = new AtomicInteger();
+
+    private final Function<JobOffer, String> offerText = offer -> {
+        analyzed.incrementAndGet();
+        return offer.getDescriptionDetaillee();
+    };
+
+    @Test
+    void analyzeNormalizesAndStemsTerms() {
+        assertEquals(List.of("developp", "java", "c++", "c#", "java8"),
+                index.analyze("Développeurs Java et C++ / C#, Java8"));
+        // Formes fléchies ramenées au même radical
+        assertEquals(index.analyze("développement"), index.analyze("développements"));
+        assertTrue(index.analyze("Le la des and the").isEmpty());
+        assertTrue(index.analyze(null).isEmpty());
+    }
+
+    @Test
+    void offerMatchingAllItsTermsScoresHundred() {
+        index.refresh(List.of(offer(1L, "Java Spring Hibernate", 0), offer(2L, "Comptabilité fiscalité audit", 0)), offerText);
+
+        assertEquals(100.0, index.score("Développeur Java, Spring et Hibernate", 1L), 1e-9);
+        assertEquals(0.0, index.score("Développeur Java, Spring et Hibernate", 2L), 1e-9);
+    }
+
+    @Test
+    void closerOfferScoresHigher() {
+        index.refresh(List.of(
+                offer(1L, "Java Spring Hibernate microservices", 0),
+                offer(2L, "Java comptabilité audit fiscalité", 0),
+                offer(3L, "Python Django", 0)), offerText);
+        String cv = "Cinq ans de développement Java avec Spring et Hibernate";
+
+        double close = index.score(cv, 1L);
+        double partial = index.score(cv, 2L);
+
+        assertTrue(close > partial, close + " <= " + partial);
+        assertTrue(partial > 0);
+        assertEquals(0.0, index.score(cv, 3L), 1e-9);
+    }
+
+    @Test
+    void rareTermsWeighMoreThanCommonTerms() {
+        index.refresh(List.of(
+                offer(1L, "Java Kubernetes", 0),
+                offer(2L, "Java Python", 0),
+                offer(3L, "Java React", 0)), offerText);
+
+        // Java figure dans toutes les offres : il distingue moins l'offre 1 que Kubernetes
+        assertTrue(index.score("Kubernetes", 1L) > index.score("Java", 1L));
+    }
+
+    @Test
+    void scoreOfUnknownOfferIsZero() {
+        index.refresh(List.of(offer(1L, "Java", 0)), offerText);
+
+        assertEquals(0.0, index.score("Java", 99L), 1e-9);
+    }
+
+    @Test
+    void refreshAnalyzesOnlyNewOrModifiedOffers() {
+        index.refresh(List.of(offer(1L, "Java Spring", 0), offer(2L, "Python Django", 0)), offerText);
+        assertEquals(2, analyzed.get());
+
+        index.refresh(List.of(offer(1L, "Java Spring", 0), offer(2L, "Python Django", 0)), offerText);
+        assertEquals(2, analyzed.get());
+
+        // Offre 2 modifiée, offre 1 retirée, offre 3 ajoutée
+        index.refresh(List.of(offer(2L, "Rust Tokio", 1), offer(3L, "Go Kubernetes", 0)), offerText);
+        assertEquals(4, analyzed.get());
+        assertEquals(2, index.size());
+        assertEquals(0.0, index.score("Java Spring", 1L), 1e-9);
+        assertEquals(100.0, index.score("Rust Tokio", 2L), 1e-9);
+    }
+
+    @Test
+    void ensureIndexedAddsOnlyMissingOrModifiedOffers() {
+        index.refresh(List.of(offer(1L, "Java Spring", 0)), offerText);
+
+        index.ensureIndexed(offer(2L, "Python Django", 0), "Python Django");
+        assertEquals(2, index.size());
+        assertEquals(100.0, index.score("Python Django", 2L), 1e-9);
+
+        // Offre inchangée : le texte fourni n'est pas réanalysé
+        index.ensureIndexed(offer(2L, "Rust", 0), "Rust");
+        assertEquals(0.0, index.score("Rust", 2L), 1e-9);
+
+        // Offre modifiée : réanalysée
+        index.ensureIndexed(offer(2L, "Rust", 1), "Rust");
+        assertEquals(100.0, index.score("Rust", 2L), 1e-9);
+    }
+
+    private JobOffer offer(Long id, String text, long updatedAt) {
+        JobOffer offer = new JobOffer();
+        offer.setId(id);
+        offer.setDescriptionDetaillee(text);
+        offer.setUpdatedAt(new Date(updatedAt));
+        return offer;
+    }
+}
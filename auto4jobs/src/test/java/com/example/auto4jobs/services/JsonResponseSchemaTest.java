@@ -0,0 +1,68 @@
+package com.example.auto4jobs.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonResponseSchemaTest {
+
+    private static final String COMBINED = """
+            {"type": "object",
+             "properties": {
+               "score": {"type": "integer", "minimum": 0, "maximum": 100},
+               "strengths": {"type": "array", "items": {"type": "string", "minLength": 1}, "minItems": 1, "maxItems": 3}},
+             "required": ["score", "strengths"]}
+            """;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void conformingResponseHasNoErrors() throws Exception {
+        assertTrue(validate("{\"score\": 85, \"strengths\": [\"Java\", \"Spring\"], \"extra\": true}").isEmpty());
+    }
+
+    @Test
+    void integerWithoutFractionIsAccepted() throws Exception {
+        assertTrue(validate("{\"score\": 85.0, \"strengths\": [\"Java\"]}").isEmpty());
+        assertEquals(List.of("$.score : integer attendu"), validate("{\"score\": 85.5, \"strengths\": [\"Java\"]}"));
+    }
+
+    @Test
+    void missingOrNullRequiredFieldIsReported() throws Exception {
+        assertEquals(List.of("$.score : champ obligatoire absent"), validate("{\"strengths\": [\"Java\"]}"));
+        assertEquals(List.of("$.score : champ obligatoire absent"), validate("{\"score\": null, \"strengths\": [\"Java\"]}"));
+    }
+
+    @Test
+    void wrongTypesAreReported() throws Exception {
+        assertEquals(List.of("$ : object attendu"), validate("[85]"));
+        assertEquals(List.of("$.score : integer attendu", "$.strengths : array attendu"),
+                validate("{\"score\": \"85\", \"strengths\": \"Java\"}"));
+    }
+
+    @Test
+    void boundsAreChecked() throws Exception {
+        assertEquals(List.of("$.score : valeur supérieure à 100"), validate("{\"score\": 120, \"strengths\": [\"Java\"]}"));
+        assertEquals(List.of("$.score : valeur inférieure à 0"), validate("{\"score\": -1, \"strengths\": [\"Java\"]}"));
+        assertEquals(List.of("$.strengths : au moins 1 éléments attendus"), validate("{\"score\": 50, \"strengths\": []}"));
+        assertEquals(List.of("$.strengths : au plus 3 éléments attendus"),
+                validate("{\"score\": 50, \"strengths\": [\"a\", \"b\", \"c\", \"d\"]}"));
+    }
+
+    @Test
+    void arrayItemsAreValidated() throws Exception {
+        assertEquals(List.of("$.strengths[1] : texte trop court", "$.strengths[2] : string attendu"),
+                validate("{\"score\": 50, \"strengths\": [\"Java\", \"  \", 3]}"));
+    }
+
+    private List<String> validate(String response) throws Exception {
+        JsonResponseSchema schema = new JsonResponseSchema("combined", objectMapper.readTree(COMBINED));
+        JsonNode value = objectMapper.readTree(response);
+        return schema.validate(value);
+    }
+}
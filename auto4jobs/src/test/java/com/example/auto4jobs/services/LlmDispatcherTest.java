@@ -0,0 +1,216 @@
+package com.example.auto4jobs.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LlmDispatcherTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private LlmDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        dispatcher = new LlmDispatcher();
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", 1);
+        ReflectionTestUtils.setField(dispatcher, "adaptive", false);
+        dispatcher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    void waitingCallRunsWhenPlaceIsReleased() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Future<String> first = callers.submit(() -> dispatcher.execute(() -> {
+            running.countDown();
+            await(finish);
+            return "premier";
+        }));
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        Future<String> second = callers.submit(() -> dispatcher.execute(() -> "second"));
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+
+        finish.countDown();
+
+        assertEquals("premier", first.get(5, TimeUnit.SECONDS));
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void placeGrantedToInterruptedCallIsReturned() throws Exception {
+        // Place occupée par un appel en cours
+        ReflectionTestUtils.setField(dispatcher, "inFlight", 1);
+        AtomicReference<Thread> waiter = new AtomicReference<>();
+        AtomicBoolean called = new AtomicBoolean();
+        Future<String> interrupted = callers.submit(() -> {
+            waiter.set(Thread.currentThread());
+            return dispatcher.execute(() -> {
+                called.set(true);
+                return "interrompu";
+            });
+        });
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+
+        // L'appel est interrompu, puis la place lui est attribuée avant qu'il ne reprenne le verrou
+        Object lock = ReflectionTestUtils.getField(dispatcher, "lock");
+        synchronized (lock) {
+            waiter.get().interrupt();
+            assertTrue(waitUntil(() -> waiter.get().getState() == Thread.State.BLOCKED), "l'attente doit être interrompue");
+            ReflectionTestUtils.invokeMethod(dispatcher, "release");
+        }
+
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> interrupted.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InterruptedException.class, failure.getCause());
+        assertFalse(called.get());
+        assertEquals(0, inFlight(), "la place attribuée à l'appel interrompu doit être rendue");
+        assertEquals("suivant", callers.submit(() -> dispatcher.execute(() -> "suivant")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void interruptedWaitingCallLeavesQueue() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "inFlight", 1);
+        Future<String> waiting = callers.submit(() -> dispatcher.execute(() -> "jamais"));
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+
+        waiting.cancel(true);
+
+        assertTrue(waitUntil(() -> queued() == 0), "l'appel interrompu doit quitter la file");
+        assertEquals(1, inFlight());
+    }
+
+    @Test
+    void tryAcquireNeverOvertakesWaitingCalls() throws Exception {
+        assertTrue(dispatcher.tryAcquire());
+        assertFalse(dispatcher.tryAcquire(), "plafond atteint");
+
+        Future<String> waiting = callers.submit(() -> dispatcher.execute(() -> "en attente"));
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+        // Place rendue par l'appel facultatif : attribuée à l'appel en attente, pas à un nouvel appel facultatif
+        dispatcher.release();
+
+        assertEquals("en attente", waiting.get(5, TimeUnit.SECONDS));
+        assertEquals(0, inFlight());
+        assertTrue(dispatcher.tryAcquire());
+        dispatcher.release();
+    }
+
+    @Test
+    void tryAcquireIsRefusedWhileCallsAreQueued() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", 2);
+        ReflectionTestUtils.setField(dispatcher, "inFlight", 2);
+        Future<String> waiting = callers.submit(() -> dispatcher.execute(() -> "en attente"));
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+        // Le plafond augmente : la place libérée revient à l'appel en file, jamais à un appel facultatif
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", 3);
+
+        assertFalse(dispatcher.tryAcquire());
+
+        waiting.cancel(true);
+    }
+
+    @Test
+    void raisedLimitServesWaitingCallsBeforeNewcomers() throws Exception {
+        ReflectionTestUtils.setField(dispatcher, "inFlight", 1);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        Future<String> waiting = callers.submit(() -> dispatcher.execute(() -> {
+            running.countDown();
+            await(finish);
+            return "en attente";
+        }));
+        assertTrue(waitUntil(() -> queued() == 1), "l'appel doit attendre une place");
+
+        // Plafond relevé : la place libre revient à l'appel interactif en attente, pas au précalcul qui arrive
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", 2);
+        Future<String> newcomer = callers.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, 2L).open()) {
+                return dispatcher.execute(() -> "précalcul");
+            }
+        });
+
+        assertTrue(running.await(5, TimeUnit.SECONDS), "l'appel en attente doit être servi en premier");
+        assertTrue(waitUntil(() -> backgroundQueued() == 1), "le nouvel appel doit attendre son tour");
+        assertFalse(newcomer.isDone());
+
+        finish.countDown();
+        assertEquals("en attente", waiting.get(5, TimeUnit.SECONDS));
+        assertEquals("précalcul", newcomer.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void measuredLatencyIsRecordedByAdaptiveLimit() throws Exception {
+        LlmDispatcher adaptive = new LlmDispatcher();
+        ReflectionTestUtils.setField(adaptive, "maxConcurrentCalls", 1);
+        adaptive.init();
+
+        // Appels immédiats, mais dont le serveur choisi a répondu en 500 ms (réponse du serveur de secours)
+        for (int i = 0; i < 5; i++) {
+            adaptive.executeMeasured(latency -> {
+                latency.record(500, true);
+                return "secours";
+            });
+        }
+
+        Map<String, Object> statistics = (Map<String, Object>) adaptive.getStatistics().get("adaptiveLimit");
+        assertEquals(500L, statistics.get("lastWindowMillis"));
+    }
+
+    private int inFlight() {
+        return (Integer) dispatcher.getStatistics().get("inFlight");
+    }
+
+    @SuppressWarnings("unchecked")
+    private int queued() {
+        return (Integer) ((Map<String, Object>) dispatcher.getStatistics().get("interactive")).get("queued");
+    }
+
+    @SuppressWarnings("unchecked")
+    private int backgroundQueued() {
+        return (Integer) ((Map<String, Object>) dispatcher.getStatistics().get("background")).get("queued");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.LlmResponseCacheEntry;
+import com.example.auto4jobs.repositories.LlmResponseCacheRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LlmResponseCacheTest {
+
+    private final LlmResponseCacheRepository cacheRepository = mock(LlmResponseCacheRepository.class);
+
+    private LlmResponseCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new LlmResponseCache();
+        ReflectionTestUtils.setField(cache, "cacheRepository", cacheRepository);
+        ReflectionTestUtils.setField(cache, "objectMapper", new ObjectMapper());
+        when(cacheRepository.findById(anyString())).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void entryRecordsUserOfRequestContext() {
+        try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.INTERACTIVE, 1L).open()) {
+            cache.put(key("cv-1"), "llama3", "82");
+        }
+        cache.put(key("anonyme"), "llama3", "40");
+
+        ArgumentCaptor<LlmResponseCacheEntry> entries = ArgumentCaptor.forClass(LlmResponseCacheEntry.class);
+        verify(cacheRepository, times(2)).save(entries.capture());
+        assertEquals(1L, entries.getAllValues().get(0).getUserId());
+        assertNull(entries.getAllValues().get(1).getUserId());
+    }
+
+    @Test
+    void evictedUserEntriesAreRemovedFromBothTiers() {
+        try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.INTERACTIVE, 1L).open()) {
+            cache.put(key("cv-1"), "llama3", "82");
+        }
+        try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.INTERACTIVE, 2L).open()) {
+            cache.put(key("cv-2"), "llama3", "67");
+        }
+        when(cacheRepository.deleteByUserId(1L)).thenReturn(1);
+
+        assertEquals(1, cache.evictUser(1L));
+
+        verify(cacheRepository).deleteByUserId(1L);
+        // L'entrée de l'utilisateur n'est plus servie par le niveau mémoire, celle d'un autre utilisateur l'est toujours
+        assertEquals(Optional.empty(), cache.get(key("cv-1")));
+        assertEquals(Optional.of("67"), cache.get(key("cv-2")));
+        assertEquals(1, cache.getStatistics().get("memoryEntries"));
+    }
+
+    @Test
+    void entryReloadedFromDatabaseKeepsItsUser() {
+        LlmResponseCacheEntry stored = new LlmResponseCacheEntry(key("cv-1"), "llama3", 1L, "82", LocalDateTime.now());
+        when(cacheRepository.findById(key("cv-1"))).thenReturn(Optional.of(stored));
+        assertEquals(Optional.of("82"), cache.get(key("cv-1")));
+
+        cache.evictUser(1L);
+
+        assertEquals(0, cache.getStatistics().get("memoryEntries"));
+    }
+
+    private String key(String prompt) {
+        return cache.computeKey("llama3", prompt, Map.of());
+    }
+}
@@ -0,0 +1,252 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.Entreprise;
+import com.example.auto4jobs.entities.JobOffer;
+import com.example.auto4jobs.entities.MatchingResult;
+import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.repositories.EntrepriseRepository;
+import com.example.auto4jobs.repositories.JobOfferRepository;
+import com.example.auto4jobs.repositories.MatchingResultRepository;
+import com.example.auto4jobs.repositories.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Attribution, activation et suppression des générations, sur une base H2 : chaque appel s'exécute dans
+ * ses propres transactions, comme en production, pour que le nettoyage après commit soit déclenché
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.sql.init.mode=never"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({MatchingGenerationService.class, MatchingGenerationServiceTest.CleanupExecutorConfig.class})
+class MatchingGenerationServiceTest {
+
+    @Autowired
+    private MatchingGenerationService matchingGenerationService;
+
+    @Autowired
+    private MatchingResultRepository matchingResultRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private EntrepriseRepository entrepriseRepository;
+
+    @Autowired
+    private JobOfferRepository jobOfferRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    @Qualifier("matchingCleanupExecutor")
+    private ExecutorService cleanupExecutor;
+
+    private User user;
+
+    private JobOffer offer;
+
+    @BeforeEach
+    void setUp() {
+        Entreprise entreprise = new Entreprise();
+        entreprise.setNom("TechCorp");
+        entrepriseRepository.save(entreprise);
+        user = userRepository.save(user("alice@example.com"));
+
+        offer = new JobOffer();
+        offer.setTitrePoste("Développeur Java");
+        offer.setEntreprise(entreprise);
+        offer.setLocalisation("Casablanca");
+        offer.setDescriptionDetaillee("Java Spring");
+        offer.setTypeContrat(JobOffer.ContractType.EMPLOI_CDI);
+        offer.setRecruiter(user);
+        offer = jobOfferRepository.save(offer);
+    }
+
+    @AfterEach
+    void tearDown() {
+        for (String table : List.of("matching_explanations", "matching_results", "matching_generations",
+                "job_offer_competences_techniques", "job_offer_competences_comportementales",
+                "job_offer_certifications", "job_offers", "user_entreprises", "users", "entreprises")) {
+            jdbcTemplate.update("DELETE FROM " + table);
+        }
+    }
+
+    @Test
+    void allocatedGenerationsIncreasePerUser() {
+        User other = userRepository.save(user("bob@example.com"));
+
+        assertEquals(1, matchingGenerationService.allocateGeneration(user.getId()));
+        assertEquals(2, matchingGenerationService.allocateGeneration(user.getId()));
+        assertEquals(1, matchingGenerationService.allocateGeneration(other.getId()));
+        assertEquals(3, matchingGenerationService.allocateGeneration(user.getId()));
+        // Une génération attribuée n'est pas visible avant son activation
+        assertNull(matchingGenerationService.getActiveGeneration(user.getId()));
+    }
+
+    @Test
+    void concurrentAllocationsNeverShareGeneration() throws Exception {
+        ExecutorService allocators = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> allocations = new ArrayList<>();
+            Callable<Long> allocate = () -> matchingGenerationService.allocateGeneration(user.getId());
+            for (int i = 0; i < 20; i++) {
+                allocations.add(allocators.submit(allocate));
+            }
+            Set<Long> generations = new HashSet<>();
+            for (Future<Long> allocation : allocations) {
+                generations.add(allocation.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(20, generations.size(), "Deux calculs ont reçu la même génération");
+        } finally {
+            allocators.shutdownNow();
+        }
+    }
+
+    @Test
+    void generationIsInitializedInAllocationTransaction() {
+        long first = matchingGenerationService.allocateGeneration(user.getId(), generation -> saveResult(generation));
+
+        // Une initialisation qui échoue annule aussi l'attribution du numéro
+        assertThrows(IllegalStateException.class, () -> matchingGenerationService.allocateGeneration(user.getId(), generation -> {
+            saveResult(generation);
+            throw new IllegalStateException("échec de l'initialisation");
+        }));
+
+        assertEquals(List.of(first), generations(matchingResultRepository.findAll()));
+        assertEquals(first + 1, matchingGenerationService.allocateGeneration(user.getId()));
+    }
+
+    @Test
+    void olderGenerationIsNeverActivated() {
+        long first = matchingGenerationService.allocateGeneration(user.getId());
+        long second = matchingGenerationService.allocateGeneration(user.getId());
+
+        assertTrue(matchingGenerationService.activate(user.getId(), second));
+        // Calcul plus ancien terminé après le plus récent : il ne remplace pas les résultats affichés
+        assertFalse(matchingGenerationService.activate(user.getId(), first));
+
+        assertEquals(second, matchingGenerationService.getActiveGeneration(user.getId()));
+    }
+
+    @Test
+    void activationWithoutAllocationIsRefused() {
+        assertFalse(matchingGenerationService.activate(user.getId(), 1));
+        assertNull(matchingGenerationService.getActiveGeneration(user.getId()));
+    }
+
+    @Test
+    void activeResultsFollowActivatedGeneration() {
+        saveResult(null);
+        long generation = matchingGenerationService.allocateGeneration(user.getId());
+        saveResult(generation);
+
+        // Avant toute activation, seuls les résultats antérieurs aux générations sont visibles
+        assertEquals(Collections.singletonList(null), generations(matchingGenerationService.findActiveResults(user)));
+
+        matchingGenerationService.activate(user.getId(), generation);
+
+        assertEquals(List.of(generation), generations(matchingGenerationService.findActiveResults(user)));
+    }
+
+    @Test
+    void activationDeletesOlderGenerationsAfterCommit() throws Exception {
+        saveResult(null);
+        long first = matchingGenerationService.allocateGeneration(user.getId());
+        saveResult(first);
+        long second = matchingGenerationService.allocateGeneration(user.getId());
+        saveResult(second);
+        long inProgress = matchingGenerationService.allocateGeneration(user.getId());
+        saveResult(inProgress);
+
+        matchingGenerationService.activate(user.getId(), second);
+        awaitCleanup();
+
+        // La génération en cours de calcul, plus récente que la génération active, est conservée
+        Set<Long> remaining = new HashSet<>(generations(matchingResultRepository.findAll()));
+        assertEquals(Set.of(second, inProgress), remaining);
+    }
+
+    @Test
+    void successiveActivationsLeaveOnlyNewestGeneration() throws Exception {
+        long last = 0;
+        for (int i = 0; i < 5; i++) {
+            last = matchingGenerationService.allocateGeneration(user.getId());
+            saveResult(last);
+            matchingGenerationService.activate(user.getId(), last);
+        }
+        awaitCleanup();
+
+        assertEquals(List.of(last), generations(matchingResultRepository.findAll()));
+    }
+
+    private void saveResult(Long generation) {
+        MatchingResult result = new MatchingResult();
+        result.setUser(user);
+        result.setJobOffer(offer);
+        result.setMatchScore(50.0);
+        result.setGeneration(generation);
+        matchingResultRepository.save(result);
+    }
+
+    private List<Long> generations(List<MatchingResult> results) {
+        return results.stream().map(MatchingResult::getGeneration).toList();
+    }
+
+    /**
+     * Attend la fin des tâches de nettoyage déjà soumises (pool d'un seul thread)
+     */
+    private void awaitCleanup() throws Exception {
+        cleanupExecutor.submit(() -> { }).get(10, TimeUnit.SECONDS);
+    }
+
+    private User user(String email) {
+        User user = new User();
+        user.setFirstName("Alice");
+        user.setLastName("Martin");
+        user.setEmail(email);
+        user.setPassword("secret");
+        user.setRole("APPRENANT");
+        return user;
+    }
+
+    @TestConfiguration
+    static class CleanupExecutorConfig {
+
+        @Bean(name = "matchingCleanupExecutor", destroyMethod = "shutdownNow")
+        ExecutorService matchingCleanupExecutor() {
+            return Executors.newSingleThreadExecutor();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.events.JobOfferChangedEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class MatchingJobServiceTest {
+
+    private final OllamaMatchingService matchingService = mock(OllamaMatchingService.class);
+
+    private final ExecutorService matchingJobExecutor = mock(ExecutorService.class);
+
+    private final ExecutorService precomputeExecutor = Executors.newSingleThreadExecutor();
+
+    private MatchingJobService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new MatchingJobService();
+        ReflectionTestUtils.setField(service, "matchingService", matchingService);
+        ReflectionTestUtils.setField(service, "matchingJobExecutor", matchingJobExecutor);
+        ReflectionTestUtils.setField(service, "precomputeExecutor", precomputeExecutor);
+    }
+
+    @AfterEach
+    void tearDown() {
+        precomputeExecutor.shutdownNow();
+    }
+
+    @Test
+    void changedOfferIsRescoredOutsideJobPoolAtBackgroundPriority() throws Exception {
+        LlmPriority[] priority = new LlmPriority[1];
+        when(matchingService.rescoreOffer(20L)).thenAnswer(invocation -> {
+            priority[0] = LlmRequestContext.current().priority();
+            return 1;
+        });
+
+        service.onJobOfferChanged(new JobOfferChangedEvent(20L));
+        awaitPrecompute();
+
+        verify(matchingService).rescoreOffer(20L);
+        assertEquals(LlmPriority.BACKGROUND, priority[0]);
+        // Le pool des tâches et des flux interactifs n'est pas occupé par la réévaluation
+        verifyNoInteractions(matchingJobExecutor);
+    }
+
+    @Test
+    void repeatedChangesOfQueuedOfferAreRescoredOnce() throws Exception {
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        precomputeExecutor.execute(() -> {
+            running.countDown();
+            try {
+                finish.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+
+        // Offre modifiée trois fois pendant un lot de précalcul
+        for (int i = 0; i < 3; i++) {
+            service.onJobOfferChanged(new JobOfferChangedEvent(20L));
+        }
+        finish.countDown();
+        awaitPrecompute();
+        verify(matchingService, times(1)).rescoreOffer(20L);
+
+        // Une modification ultérieure est de nouveau réévaluée
+        service.onJobOfferChanged(new JobOfferChangedEvent(20L));
+        awaitPrecompute();
+        verify(matchingService, times(2)).rescoreOffer(20L);
+    }
+
+    /**
+     * Attend la fin des tâches déjà soumises au thread du précalcul
+     */
+    private void awaitPrecompute() throws Exception {
+        precomputeExecutor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+    }
+}
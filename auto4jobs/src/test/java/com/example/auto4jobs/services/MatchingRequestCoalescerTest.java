@@ -0,0 +1,309 @@
+package com.example.auto4jobs.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class MatchingRequestCoalescerTest {
+
+    private static final List<Map<String, Object>> RESULTS = List.of(result(10L), result(11L));
+
+    private final OllamaMatchingService matchingService = mock(OllamaMatchingService.class);
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch finish = new CountDownLatch(1);
+
+    private MatchingRequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        coalescer = new MatchingRequestCoalescer();
+        ReflectionTestUtils.setField(coalescer, "matchingService", matchingService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        finish.countDown();
+        callers.shutdownNow();
+    }
+
+    @Test
+    void concurrentRequestsShareOneComputation() throws Exception {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            finish.await();
+            return RESULTS;
+        });
+
+        Future<List<Map<String, Object>>> first = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<Map<String, Object>>> second = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(waitUntil(() -> coalesced() == 1), "la seconde demande doit rejoindre le calcul en cours");
+        finish.countDown();
+
+        List<Map<String, Object>> firstResults = first.get(5, TimeUnit.SECONDS);
+        List<Map<String, Object>> secondResults = second.get(5, TimeUnit.SECONDS);
+        assertEquals(RESULTS, firstResults);
+        assertEquals(RESULTS, secondResults);
+        // Chaque demande reçoit sa propre liste
+        assertNotSame(firstResults, secondResults);
+        verify(matchingService, times(1)).matchJobOffersForUser(anyLong(), any());
+        assertEquals(0, coalescer.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void forcedRecomputationDoesNotJoinRunningMatching() throws Exception {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            finish.await();
+            return RESULTS;
+        });
+        when(matchingService.forceMatchJobOffersForUser(anyLong(), any())).thenReturn(RESULTS);
+
+        Future<List<Map<String, Object>>> first = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // Le matching en cours réutilise des résultats récents : le recalcul lance son propre calcul
+        assertEquals(RESULTS, coalescer.forceMatchJobOffersForUser(1L));
+        verify(matchingService).forceMatchJobOffersForUser(anyLong(), any());
+        assertEquals(0L, coalesced());
+
+        finish.countDown();
+        assertEquals(RESULTS, first.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void interactiveRequestDoesNotWaitForBackgroundMatching() throws Exception {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            if (LlmRequestContext.current().priority() == LlmPriority.BACKGROUND) {
+                started.countDown();
+                finish.await();
+            }
+            return RESULTS;
+        });
+
+        Future<List<Map<String, Object>>> background = callers.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, 1L).open()) {
+                return coalescer.matchJobOffersForUser(1L);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        // La consultation n'attend pas le précalcul : ses appels à Ollama gardent la priorité interactive
+        Future<List<Map<String, Object>>> interactive = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertEquals(RESULTS, interactive.get(5, TimeUnit.SECONDS));
+        assertEquals(0L, coalesced());
+        verify(matchingService, times(2)).matchJobOffersForUser(anyLong(), any());
+
+        finish.countDown();
+        assertEquals(RESULTS, background.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lowerPriorityRequestJoinsRunningMatching() throws Exception {
+        when(matchingService.forceMatchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            finish.await();
+            return RESULTS;
+        });
+
+        Future<List<Map<String, Object>>> refresh = callers.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.REFRESH, 1L).open()) {
+                return coalescer.forceMatchJobOffersForUser(1L);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<Map<String, Object>>> background = callers.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, 1L).open()) {
+                return coalescer.matchJobOffersForUser(1L);
+            }
+        });
+        assertTrue(waitUntil(() -> coalesced() == 1), "le précalcul doit rejoindre le recalcul en cours");
+        finish.countDown();
+
+        assertEquals(RESULTS, background.get(5, TimeUnit.SECONDS));
+        assertEquals(RESULTS, refresh.get(5, TimeUnit.SECONDS));
+        verify(matchingService, never()).matchJobOffersForUser(anyLong(), any());
+    }
+
+    @Test
+    void requestAfterBypassJoinsNewestMatching() throws Exception {
+        CountDownLatch interactiveStarted = new CountDownLatch(1);
+        CountDownLatch interactiveFinish = new CountDownLatch(1);
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            if (LlmRequestContext.current().priority() == LlmPriority.BACKGROUND) {
+                started.countDown();
+                finish.await();
+            } else {
+                interactiveStarted.countDown();
+                interactiveFinish.await();
+            }
+            return RESULTS;
+        });
+
+        Future<List<Map<String, Object>>> background = callers.submit(() -> {
+            try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, 1L).open()) {
+                return coalescer.matchJobOffersForUser(1L);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<Map<String, Object>>> interactive = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(interactiveStarted.await(5, TimeUnit.SECONDS));
+
+        // Une nouvelle consultation rejoint le calcul interactif, et non le précalcul qu'il a remplacé
+        Future<List<Map<String, Object>>> next = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(waitUntil(() -> coalesced() == 1), "la consultation doit rejoindre le calcul interactif");
+        interactiveFinish.countDown();
+        assertEquals(RESULTS, next.get(5, TimeUnit.SECONDS));
+        assertEquals(RESULTS, interactive.get(5, TimeUnit.SECONDS));
+
+        // Le précalcul remplacé se termine sans retirer le calcul plus récent
+        finish.countDown();
+        assertEquals(RESULTS, background.get(5, TimeUnit.SECONDS));
+        assertEquals(0, coalescer.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void lateRequestReceivesProgressAlreadyEmitted() throws Exception {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            MatchingProgressListener listener = invocation.getArgument(1);
+            listener.onStart(2);
+            listener.onOfferScored(RESULTS.get(0));
+            started.countDown();
+            finish.await();
+            listener.onOfferScored(RESULTS.get(1));
+            return RESULTS;
+        });
+        RecordingListener late = new RecordingListener();
+
+        Future<List<Map<String, Object>>> first = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<Map<String, Object>>> second = callers.submit(() -> coalescer.matchJobOffersForUser(1L, late));
+        // Événements déjà émis retransmis dès que la demande rejoint le calcul
+        assertTrue(waitUntil(() -> late.events.size() == 2), "événements reçus : " + late.events);
+        finish.countDown();
+
+        second.get(5, TimeUnit.SECONDS);
+        first.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of("start:2", "offer:10", "offer:11"), late.events);
+    }
+
+    @Test
+    void failureIsPropagatedToEveryWaitingRequest() throws Exception {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            started.countDown();
+            finish.await();
+            throw new IllegalStateException("CV illisible");
+        });
+
+        Future<List<Map<String, Object>>> first = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Future<List<Map<String, Object>>> second = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        assertTrue(waitUntil(() -> coalesced() == 1), "la seconde demande doit rejoindre le calcul en cours");
+        finish.countDown();
+
+        for (Future<List<Map<String, Object>>> request : List.of(first, second)) {
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> request.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, failure.getCause());
+            assertEquals("CV illisible", failure.getCause().getMessage());
+        }
+        // Le calcul échoué n'est plus en cours : une nouvelle demande relancera le matching
+        assertEquals(0, coalescer.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void requestsOfDifferentUsersAreNotCoalesced() throws Exception {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenAnswer(invocation -> {
+            bothStarted.countDown();
+            finish.await();
+            return RESULTS;
+        });
+
+        Future<List<Map<String, Object>>> first = callers.submit(() -> coalescer.matchJobOffersForUser(1L));
+        Future<List<Map<String, Object>>> second = callers.submit(() -> coalescer.matchJobOffersForUser(2L));
+        assertTrue(bothStarted.await(5, TimeUnit.SECONDS), "chaque utilisateur doit avoir son propre calcul");
+        finish.countDown();
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2L, coalescer.getStatistics().get("startedComputations"));
+        assertEquals(0L, coalescer.getStatistics().get("coalescedRequests"));
+    }
+
+    @Test
+    void sequentialRequestsEachStartComputation() {
+        when(matchingService.matchJobOffersForUser(anyLong(), any())).thenReturn(RESULTS);
+
+        coalescer.matchJobOffersForUser(1L);
+        coalescer.matchJobOffersForUser(1L);
+
+        verify(matchingService, times(2)).matchJobOffersForUser(anyLong(), any());
+    }
+
+    private long coalesced() {
+        return (Long) coalescer.getStatistics().get("coalescedRequests");
+    }
+
+    private static Map<String, Object> result(Long offerId) {
+        return Map.of("jobOffer", Map.of("id", offerId), "matchScore", 50.0);
+    }
+
+    private static boolean waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(10);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * Listener qui enregistre les événements reçus
+     */
+    private static class RecordingListener implements MatchingProgressListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public void onStart(int totalOffers) {
+            events.add("start:" + totalOffers);
+        }
+
+        @Override
+        public void onOfferScored(Map<String, Object> result) {
+            events.add("offer:" + ((Map<?, ?>) result.get("jobOffer")).get("id"));
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.Entreprise;
+import com.example.auto4jobs.entities.JobOffer;
+import com.example.auto4jobs.entities.MatchingResult;
+import com.example.auto4jobs.entities.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest(properties = {
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.sql.init.mode=never"
+})
+@Import(MatchingResultWriter.class)
+class MatchingResultWriterTest {
+
+    private static final int RESULTS = 120;
+
+    @Autowired
+    private MatchingResultWriter matchingResultWriter;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private User user;
+
+    private JobOffer offer;
+
+    @BeforeEach
+    void setUp() {
+        Entreprise entreprise = new Entreprise();
+        entreprise.setNom("TechCorp");
+        entityManager.persist(entreprise);
+
+        user = new User();
+        user.setFirstName("Alice");
+        user.setLastName("Martin");
+        user.setEmail("alice@example.com");
+        user.setPassword("secret");
+        user.setRole("APPRENANT");
+        entityManager.persist(user);
+
+        offer = new JobOffer();
+        offer.setTitrePoste("Développeur Java");
+        offer.setEntreprise(entreprise);
+        offer.setLocalisation("Casablanca");
+        offer.setDescriptionDetaillee("Java Spring");
+        offer.setTypeContrat(JobOffer.ContractType.EMPLOI_CDI);
+        offer.setRecruiter(user);
+        entityManager.persist(offer);
+        entityManager.flush();
+    }
+
+    @Test
+    void saveAllInsertsResultsAndExplanationsInBatches() {
+        List<MatchingResult> results = new ArrayList<>();
+        for (int i = 0; i < RESULTS; i++) {
+            results.add(result(i, List.of("Compétence Java", "Expérience Spring")));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<MatchingResult> saved = matchingResultWriter.saveAll(results);
+
+        Set<Long> ids = new HashSet<>();
+        saved.forEach(result -> ids.add(result.getId()));
+        assertEquals(RESULTS, ids.size(), "Chaque résultat doit recevoir un identifiant distinct");
+        assertEquals(RESULTS, count("matching_results"));
+        assertEquals(2 * RESULTS, count("matching_explanations"));
+        // Une requête préparée par lot et par table (et par bloc d'identifiants), et non une par ligne
+        assertTrue(statistics.getPrepareStatementCount() < 30,
+                "Insertions non regroupées : " + statistics.getPrepareStatementCount() + " requêtes préparées");
+    }
+
+    @Test
+    void persistAssignsIdBeforeFlush() {
+        MatchingResult result = matchingResultWriter.persist(result(0, List.of()));
+
+        // Identifiant réservé dans le bloc courant, insertion différée jusqu'au flush
+        assertNotNull(result.getId());
+        assertEquals(0, count("matching_results"));
+
+        matchingResultWriter.flush();
+
+        assertEquals(1, count("matching_results"));
+    }
+
+    @Test
+    void saveAllWithoutResultsIsNoOp() {
+        assertTrue(matchingResultWriter.saveAll(List.of()).isEmpty());
+        assertEquals(0, count("matching_results"));
+    }
+
+    private MatchingResult result(int index, List<String> explanations) {
+        MatchingResult result = new MatchingResult();
+        result.setUser(user);
+        result.setJobOffer(offer);
+        result.setMatchScore((double) index);
+        result.setGeneration(1L);
+        result.setMatchExplanations(new ArrayList<>(explanations));
+        return result;
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,383 @@
+package com.example.auto4jobs.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OllamaClientTest {
+
+    private final List<FakeOllamaServer> servers = new ArrayList<>();
+
+    private final List<OllamaClient> clients = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (OllamaClient client : clients) {
+            client.close();
+        }
+        servers.forEach(FakeOllamaServer::stop);
+    }
+
+    @Test
+    void generateReturnsTypedResponse() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        OllamaClient client = newClient(server, null);
+
+        OllamaClient.GenerateResponse response = client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null));
+
+        assertEquals("principal", response.response());
+        assertEquals(1, server.calls.get());
+    }
+
+    @Test
+    void circuitOpensAfterConsecutiveFailuresAndFailsFast() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        server.status = 500;
+        OllamaClient client = newClient(server, null, c -> ReflectionTestUtils.setField(c, "failureThreshold", 3));
+
+        for (int i = 0; i < 3; i++) {
+            assertThrows(IOException.class, () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+        }
+        assertThrows(OllamaUnavailableException.class,
+                () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+
+        assertEquals(3, server.calls.get());
+        assertFalse(client.isAvailable());
+    }
+
+    @Test
+    void halfOpenProbeClosesCircuitOnceServerRecovers() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        server.status = 500;
+        OllamaClient client = newClient(server, null, c -> {
+            ReflectionTestUtils.setField(c, "failureThreshold", 1);
+            ReflectionTestUtils.setField(c, "openDurationMillis", 200L);
+        });
+
+        assertThrows(IOException.class, () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+        assertThrows(OllamaUnavailableException.class,
+                () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+
+        server.status = 200;
+        Thread.sleep(300);
+
+        assertEquals("principal", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        assertEquals("principal", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        assertEquals(3, server.calls.get());
+    }
+
+    @Test
+    void clientErrorsDoNotOpenCircuit() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        server.status = 404;
+        OllamaClient client = newClient(server, null, c -> ReflectionTestUtils.setField(c, "failureThreshold", 1));
+
+        assertThrows(IOException.class, () -> client.generate(OllamaClient.GenerateRequest.of("inconnu", "prompt", null)));
+        assertTrue(client.isAvailable());
+    }
+
+    @Test
+    void slowCallIsHedgedToSecondServer() throws Exception {
+        FakeOllamaServer primary = startServer("principal");
+        primary.delayMillis = 3000;
+        FakeOllamaServer hedge = startServer("secours");
+        OllamaClient client = newClient(primary, hedge);
+
+        long start = System.nanoTime();
+        OllamaClient.GenerateResponse response = client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertEquals("secours", response.response());
+        assertTrue(elapsedMillis < 2000, "réponse obtenue en " + elapsedMillis + " ms");
+        assertEquals(1L, ((Map<?, ?>) client.getStatistics()).get("hedgeWins"));
+    }
+
+    @Test
+    void fastCallIsNotHedged() throws Exception {
+        FakeOllamaServer primary = startServer("principal");
+        FakeOllamaServer hedge = startServer("secours");
+        OllamaClient client = newClient(primary, hedge);
+
+        assertEquals("principal", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        assertEquals(0, hedge.calls.get());
+    }
+
+    @Test
+    void slowCallIsNotHedgedWithoutFreePlace() throws Exception {
+        FakeOllamaServer primary = startServer("principal");
+        primary.delayMillis = 800;
+        FakeOllamaServer hedge = startServer("secours");
+        OllamaClient client = newClient(primary, hedge, c -> limitDispatcher(c, 1));
+
+        // Une seule place, occupée par l'appel principal : la réémission n'a pas lieu
+        assertEquals("principal", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        assertEquals(0, hedge.calls.get());
+        assertEquals(0L, ((Map<?, ?>) client.getStatistics()).get("hedgedCalls"));
+    }
+
+    @Test
+    void hedgedCallHoldsDispatcherPlaceUntilItEnds() throws Exception {
+        FakeOllamaServer primary = startServer("principal");
+        primary.delayMillis = 3000;
+        FakeOllamaServer hedge = startServer("secours");
+        hedge.delayMillis = 1000;
+        OllamaClient client = newClient(primary, hedge, c -> limitDispatcher(c, 2));
+        LlmDispatcher dispatcher = (LlmDispatcher) ReflectionTestUtils.getField(client, "llmDispatcher");
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<OllamaClient.GenerateResponse> call = caller.submit(
+                    () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+            assertTrue(waitUntil(() -> hedge.calls.get() == 1, 5000), "la requête doit être réémise");
+            // Appel principal et appel couvert occupent chacun une place
+            assertEquals(2, dispatcher.getStatistics().get("inFlight"));
+
+            assertEquals("secours", call.get(5, TimeUnit.SECONDS).response());
+        } finally {
+            caller.shutdownNow();
+        }
+        assertTrue(waitUntil(() -> (Integer) dispatcher.getStatistics().get("inFlight") == 0, 5000),
+                "places non rendues : " + dispatcher.getStatistics().get("inFlight"));
+    }
+
+    @Test
+    void failedCallFailsOverToSecondServer() throws Exception {
+        FakeOllamaServer primary = startServer("principal");
+        primary.status = 503;
+        FakeOllamaServer hedge = startServer("secours");
+        OllamaClient client = newClient(primary, hedge);
+
+        assertEquals("secours", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+    }
+
+    @Test
+    void hungServerIsAbandonedAfterTotalTimeout() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        server.delayMillis = 10_000;
+        OllamaClient client = newClient(server, null, c -> ReflectionTestUtils.setField(c, "totalTimeoutSeconds", 1L));
+
+        long start = System.nanoTime();
+        assertThrows(IOException.class, () -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(elapsedMillis < 5000, "appel abandonné après " + elapsedMillis + " ms");
+    }
+
+    @Test
+    void interruptedCallerAbortsBlockedRequest() throws Exception {
+        FakeOllamaServer server = startServer("principal");
+        server.delayMillis = 10_000;
+        OllamaClient client = newClient(server, null);
+
+        ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> call = caller.submit(() -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)));
+            Thread.sleep(300);
+            long start = System.nanoTime();
+            call.cancel(true);
+            caller.shutdown();
+
+            assertTrue(caller.awaitTermination(2, TimeUnit.SECONDS), "thread appelant toujours bloqué");
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(elapsedMillis < 1000, "appel abandonné après " + elapsedMillis + " ms");
+        } finally {
+            caller.shutdownNow();
+        }
+        assertTrue(client.isAvailable());
+    }
+
+    @Test
+    void concurrentCallsAreSpreadOverLeastLoadedBackends() throws Exception {
+        List<FakeOllamaServer> pool = List.of(startServer("a"), startServer("b"), startServer("c"));
+        pool.forEach(server -> server.delayMillis = 500);
+        OllamaClient client = newPoolClient(pool, c -> { });
+
+        ExecutorService callers = Executors.newFixedThreadPool(6);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int i = 0; i < 6; i++) {
+                calls.add(callers.submit(() -> client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null))));
+            }
+            for (Future<?> call : calls) {
+                call.get();
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+
+        pool.forEach(server -> assertEquals(2, server.calls.get(), "appels reçus par un serveur"));
+    }
+
+    @Test
+    void callsOfSameUserStayOnOneBackend() throws Exception {
+        List<FakeOllamaServer> pool = List.of(startServer("a"), startServer("b"), startServer("c"));
+        OllamaClient client = newPoolClient(pool, c -> { });
+
+        Set<String> responses = new HashSet<>();
+        try (LlmRequestContext.Scope scope = LlmRequestContext.of(LlmPriority.BACKGROUND, 42L).open()) {
+            for (int i = 0; i < 10; i++) {
+                responses.add(client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+            }
+        }
+
+        assertEquals(1, responses.size(), "serveurs appelés : " + responses);
+    }
+
+    @Test
+    void unhealthyBackendIsEjectedUntilItRecovers() throws Exception {
+        FakeOllamaServer first = startServer("a");
+        FakeOllamaServer second = startServer("b");
+        OllamaClient client = newPoolClient(List.of(first, second),
+                c -> ReflectionTestUtils.setField(c, "healthCheckIntervalSeconds", 1L));
+
+        first.healthy = false;
+        Thread.sleep(1500);
+        for (int i = 0; i < 4; i++) {
+            assertEquals("b", client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        }
+        assertEquals(0, first.calls.get());
+
+        first.healthy = true;
+        Thread.sleep(1500);
+        Set<String> responses = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            responses.add(client.generate(OllamaClient.GenerateRequest.of("llama3", "prompt", null)).response());
+        }
+        assertEquals(Set.of("a", "b"), responses);
+    }
+
+    private FakeOllamaServer startServer(String responseText) throws IOException {
+        FakeOllamaServer server = new FakeOllamaServer(responseText);
+        servers.add(server);
+        return server;
+    }
+
+    private OllamaClient newClient(FakeOllamaServer primary, FakeOllamaServer hedge) {
+        return newClient(primary, hedge, client -> { });
+    }
+
+    private OllamaClient newClient(FakeOllamaServer primary, FakeOllamaServer hedge, Consumer<OllamaClient> configuration) {
+        LlmDispatcher dispatcher = new LlmDispatcher();
+        dispatcher.init();
+
+        OllamaClient client = new OllamaClient();
+        ReflectionTestUtils.setField(client, "llmDispatcher", dispatcher);
+        ReflectionTestUtils.setField(client, "objectMapper", new ObjectMapper());
+        ReflectionTestUtils.setField(client, "generateUrl", primary.url("/api/generate"));
+        ReflectionTestUtils.setField(client, "embeddingsUrl", primary.url("/api/embeddings"));
+        ReflectionTestUtils.setField(client, "hedgeUrl", hedge != null ? hedge.url("/api/generate") : "");
+        ReflectionTestUtils.setField(client, "hedgeMinDelayMillis", 200L);
+        configuration.accept(client);
+        client.init();
+        clients.add(client);
+        return client;
+    }
+
+    private boolean waitUntil(BooleanSupplier condition, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        while (System.nanoTime() < deadline) {
+            if (condition.getAsBoolean()) {
+                return true;
+            }
+            Thread.sleep(20);
+        }
+        return condition.getAsBoolean();
+    }
+
+    /**
+     * Plafond fixe d'appels simultanés pour le répartiteur du client
+     */
+    private void limitDispatcher(OllamaClient client, int maxConcurrentCalls) {
+        LlmDispatcher dispatcher = (LlmDispatcher) ReflectionTestUtils.getField(client, "llmDispatcher");
+        ReflectionTestUtils.setField(dispatcher, "maxConcurrentCalls", maxConcurrentCalls);
+        ReflectionTestUtils.setField(dispatcher, "adaptive", false);
+        ReflectionTestUtils.setField(dispatcher, "concurrencyLimit", null);
+        dispatcher.init();
+    }
+
+    private OllamaClient newPoolClient(List<FakeOllamaServer> pool, Consumer<OllamaClient> configuration) {
+        return newClient(pool.get(0), null, client -> {
+            ReflectionTestUtils.setField(client, "generateUrls",
+                    String.join(",", pool.stream().map(server -> server.url("/api/generate")).toList()));
+            configuration.accept(client);
+        });
+    }
+
+    /**
+     * Serveur Ollama factice : répond à /api/generate avec un texte fixe, un statut et un délai configurables
+     */
+    static class FakeOllamaServer {
+        private final HttpServer server;
+        final AtomicInteger calls = new AtomicInteger();
+        volatile int status = 200;
+        volatile long delayMillis;
+        // Réponse de /api/version aux vérifications de disponibilité
+        volatile boolean healthy = true;
+
+        FakeOllamaServer(String responseText) throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.setExecutor(Executors.newCachedThreadPool());
+            server.createContext("/api/generate", exchange -> {
+                calls.incrementAndGet();
+                exchange.getRequestBody().readAllBytes();
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                byte[] body = status == 200
+                        ? ("{\"model\":\"llama3\",\"response\":\"" + responseText + "\",\"done\":true}").getBytes(StandardCharsets.UTF_8)
+                        : "{\"error\":\"indisponible\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                try {
+                    exchange.sendResponseHeaders(status, body.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(body);
+                    }
+                } catch (IOException e) {
+                    // Client parti (requête abandonnée)
+                }
+            });
+            server.createContext("/api/version", exchange -> {
+                byte[] body = "{\"version\":\"0.1.0\"}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(healthy ? 200 : 503, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            server.start();
+        }
+
+        String url(String path) {
+            return "http://localhost:" + server.getAddress().getPort() + path;
+        }
+
+        void stop() {
+            server.stop(0);
+        }
+    }
+}
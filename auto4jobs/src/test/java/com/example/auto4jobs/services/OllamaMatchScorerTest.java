@@ -0,0 +1,173 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.JobOffer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OllamaMatchScorerTest {
+
+    private static final String CV = "Développeur Java Spring";
+
+    private static final String VALID = "{\"score\": 82, \"strengths\": [\"Java\"], \"weaknesses\": [\"Kubernetes\"]}";
+
+    private static final MatchEvaluation LOCAL = new MatchEvaluation(40.0, List.of("Calcul local"));
+
+    private final OllamaGenerationService generationService = mock(OllamaGenerationService.class);
+
+    private final LexicalMatchScorer lexicalMatchScorer = mock(LexicalMatchScorer.class);
+
+    private final JobOffer offer = new JobOffer();
+
+    private OllamaMatchScorer scorer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        scorer = new OllamaMatchScorer();
+        ReflectionTestUtils.setField(scorer, "ollamaGenerationService", generationService);
+        ReflectionTestUtils.setField(scorer, "lexicalMatchScorer", lexicalMatchScorer);
+        ReflectionTestUtils.setField(scorer, "objectMapper", new ObjectMapper());
+        scorer.init();
+        when(lexicalMatchScorer.evaluate(anyString(), any(), anyString(), anyBoolean())).thenReturn(LOCAL);
+    }
+
+    @Test
+    void conformingResponseIsUsedWithoutRetry() throws Exception {
+        when(generate()).thenReturn(VALID);
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", true);
+
+        assertEquals(82.0, evaluation.score(), 1e-9);
+        assertEquals(List.of("Java", "Kubernetes"), evaluation.explanations());
+        // Le schéma du type d'appel est envoyé dans le champ format de la requête
+        ArgumentCaptor<Object> format = ArgumentCaptor.forClass(Object.class);
+        verify(generationService).generate(eq(LlmStage.EXPLANATIONS), anyString(), format.capture(), any(), any());
+        assertInstanceOf(JsonNode.class, format.getValue());
+        assertTrue(((JsonNode) format.getValue()).path("required").toString().contains("score"));
+        assertEquals(Map.of("responses", 1L, "parseFailures", 0L, "parseFailureRate", 0.0, "retries", 0L, "fallbacks", 0L),
+                statistics("combined"));
+    }
+
+    @Test
+    void nonConformingResponseIsRetriedWithErrors() throws Exception {
+        when(generate()).thenReturn("Voici mon analyse : le score est 82", "{\"score\": 120}", VALID);
+        ReflectionTestUtils.setField(scorer, "structuredOutputMaxAttempts", 3);
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", true);
+
+        assertEquals(82.0, evaluation.score(), 1e-9);
+        ArgumentCaptor<String> prompts = ArgumentCaptor.forClass(String.class);
+        verify(generationService, times(3)).generate(any(), prompts.capture(), any(), any(), any());
+        assertFalse(prompts.getAllValues().get(0).contains("réponse précédente"));
+        // Les écarts constatés sont indiqués au modèle lors de la tentative suivante
+        assertTrue(prompts.getAllValues().get(1).contains("JSON invalide"), prompts.getAllValues().get(1));
+        assertTrue(prompts.getAllValues().get(2).contains("$.score : valeur supérieure à 100"), prompts.getAllValues().get(2));
+        Map<String, Object> statistics = statistics("combined");
+        assertEquals(3L, statistics.get("responses"));
+        assertEquals(2L, statistics.get("parseFailures"));
+        assertEquals(2L, statistics.get("retries"));
+        assertEquals(0L, statistics.get("fallbacks"));
+    }
+
+    @Test
+    void exhaustedAttemptsFallBackToLocalScorer() throws Exception {
+        when(generate()).thenReturn("{\"score\": 82}");
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", true);
+
+        assertSame(LOCAL, evaluation);
+        verify(generationService, times(2)).generate(any(), anyString(), any(), any(), any());
+        Map<String, Object> statistics = statistics("combined");
+        assertEquals(2L, statistics.get("parseFailures"));
+        assertEquals(1.0, statistics.get("parseFailureRate"));
+        assertEquals(1L, statistics.get("fallbacks"));
+    }
+
+    @Test
+    void nonConformingResponseIsNotCached() throws Exception {
+        when(generate()).thenReturn(VALID);
+
+        scorer.evaluate(CV, offer, "Offre Java", true);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Predicate<String>> cacheable = ArgumentCaptor.forClass(Predicate.class);
+        verify(generationService).generate(any(), anyString(), any(), any(), cacheable.capture());
+        assertTrue(cacheable.getValue().test(VALID));
+        assertFalse(cacheable.getValue().test("{\"score\": 82, \"strengths\": [], \"weaknesses\": [\"Kubernetes\"]}"));
+        assertFalse(cacheable.getValue().test("82"));
+    }
+
+    @Test
+    void scoreOnlyCallUsesScoreSchema() throws Exception {
+        when(generate()).thenReturn("{\"score\": 67.0}");
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", false);
+
+        assertEquals(67.0, evaluation.score(), 1e-9);
+        assertTrue(evaluation.explanations().isEmpty());
+        verify(generationService).generate(eq(LlmStage.SCORING), anyString(), any(), any(), any());
+        assertEquals(1L, statistics("score").get("responses"));
+    }
+
+    @Test
+    void freeTextModeParsesNumericScore() throws Exception {
+        ReflectionTestUtils.setField(scorer, "structuredOutput", false);
+        when(generate()).thenReturn(" 73 ");
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", false);
+
+        assertEquals(73.0, evaluation.score(), 1e-9);
+        verify(generationService).generate(eq(LlmStage.SCORING), anyString(), eq(null), any(), any());
+    }
+
+    @Test
+    void unavailableOllamaFallsBackWithoutRetry() throws Exception {
+        when(generate()).thenThrow(new OllamaUnavailableException("Ollama injoignable"));
+
+        MatchEvaluation evaluation = scorer.evaluate(CV, offer, "Offre Java", true);
+
+        assertSame(LOCAL, evaluation);
+        verify(generationService, times(1)).generate(any(), anyString(), any(), any(), any());
+        assertEquals(0L, statistics("combined").get("retries"));
+    }
+
+    @Test
+    void capacityExceededIsPropagated() throws Exception {
+        when(generate()).thenThrow(new LlmCapacityExceededException("File d'attente pleine", false, 1000));
+
+        assertThrows(LlmCapacityExceededException.class, () -> scorer.evaluate(CV, offer, "Offre Java", true));
+        verify(lexicalMatchScorer, never()).evaluate(anyString(), any(), anyString(), anyBoolean());
+    }
+
+    private String generate() throws Exception {
+        return generationService.generate(any(), anyString(), any(), any(), any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> statistics(String type) {
+        return (Map<String, Object>) scorer.getStatistics().get(type);
+    }
+}
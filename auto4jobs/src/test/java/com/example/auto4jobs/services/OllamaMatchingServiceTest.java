@@ -0,0 +1,336 @@
+package com.example.auto4jobs.services;
+
+import com.example.auto4jobs.entities.Entreprise;
+import com.example.auto4jobs.entities.JobOffer;
+import com.example.auto4jobs.entities.MatchingGeneration;
+import com.example.auto4jobs.entities.MatchingResult;
+import com.example.auto4jobs.entities.User;
+import com.example.auto4jobs.repositories.CvSkillProfileRepository;
+import com.example.auto4jobs.repositories.JobOfferRepository;
+import com.example.auto4jobs.repositories.MatchingResultRepository;
+import com.example.auto4jobs.repositories.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OllamaMatchingServiceTest {
+
+    private final UserRepository userRepository = mock(UserRepository.class);
+
+    private final JobOfferRepository jobOfferRepository = mock(JobOfferRepository.class);
+
+    private final MatchingResultRepository matchingResultRepository = mock(MatchingResultRepository.class);
+
+    private final CVTextExtractionService cvTextExtractionService = mock(CVTextExtractionService.class);
+
+    private final MatchingGenerationService matchingGenerationService = mock(MatchingGenerationService.class);
+
+    private final MatchingResultWriter matchingResultWriter = mock(MatchingResultWriter.class);
+
+    private final MatchScorerSelector matchScorerSelector = mock(MatchScorerSelector.class);
+
+    private final ExecutorService matchingExecutor = Executors.newFixedThreadPool(2);
+
+    private final User user = new User();
+
+    private OllamaMatchingService service;
+
+    @BeforeEach
+    void setUp() {
+        user.setId(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(cvTextExtractionService.getCvText(user)).thenReturn("Développeur Java Spring, travail en équipe");
+        when(matchingGenerationService.allocateGeneration(anyLong())).thenReturn(7L);
+        when(matchingGenerationService.allocateGeneration(anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<LongConsumer>getArgument(1).accept(7L);
+            return 7L;
+        });
+        // Par défaut, aucun calcul en cours : la dernière génération attribuée est la génération active
+        when(matchingGenerationService.lockPointer(anyLong())).thenAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            Long active = matchingGenerationService.getActiveGeneration(userId);
+            return active != null ? new MatchingGeneration(userId, active, active, null) : null;
+        });
+        when(matchingResultWriter.saveAll(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(matchingResultWriter.persist(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        service = new OllamaMatchingService();
+        ReflectionTestUtils.setField(service, "userRepository", userRepository);
+        ReflectionTestUtils.setField(service, "jobOfferRepository", jobOfferRepository);
+        ReflectionTestUtils.setField(service, "matchingResultRepository", matchingResultRepository);
+        ReflectionTestUtils.setField(service, "cvSkillProfileRepository", mock(CvSkillProfileRepository.class));
+        ReflectionTestUtils.setField(service, "cvTextExtractionService", cvTextExtractionService);
+        ReflectionTestUtils.setField(service, "skillOverlapPrefilter", new SkillOverlapPrefilter());
+        ReflectionTestUtils.setField(service, "matchScorerSelector", matchScorerSelector);
+        ReflectionTestUtils.setField(service, "lexicalMatchScorer", mock(LexicalMatchScorer.class));
+        ReflectionTestUtils.setField(service, "jobOfferLexicalIndex", mock(JobOfferLexicalIndex.class));
+        ReflectionTestUtils.setField(service, "matchingResultWriter", matchingResultWriter);
+        ReflectionTestUtils.setField(service, "llmDispatcher", mock(LlmDispatcher.class));
+        ReflectionTestUtils.setField(service, "matchingGenerationService", matchingGenerationService);
+        ReflectionTestUtils.setField(service, "matchingExecutor", matchingExecutor);
+        ReflectionTestUtils.setField(service, "transactionTemplate", new TransactionTemplate(mock(PlatformTransactionManager.class)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        matchingExecutor.shutdownNow();
+    }
+
+    @Test
+    void prefilteredOffersAreRankedAfterScoredOffers() {
+        // Seule l'offre la mieux classée localement est évaluée par le backend, qui lui attribue un score bas
+        ReflectionTestUtils.setField(service, "prefilterTopK", 1);
+        when(matchScorerSelector.forScoring()).thenReturn(fixedScorer(30));
+        JobOffer best = offer(10L, Set.of("Java", "Spring"));
+        JobOffer partial = offer(11L, Set.of("Java", "Kotlin"));
+        JobOffer none = offer(12L, Set.of("Go"));
+        when(jobOfferRepository.findByIsActiveTrue()).thenReturn(List.of(none, partial, best));
+
+        List<Map<String, Object>> results = service.forceMatchJobOffersForUser(1L);
+
+        assertEquals(List.of(10L, 11L, 12L), results.stream().map(this::offerId).toList());
+        assertEquals(30.0, results.get(0).get("matchScore"));
+        assertEquals(false, results.get(0).get("prefiltered"));
+        // Le score local de l'offre partielle (50) dépasse celui du backend, mais n'est pas sur la même échelle
+        assertEquals(50.0, results.get(1).get("matchScore"));
+        assertEquals(true, results.get(1).get("prefiltered"));
+        assertEquals(true, results.get(2).get("prefiltered"));
+    }
+
+    @Test
+    void rankingKeepsPrefilteredResultsBelowScoredResults() {
+        List<Map<String, Object>> results = new ArrayList<>(List.of(
+                Map.of("matchScore", 90.0, "prefiltered", true),
+                Map.of("matchScore", 10.0, "prefiltered", false),
+                Map.of("matchScore", 60.0, "prefiltered", false),
+                Map.of("matchScore", 95.0, "prefiltered", true)));
+
+        results.sort(OllamaMatchingService.RANKING);
+
+        assertEquals(List.of(60.0, 10.0, 95.0, 90.0), results.stream().map(result -> result.get("matchScore")).toList());
+    }
+
+    @Test
+    void rescoredOfferOutsideTopKKeepsItsLocalScore() {
+        // Lors du dernier matching, une offre de score local 50 a été écartée par le préfiltrage
+        JobOffer edited = offer(20L, Set.of("Go"));
+        when(jobOfferRepository.findById(20L)).thenReturn(Optional.of(edited));
+        when(matchingResultRepository.findUsersWithResults()).thenReturn(List.of(user));
+        when(matchingGenerationService.getActiveGeneration(1L)).thenReturn(3L);
+        when(matchingResultRepository.findByUserAndGeneration(user, 3L))
+                .thenReturn(List.of(result(user, offer(21L, Set.of("Java", "Kotlin")), 50, true)));
+        MatchScorer scorer = mock(MatchScorer.class);
+        when(matchScorerSelector.forScoring()).thenReturn(scorer);
+
+        assertEquals(1, service.rescoreOffer(20L));
+
+        verify(scorer, never()).evaluate(any(), any(), any(), anyBoolean());
+        MatchingResult saved = savedResult();
+        assertTrue(saved.isPrefiltered());
+        assertEquals(0.0, saved.getMatchScore());
+        assertEquals(3L, saved.getGeneration());
+    }
+
+    @Test
+    void rescoredOfferEnteringTopKIsScoredByBackend() {
+        JobOffer edited = offer(20L, Set.of("Java", "Spring"));
+        when(jobOfferRepository.findById(20L)).thenReturn(Optional.of(edited));
+        when(matchingResultRepository.findUsersWithResults()).thenReturn(List.of(user));
+        when(matchingGenerationService.getActiveGeneration(1L)).thenReturn(3L);
+        when(matchingResultRepository.findByUserAndGeneration(user, 3L))
+                .thenReturn(List.of(result(user, offer(21L, Set.of("Java", "Kotlin")), 50, true)));
+        when(matchScorerSelector.forScoring()).thenReturn(fixedScorer(30));
+
+        assertEquals(1, service.rescoreOffer(20L));
+
+        MatchingResult saved = savedResult();
+        assertFalse(saved.isPrefiltered());
+        assertEquals(30.0, saved.getMatchScore());
+    }
+
+    @Test
+    void rescoreSkipsUsersWithoutActiveGenerationAndSurvivesFailures() {
+        User withoutGeneration = new User();
+        withoutGeneration.setId(2L);
+        User failing = new User();
+        failing.setId(3L);
+        when(cvTextExtractionService.getCvText(failing)).thenReturn("CV refusé");
+        JobOffer edited = offer(20L, Set.of("Java"));
+        when(jobOfferRepository.findById(20L)).thenReturn(Optional.of(edited));
+        when(matchingResultRepository.findUsersWithResults()).thenReturn(List.of(withoutGeneration, failing, user));
+        when(matchingGenerationService.getActiveGeneration(2L)).thenReturn(null);
+        when(matchingGenerationService.getActiveGeneration(3L)).thenReturn(5L);
+        when(matchingGenerationService.getActiveGeneration(1L)).thenReturn(3L);
+        MatchScorer scorer = mock(MatchScorer.class);
+        when(scorer.evaluate(eq("CV refusé"), any(), any(), anyBoolean()))
+                .thenThrow(new LlmCapacityExceededException("File d'attente pleine", false, 5));
+        when(scorer.evaluate(eq("Développeur Java Spring, travail en équipe"), any(), any(), anyBoolean()))
+                .thenReturn(new MatchEvaluation(40, List.of()));
+        when(matchScorerSelector.forScoring()).thenReturn(scorer);
+
+        // L'échec pour le candidat 3 n'empêche pas l'évaluation pour le candidat 1
+        assertEquals(1, service.rescoreOffer(20L));
+
+        verify(matchingResultRepository, never()).findByUserAndGeneration(eq(withoutGeneration), any());
+        MatchingResult saved = savedResult();
+        assertEquals(1L, saved.getUser().getId());
+        assertEquals(3L, saved.getGeneration());
+    }
+
+    @Test
+    void rescoreWritesIntoGenerationActiveAtWriteTime() {
+        JobOffer edited = offer(20L, Set.of("Java", "Spring"));
+        when(jobOfferRepository.findById(20L)).thenReturn(Optional.of(edited));
+        when(matchingResultRepository.findUsersWithResults()).thenReturn(List.of(user));
+        when(matchingGenerationService.getActiveGeneration(1L)).thenReturn(3L);
+        when(matchScorerSelector.forScoring()).thenReturn(fixedScorer(30));
+        // Un matching a activé la génération 4 pendant l'évaluation ; la génération 5 est en cours de calcul et a
+        // déjà reçu l'ancien résultat de l'offre, la génération 6 ne l'a pas reçu et évalue elle-même l'offre
+        doReturn(new MatchingGeneration(1L, 4L, 6L, null)).when(matchingGenerationService).lockPointer(1L);
+        MatchingResult staleActive = result(user, edited, 80, false);
+        staleActive.setGeneration(4L);
+        MatchingResult staleCopy = result(user, edited, 80, false);
+        staleCopy.setGeneration(5L);
+        MatchingResult replaced = result(user, edited, 80, false);
+        when(matchingResultRepository.findByUserAndJobOffer(user, edited)).thenReturn(List.of(replaced, staleActive, staleCopy));
+
+        assertEquals(1, service.rescoreOffer(20L));
+
+        verify(matchingResultRepository).deleteAll(List.of(staleActive, staleCopy));
+        ArgumentCaptor<MatchingResult> saved = ArgumentCaptor.forClass(MatchingResult.class);
+        verify(matchingResultRepository, times(2)).save(saved.capture());
+        assertEquals(List.of(4L, 5L), saved.getAllValues().stream().map(MatchingResult::getGeneration).toList());
+        assertTrue(saved.getAllValues().stream().allMatch(result -> result.getMatchScore() == 30.0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void carriedResultsAreReadWhenGenerationIsAllocated() {
+        ReflectionTestUtils.setField(service, "prefilterTopK", 0);
+        when(matchScorerSelector.forScoring()).thenReturn(fixedScorer(30));
+        JobOffer carried = offer(10L, Set.of("Java"));
+        JobOffer toScore = offer(11L, Set.of("Go"));
+        when(jobOfferRepository.findByIsActiveTrue()).thenReturn(List.of(carried, toScore));
+        MatchingResult before = result(user, carried, 40, false);
+        before.setCreatedAt(LocalDateTime.now());
+        // L'offre a été réévaluée entre la lecture des résultats et l'attribution de la génération
+        MatchingResult rescored = result(user, carried, 90, false);
+        rescored.setCreatedAt(LocalDateTime.now());
+        when(matchingGenerationService.findActiveResults(user)).thenReturn(List.of(before), List.of(rescored));
+
+        List<Map<String, Object>> results = service.matchJobOffersForUser(1L);
+
+        Map<String, Object> carriedResult = results.stream().filter(result -> offerId(result) == 10L).findFirst().orElseThrow();
+        assertEquals(90.0, carriedResult.get("matchScore"));
+        ArgumentCaptor<List<MatchingResult>> copies = ArgumentCaptor.forClass(List.class);
+        verify(matchingResultWriter).saveAll(copies.capture());
+        assertEquals(7L, copies.getValue().get(0).getGeneration());
+        verify(matchingGenerationService).activate(1L, 7L);
+    }
+
+    @Test
+    void noActiveOfferActivatesEmptyGeneration() {
+        when(jobOfferRepository.findByIsActiveTrue()).thenReturn(List.of());
+        when(matchingGenerationService.findActiveResults(user))
+                .thenReturn(List.of(result(user, offer(10L, Set.of("Java")), 80, false)));
+
+        assertTrue(service.matchJobOffersForUser(1L).isEmpty());
+
+        // Les résultats de l'offre fermée ne sont plus servis par la génération active
+        verify(matchingGenerationService).activate(1L, 7L);
+    }
+
+    @Test
+    void noActiveOfferAndNoResultsAllocatesNothing() {
+        when(jobOfferRepository.findByIsActiveTrue()).thenReturn(List.of());
+        when(matchingGenerationService.findActiveResults(user)).thenReturn(List.of());
+
+        assertTrue(service.matchJobOffersForUser(1L).isEmpty());
+
+        verify(matchingGenerationService, never()).allocateGeneration(anyLong());
+        verify(matchingGenerationService, never()).activate(anyLong(), anyLong());
+    }
+
+    private MatchingResult savedResult() {
+        ArgumentCaptor<MatchingResult> saved = ArgumentCaptor.forClass(MatchingResult.class);
+        verify(matchingResultRepository).save(saved.capture());
+        return saved.getValue();
+    }
+
+    private MatchingResult result(User owner, JobOffer offer, double score, boolean prefiltered) {
+        MatchingResult result = new MatchingResult();
+        result.setUser(owner);
+        result.setJobOffer(offer);
+        result.setMatchScore(score);
+        result.setGeneration(3L);
+        result.setPrefiltered(prefiltered);
+        result.setMatchExplanations(new ArrayList<>());
+        return result;
+    }
+
+    private Long offerId(Map<String, Object> result) {
+        return (Long) ((Map<?, ?>) result.get("jobOffer")).get("id");
+    }
+
+    private JobOffer offer(Long id, Set<String> technicalSkills) {
+        Entreprise entreprise = new Entreprise();
+        entreprise.setNom("TechCorp");
+        JobOffer offer = new JobOffer();
+        offer.setId(id);
+        offer.setTitrePoste("Offre " + id);
+        offer.setEntreprise(entreprise);
+        offer.setTypeContrat(JobOffer.ContractType.EMPLOI_CDI);
+        offer.setCompetencesTechniquesRequises(technicalSkills);
+        return offer;
+    }
+
+    /**
+     * Backend de scoring qui attribue le même score à toutes les offres
+     */
+    private MatchScorer fixedScorer(double score) {
+        return new MatchScorer() {
+            @Override
+            public MatchEvaluation evaluate(String cvText, JobOffer offer, String offerText, boolean withExplanations) {
+                return new MatchEvaluation(score, List.of());
+            }
+
+            @Override
+            public List<String> explain(String cvText, JobOffer offer, String offerText) {
+                return List.of();
+            }
+
+            @Override
+            public String getName() {
+                return "fixe";
+            }
+        };
+    }
+}